@@ -0,0 +1,22 @@
+#!/usr/bin/env bash
+#
+# Compares two JMH JSON result files written by run.sh.
+# Usage: ./compare.sh results/<base>.json results/<head>.json
+
+set -euo pipefail
+
+if [ $# -ne 2 ]; then
+    echo "Usage: $0 <base.json> <head.json>" >&2
+    exit 1
+fi
+
+summary() {
+    jq -r '.[] | [(.benchmark | sub("^com\\.metaring\\.mock\\.jdbc\\.mysql\\."; "")) + ((.params // {}) | to_entries | map(" " + .key + "=" + .value) | join("")), .primaryMetric.score, .primaryMetric.scoreUnit] | @tsv' "$1" | sort
+}
+
+join -t $'\t' -a 2 -e '-' -o '0,1.2,2.2,2.3' <(summary "$1") <(summary "$2") | awk -F '\t' '
+    BEGIN { printf "%-70s %14s %14s %-8s %9s\n", "benchmark", "base", "head", "unit", "delta" }
+    {
+        delta = ($2 == "-" || $2 == 0) ? "n/a" : sprintf("%+.1f%%", ($3 - $2) * 100 / $2)
+        printf "%-70s %14s %14.3f %-8s %9s\n", $1, ($2 == "-" ? "-" : sprintf("%.3f", $2)), $3, $4, delta
+    }'
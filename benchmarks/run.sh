@@ -0,0 +1,31 @@
+#!/usr/bin/env bash
+#
+# Runs the MySQL Mock JMH suites against a local mysqld and stores the JSON
+# results under results/<commit>.json, ready for compare.sh.
+#
+# Required: MYSQLMOCK_BENCH_BIN_LOCATION (folder containing mysqld).
+# Optional: MYSQLMOCK_BENCH_HOST, MYSQLMOCK_BENCH_PORT, MYSQLMOCK_BENCH_USER,
+#           MYSQLMOCK_BENCH_PASSWORD, MYSQLMOCK_BENCH_MOCK_PORT,
+#           MYSQLMOCK_BENCH_CACHE_FOLDER.
+# Extra arguments are passed to JMH, e.g. ./run.sh TruncateDatabaseBenchmark -p tables=100
+
+set -euo pipefail
+
+cd "$(dirname "$0")"
+
+if [ -z "${MYSQLMOCK_BENCH_BIN_LOCATION:-}" ]; then
+    echo "MYSQLMOCK_BENCH_BIN_LOCATION must point to the folder containing mysqld" >&2
+    exit 1
+fi
+
+(cd .. && mvn -B -q -DskipTests install)
+mvn -B -q package
+
+commit="$(git rev-parse --short HEAD)"
+if [ -n "$(git status --porcelain -- ../src ../pom.xml .)" ]; then
+    commit="${commit}-dirty"
+fi
+
+mkdir -p results
+java -jar target/benchmarks.jar -rf json -rff "results/${commit}.json" "$@"
+echo "Results written to results/${commit}.json"
@@ -0,0 +1,130 @@
+/**
+ *    Copyright 2019 MetaRing s.r.l.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.metaring.mock.jdbc.mysql;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.Properties;
+
+final class BenchmarkDatabase {
+
+    static final String HOST = setting("host", "localhost");
+    static final String PORT = setting("port", "3306");
+    static final String USER = setting("user", "root");
+    static final String PASSWORD = setting("password", "");
+    static final String BIN_LOCATION = setting("binLocation", null);
+    static final String MOCK_PORT = setting("mockPort", "33061");
+    static final String CACHE_FOLDER = setting("cacheFolder", null);
+
+    private BenchmarkDatabase() {
+    }
+
+    static final Properties properties(String name) {
+        Properties properties = new Properties();
+        properties.put(MySQLMockPropertyEnum.NAME.getPropertyName(), name);
+        properties.put(MySQLMockPropertyEnum.ORIGINAL_HOST.getPropertyName(), HOST);
+        properties.put(MySQLMockPropertyEnum.ORIGINAL_PORT.getPropertyName(), PORT);
+        properties.put(MySQLMockPropertyEnum.USER.getPropertyName(), USER);
+        properties.put(MySQLMockPropertyEnum.PASSWORD.getPropertyName(), PASSWORD);
+        properties.put(MySQLMockPropertyEnum.BIN_LOCATION.getPropertyName(), binLocation());
+        properties.put(MySQLMockPropertyEnum.MOCK_PORT.getPropertyName(), MOCK_PORT);
+        if (CACHE_FOLDER != null) {
+            properties.put(MySQLMockPropertyEnum.CACHE_FOLDER.getPropertyName(), CACHE_FOLDER);
+        }
+        return properties;
+    }
+
+    static final String url(String name, Map<String, String> parameters) {
+        StringBuilder stringBuilder = new StringBuilder(String.format("jdbc:mysql:mock://%s:%s/%s?", HOST, PORT, name));
+        stringBuilder.append(MySQLMockPropertyEnum.MOCK_PORT.getPropertyName()).append('=').append(MOCK_PORT);
+        stringBuilder.append('&').append(MySQLMockPropertyEnum.BIN_LOCATION.getPropertyName()).append('=').append(encode(binLocation()));
+        if (CACHE_FOLDER != null) {
+            stringBuilder.append('&').append(MySQLMockPropertyEnum.CACHE_FOLDER.getPropertyName()).append('=').append(encode(CACHE_FOLDER));
+        }
+        for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+            stringBuilder.append('&').append(parameter.getKey()).append('=').append(encode(parameter.getValue()));
+        }
+        return stringBuilder.toString();
+    }
+
+    static final Properties credentials() {
+        Properties credentials = new Properties();
+        credentials.put(MySQLMockPropertyEnum.USER.getPropertyName(), USER);
+        credentials.put(MySQLMockPropertyEnum.PASSWORD.getPropertyName(), PASSWORD);
+        return credentials;
+    }
+
+    static final void createSchema(String name, int tables) throws SQLException {
+        try (Connection connection = MySQLMockDumpCache.originalConnection(properties(name), ""); Statement statement = connection.createStatement()) {
+            statement.execute("DROP DATABASE IF EXISTS " + MySQLMockSql.quote(name));
+            statement.execute("CREATE DATABASE " + MySQLMockSql.quote(name));
+            statement.execute("USE " + MySQLMockSql.quote(name));
+            for (int i = 0; i < tables; i++) {
+                String foreignKey = i % 10 == 0 ? "" : String.format(", FOREIGN KEY (parent_id) REFERENCES t%d (id)", i - 1);
+                statement.execute(String.format("CREATE TABLE t%d (id INT AUTO_INCREMENT PRIMARY KEY, parent_id INT NULL, name VARCHAR(64) NOT NULL, created TIMESTAMP DEFAULT CURRENT_TIMESTAMP, KEY (name)%s) ENGINE=InnoDB", i, foreignKey));
+            }
+        }
+    }
+
+    static final void dropSchema(String name) throws SQLException {
+        try (Connection connection = MySQLMockDumpCache.originalConnection(properties(name), ""); Statement statement = connection.createStatement()) {
+            statement.execute("DROP DATABASE IF EXISTS " + MySQLMockSql.quote(name));
+        }
+    }
+
+    static final void release(MySQLMockedDatabaseInfo mockedDatabaseInfo) {
+        if (mockedDatabaseInfo != null && mockedDatabaseInfo.rootFolder != null) {
+            MySQLMockManager.cleanup(mockedDatabaseInfo.rootFolder);
+            MySQLMockInstancePool.released();
+        }
+    }
+
+    private static final String binLocation() {
+        if (BIN_LOCATION == null) {
+            throw new IllegalStateException("Set MYSQLMOCK_BENCH_BIN_LOCATION (or -Dmysqlmock.bench.binLocation) to the folder containing mysqld.");
+        }
+        return BIN_LOCATION;
+    }
+
+    private static final String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        }
+        catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static final String setting(String name, String defaultValue) {
+        String value = System.getProperty("mysqlmock.bench." + name);
+        if (value == null) {
+            StringBuilder environmentName = new StringBuilder("MYSQLMOCK_BENCH_");
+            for (char c : name.toCharArray()) {
+                if (Character.isUpperCase(c)) {
+                    environmentName.append('_');
+                }
+                environmentName.append(Character.toUpperCase(c));
+            }
+            value = System.getenv(environmentName.toString());
+        }
+        return value == null ? defaultValue : value;
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ *    Copyright 2019 MetaRing s.r.l.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.metaring.mock.jdbc.mysql;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConnectBenchmark {
+
+    private static final String SCHEMA = "mysqlmock_bench_connect";
+
+    @Param({ "false", "true" })
+    public boolean pooled;
+
+    private Driver driver;
+    private String url;
+    private Properties info;
+    private MySQLMockedDatabaseInfo mockedDatabaseInfo;
+    private Properties originalProperties;
+
+    @Setup(Level.Trial)
+    public void mock() throws SQLException {
+        BenchmarkDatabase.createSchema(SCHEMA, 10);
+        driver = new Driver();
+        url = BenchmarkDatabase.url(SCHEMA, Collections.singletonMap(MySQLMockPropertyEnum.POOLED.getPropertyName(), String.valueOf(pooled)));
+        info = BenchmarkDatabase.credentials();
+        driver.connect(url, info).close();
+        mockedDatabaseInfo = Driver.mockedDatabaseInfo(driver.resolveProperties(url, info));
+        originalProperties = Driver.cleanProperties(info);
+    }
+
+    @Benchmark
+    public Properties resolveProperties() throws SQLException {
+        return driver.resolveProperties(url, info);
+    }
+
+    @Benchmark
+    public boolean connect() throws SQLException {
+        try (Connection connection = driver.connect(url, info)) {
+            return connection.getAutoCommit();
+        }
+    }
+
+    @Benchmark
+    public boolean originalConnect() throws SQLException {
+        try (Connection connection = Driver.MYSQL_ORIGINAL_DRIVER.connect(mockedDatabaseInfo.mockedUrl, originalProperties)) {
+            return connection.getAutoCommit();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stopMock() throws SQLException {
+        BenchmarkDatabase.release(mockedDatabaseInfo);
+        BenchmarkDatabase.dropSchema(SCHEMA);
+    }
+}
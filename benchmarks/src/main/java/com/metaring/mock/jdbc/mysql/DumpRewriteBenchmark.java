@@ -0,0 +1,110 @@
+/**
+ *    Copyright 2019 MetaRing s.r.l.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.metaring.mock.jdbc.mysql;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DumpRewriteBenchmark {
+
+    private static final class DiscardingWriter extends Writer {
+
+        private long written;
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            written += length;
+        }
+
+        @Override
+        public void write(String text) {
+            written += text.length();
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Param({ "1", "16", "64" })
+    public int megabytes;
+
+    @Param({ "10", "1000" })
+    public int definerEvery;
+
+    private byte[] dump;
+
+    @Setup(Level.Trial)
+    public void generateDump() {
+        StringBuilder stringBuilder = new StringBuilder();
+        long target = megabytes * 1024L * 1024L;
+        for (int i = 0; stringBuilder.length() < target; i++) {
+            if (i % definerEvery == 0) {
+                stringBuilder.append(String.format("/*!50013 DEFINER=`app_user%d`@`10.0.%d.%%` SQL SECURITY DEFINER */\n", i % 7, i % 255));
+                stringBuilder.append(String.format("/*!50001 VIEW `v%d` AS select `t%d`.`id` AS `id` from `t%d` */;\n", i, i, i));
+            }
+            else if (i % 3 == 0) {
+                stringBuilder.append(String.format("CREATE TABLE `t%d` (\n  `id` int(11) NOT NULL AUTO_INCREMENT,\n  `name` varchar(64) NOT NULL,\n  PRIMARY KEY (`id`)\n) ENGINE=InnoDB DEFAULT CHARSET=utf8;\n", i));
+            }
+            else {
+                stringBuilder.append(String.format("INSERT INTO `t%d` VALUES (%d,'name %d'),(%d,'name %d'),(%d,'name %d');\n", i, i, i, i + 1, i + 1, i + 2, i + 2));
+            }
+        }
+        dump = stringBuilder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public long rewrite() throws IOException {
+        DiscardingWriter writer = new DiscardingWriter();
+        try (BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(dump), StandardCharsets.UTF_8))) {
+            String line = null;
+            while ((line = bufferedReader.readLine()) != null) {
+                writer.write(MySQLMockManager.rewriteDefiner(line));
+                writer.write("\n");
+            }
+        }
+        return writer.written;
+    }
+}
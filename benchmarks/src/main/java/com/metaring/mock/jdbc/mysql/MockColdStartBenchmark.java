@@ -0,0 +1,82 @@
+/**
+ *    Copyright 2019 MetaRing s.r.l.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.metaring.mock.jdbc.mysql;
+
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MockColdStartBenchmark {
+
+    private static final String SCHEMA = "mysqlmock_bench_cold";
+
+    @Param({ "20" })
+    public int tables;
+
+    @Param({ "false", "true" })
+    public boolean refreshDumpCache;
+
+    @Param({ "default", "ephemeral" })
+    public String profile;
+
+    private MySQLMockedDatabaseInfo mockedDatabaseInfo;
+
+    @Setup(Level.Trial)
+    public void createSchema() throws SQLException {
+        BenchmarkDatabase.createSchema(SCHEMA, tables);
+    }
+
+    @Benchmark
+    public MySQLMockedDatabaseInfo mock() throws SQLException {
+        Properties properties = BenchmarkDatabase.properties(SCHEMA);
+        properties.put(MySQLMockPropertyEnum.REFRESH_DUMP_CACHE.getPropertyName(), String.valueOf(refreshDumpCache));
+        properties.put(MySQLMockPropertyEnum.PROFILE.getPropertyName(), profile);
+        mockedDatabaseInfo = MySQLMockManager.mock(properties);
+        return mockedDatabaseInfo;
+    }
+
+    @TearDown(Level.Iteration)
+    public void stopMock() {
+        BenchmarkDatabase.release(mockedDatabaseInfo);
+        mockedDatabaseInfo = null;
+    }
+
+    @TearDown(Level.Trial)
+    public void dropSchema() throws SQLException {
+        BenchmarkDatabase.dropSchema(SCHEMA);
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ *    Copyright 2019 MetaRing s.r.l.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.metaring.mock.jdbc.mysql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class StatementThroughputBenchmark {
+
+    private static final String SCHEMA = "mysqlmock_bench_statement";
+
+    @Param({ "default", "ephemeral" })
+    public String profile;
+
+    private Driver driver;
+    private Connection connection;
+    private PreparedStatement insert;
+    private PreparedStatement update;
+    private MySQLMockedDatabaseInfo mockedDatabaseInfo;
+
+    @Setup(Level.Trial)
+    public void mock() throws SQLException {
+        BenchmarkDatabase.createSchema(SCHEMA, 1);
+        driver = new Driver();
+        String url = BenchmarkDatabase.url(SCHEMA, Collections.singletonMap(MySQLMockPropertyEnum.PROFILE.getPropertyName(), profile));
+        connection = driver.connect(url, BenchmarkDatabase.credentials());
+        mockedDatabaseInfo = MySQLMockConnectionInterceptor.mockedDatabaseInfo(connection);
+        connection.setAutoCommit(false);
+        insert = connection.prepareStatement("INSERT INTO t0 (name) VALUES (?)", Statement.RETURN_GENERATED_KEYS);
+        update = connection.prepareStatement("UPDATE t0 SET name = ? WHERE id = ?");
+    }
+
+    @Benchmark
+    public int insertUpdateCommit() throws SQLException {
+        insert.setString(1, "row");
+        insert.executeUpdate();
+        int id;
+        try (ResultSet generatedKeys = insert.getGeneratedKeys()) {
+            generatedKeys.next();
+            id = generatedKeys.getInt(1);
+        }
+        update.setString(1, "updated");
+        update.setInt(2, id);
+        int updated = update.executeUpdate();
+        connection.commit();
+        return updated;
+    }
+
+    @TearDown(Level.Trial)
+    public void stopMock() throws SQLException {
+        insert.close();
+        update.close();
+        connection.close();
+        BenchmarkDatabase.release(mockedDatabaseInfo);
+        BenchmarkDatabase.dropSchema(SCHEMA);
+    }
+}
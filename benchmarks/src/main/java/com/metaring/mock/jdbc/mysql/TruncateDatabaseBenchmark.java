@@ -0,0 +1,90 @@
+/**
+ *    Copyright 2019 MetaRing s.r.l.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.metaring.mock.jdbc.mysql;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class TruncateDatabaseBenchmark {
+
+    private static final int DIRTY_TABLES = 5;
+
+    @Param({ "10", "100", "1000" })
+    public int tables;
+
+    @Param({ "false", "true" })
+    public boolean dirtyTracking;
+
+    private String schema;
+    private Driver driver;
+    private Connection connection;
+    private MySQLMockedDatabaseInfo mockedDatabaseInfo;
+
+    @Setup(Level.Trial)
+    public void mock() throws SQLException {
+        schema = "mysqlmock_bench_truncate_" + tables;
+        BenchmarkDatabase.createSchema(schema, tables);
+        driver = new Driver();
+        String url = BenchmarkDatabase.url(schema, Collections.singletonMap(MySQLMockPropertyEnum.DIRTY_TRACKING.getPropertyName(), String.valueOf(dirtyTracking)));
+        connection = driver.connect(url, BenchmarkDatabase.credentials());
+        mockedDatabaseInfo = MySQLMockConnectionInterceptor.mockedDatabaseInfo(connection);
+    }
+
+    @Setup(Level.Invocation)
+    public void dirty() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            for (int i = 0; i < Math.min(DIRTY_TABLES, tables); i++) {
+                statement.executeUpdate(String.format("INSERT INTO t%d (name) VALUES ('row')", i));
+            }
+        }
+    }
+
+    @Benchmark
+    public void truncateDatabase() throws SQLException {
+        MySQLMockUtilities.truncateDatabase(connection);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopMock() throws SQLException {
+        connection.close();
+        BenchmarkDatabase.release(mockedDatabaseInfo);
+        BenchmarkDatabase.dropSchema(schema);
+    }
+}
@@ -19,15 +19,19 @@ package com.metaring.mock.jdbc.mysql;
 import java.net.InetAddress;
 import java.net.URI;
 import java.net.URLDecoder;
+import java.net.UnknownHostException;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.DriverPropertyInfo;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
+import java.util.Arrays;
 import java.util.Enumeration;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Logger;
 
 import com.metaring.framework.Core;
@@ -38,10 +42,13 @@ import com.metaring.framework.util.StringUtil;
 public class Driver implements java.sql.Driver {
 
     private static final String DEFAULT_MYSQL_ORIGINAL_DRIVER_CLASS_NAME = "com.mysql.jdbc.Driver";
+    private static final int DEFAULT_ORIGINAL_PORT = 3306;
 
     static final java.sql.Driver MYSQL_ORIGINAL_DRIVER;
 
-    final Map<String, MySQLMockedDatabaseInfo> alreadyMockedDatabases = new HashMap<>();
+    static final ConcurrentMap<String, CompletableFuture<MySQLMockedDatabaseInfo>> alreadyMockedDatabases = new ConcurrentHashMap<>();
+
+    static final ConcurrentMap<List<Object>, MySQLMockConnectionPool> pooledConnections = new ConcurrentHashMap<>();
 
     static {
         MYSQL_ORIGINAL_DRIVER = getMySQLOriginalDriver();
@@ -51,6 +58,15 @@ public class Driver implements java.sql.Driver {
         catch (SQLException ex) {
             throw new RuntimeException("Can't register driver", ex);
         }
+        try {
+            Properties configurationProperties = getConfigurationProperties();
+            String binLocation = MySQLMockPropertyEnum.BIN_LOCATION.getValue(configurationProperties);
+            if (binLocation != null) {
+                MySQLMockInstancePool.configure(MySQLMockManager.binLocation(binLocation), configurationProperties);
+            }
+        }
+        catch (Exception e) {
+        }
     }
 
     public Driver() {
@@ -100,20 +116,101 @@ public class Driver implements java.sql.Driver {
 
     @Override
     public Connection connect(String url, Properties info) throws SQLException {
+        if (MySQLMockIsolationScope.isActive()) {
+            Properties resolvedProperties = resolveProperties(url, info);
+            MySQLMockIsolationScope isolationScope = resolvedProperties == null ? null : MySQLMockIsolationScope.current(resolvedProperties.getProperty(MySQLMockPropertyEnum.MOCK_KEY.getPropertyName()));
+            if (isolationScope != null) {
+                return isolationScope.connection();
+            }
+        }
+
+        List<Object> pooledConnectionsKey = Arrays.asList(url, copyProperties(info));
+        MySQLMockConnectionPool connectionPool = pooledConnections.get(pooledConnectionsKey);
+        if (connectionPool != null) {
+            return MySQLMockConnectionInterceptor.wrap(connectionPool.borrow(), connectionPool.mockedDatabaseInfo);
+        }
+
         Properties resolvedProperties = resolveProperties(url, info);
         if (resolvedProperties == null) {
             return null;
         }
-        MySQLMockedDatabaseInfo mockedDatabaseInfo = alreadyMockedDatabases.get(resolvedProperties.getProperty(MySQLMockPropertyEnum.MOCK_KEY.getPropertyName()));
-        if (mockedDatabaseInfo == null) {
-            mockedDatabaseInfo = MySQLMockManager.mock(resolvedProperties);
-            alreadyMockedDatabases.put(resolvedProperties.getProperty(MySQLMockPropertyEnum.MOCK_KEY.getPropertyName()), mockedDatabaseInfo);
+        if (MySQLMockRecordingMode.of(resolvedProperties) == MySQLMockRecordingMode.REPLAY) {
+            return MySQLMockReplayServer.connect(resolvedProperties);
+        }
+        MySQLMockedDatabaseInfo mockedDatabaseInfo = mockedDatabaseInfo(resolvedProperties);
+
+        MySQLMockTenants tenants = mockedDatabaseInfo.tenants;
+        if (tenants != null) {
+            mockedDatabaseInfo = tenants.lease();
         }
 
-        return MYSQL_ORIGINAL_DRIVER.connect(mockedDatabaseInfo.mockedUrl, cleanProperties(resolvedProperties));
+        if (MySQLMockPropertyEnum.POOLED.getBoolean(resolvedProperties)) {
+            connectionPool = MySQLMockConnectionPool.get(mockedDatabaseInfo, cleanProperties(resolvedProperties));
+            if (tenants == null) {
+                pooledConnections.putIfAbsent(pooledConnectionsKey, connectionPool);
+            }
+            return MySQLMockConnectionInterceptor.wrap(connectionPool.borrow(), mockedDatabaseInfo);
+        }
+
+        return MySQLMockConnectionInterceptor.wrap(mockedDatabaseInfo.clientConnection(cleanProperties(resolvedProperties)), mockedDatabaseInfo);
     }
 
-    private final Properties resolveProperties(String url, Properties info) throws SQLException {
+    final MySQLMockIsolationScope isolationScope(String url, Properties info) throws SQLException {
+        Properties resolvedProperties = resolveProperties(url, info);
+        if (resolvedProperties == null) {
+            throw new SQLException(String.format("'%s' is not a MySQL Mock URL.", url));
+        }
+        if (MySQLMockRecordingMode.of(resolvedProperties) != MySQLMockRecordingMode.OFF) {
+            throw new SQLException("MySQL Mock isolation scopes are not available while recording or replaying.");
+        }
+        MySQLMockedDatabaseInfo mockedDatabaseInfo = mockedDatabaseInfo(resolvedProperties);
+        MySQLMockTenants leasedTenants = null;
+        if (mockedDatabaseInfo.tenants != null) {
+            if (!mockedDatabaseInfo.tenants.isLeased()) {
+                leasedTenants = mockedDatabaseInfo.tenants;
+            }
+            mockedDatabaseInfo = mockedDatabaseInfo.tenants.lease();
+        }
+        try {
+            return MySQLMockIsolationScope.begin(resolvedProperties.getProperty(MySQLMockPropertyEnum.MOCK_KEY.getPropertyName()), mockedDatabaseInfo, cleanProperties(resolvedProperties), leasedTenants);
+        }
+        catch (SQLException | RuntimeException e) {
+            if (leasedTenants != null) {
+                leasedTenants.release();
+            }
+            throw e;
+        }
+    }
+
+    private static final Properties copyProperties(Properties info) {
+        Properties properties = new Properties();
+        if (info != null) {
+            properties.putAll(info);
+        }
+        return properties;
+    }
+
+    static final MySQLMockedDatabaseInfo mockedDatabaseInfo(Properties resolvedProperties) throws SQLException {
+        String mockKey = resolvedProperties.getProperty(MySQLMockPropertyEnum.MOCK_KEY.getPropertyName());
+        CompletableFuture<MySQLMockedDatabaseInfo> mocking = alreadyMockedDatabases.get(mockKey);
+        if (mocking == null) {
+            CompletableFuture<MySQLMockedDatabaseInfo> newMocking = new CompletableFuture<>();
+            mocking = alreadyMockedDatabases.putIfAbsent(mockKey, newMocking);
+            if (mocking == null) {
+                mocking = newMocking;
+                try {
+                    newMocking.complete(MySQLMockManager.mock(resolvedProperties));
+                }
+                catch (Throwable e) {
+                    alreadyMockedDatabases.remove(mockKey, newMocking);
+                    newMocking.completeExceptionally(e);
+                }
+            }
+        }
+        return MySQLMockProvisioning.await(mocking);
+    }
+
+    final Properties resolveProperties(String url, Properties info) throws SQLException {
         if (!acceptsURL(url)) {
             return null;
         }
@@ -145,7 +242,7 @@ public class Driver implements java.sql.Driver {
                 String[] queryParams = url.substring(queryParamsLocation).split("&");
                 for (String queryParam : queryParams) {
                     try {
-                        String[] queryParamSplit = queryParam.split("=");
+                        String[] queryParamSplit = queryParam.split("=", 2);
                         String name = queryParamSplit[0];
                         String value = queryParamSplit[1];
                         resolvedProperties.putIfAbsent(name, URLDecoder.decode(value, CryptoUtil.CHARSET_UTF_8.name()));
@@ -164,7 +261,16 @@ public class Driver implements java.sql.Driver {
 
             path = resolvedProperties.getProperty(MySQLMockPropertyEnum.NAME.getPropertyName());
 
-            resolvedProperties.put(MySQLMockPropertyEnum.MOCK_KEY.getPropertyName(), String.format("%s:%d:%s", InetAddress.getByName(host).getHostAddress(), Integer.parseInt(resolvedProperties.get(MySQLMockPropertyEnum.MOCK_PORT.getPropertyName()).toString()), path));
+            String hostAddress = host;
+            try {
+                hostAddress = InetAddress.getByName(host).getHostAddress();
+            }
+            catch (UnknownHostException e) {
+            }
+
+            String serverKey = String.format("%s%s:%d:%d", MySQLMockBackend.of(resolvedProperties) == MySQLMockBackend.H2 ? "h2:" : "", hostAddress, MySQLMockPropertyEnum.ORIGINAL_PORT.getInt(resolvedProperties, DEFAULT_ORIGINAL_PORT), MySQLMockPropertyEnum.MOCK_PORT.getInt(resolvedProperties, 0));
+            resolvedProperties.put(MySQLMockPropertyEnum.SERVER_KEY.getPropertyName(), serverKey);
+            resolvedProperties.put(MySQLMockPropertyEnum.MOCK_KEY.getPropertyName(), serverKey + ":" + path);
 
             return resolvedProperties;
         }
@@ -173,7 +279,7 @@ public class Driver implements java.sql.Driver {
         }
     }
 
-    private final Properties cleanProperties(Properties resolvedProperties) {
+    static final Properties cleanProperties(Properties resolvedProperties) {
         Properties cleanProperties = new Properties();
         if (resolvedProperties != null) {
             cleanProperties.putAll(resolvedProperties);
@@ -216,6 +322,16 @@ public class Driver implements java.sql.Driver {
     }
 
     static final Connection getConfigurationConnection() throws SQLException {
+        Properties properties = getConfigurationProperties();
+        return DriverManager.getConnection(properties.getProperty(MySQLMockPropertyEnum.URL.getPropertyName()), properties);
+    }
+
+    static final MySQLMockIsolationScope getConfigurationIsolationScope() throws SQLException {
+        Properties properties = getConfigurationProperties();
+        return new Driver().isolationScope(properties.getProperty(MySQLMockPropertyEnum.URL.getPropertyName()), properties);
+    }
+
+    private static final Properties getConfigurationProperties() {
         Properties properties = new Properties();
         DataRepresentation persistenceConfiguration = Core.SYSKB.get("persistence");
         for (String key : persistenceConfiguration.getProperties()) {
@@ -224,6 +340,6 @@ public class Driver implements java.sql.Driver {
         if (persistenceConfiguration.hasProperty(MySQLMockPropertyEnum.CFG_MOCK_PORT)) {
             properties.put(MySQLMockPropertyEnum.MOCK_PORT.getPropertyName(), persistenceConfiguration.getDigit(MySQLMockPropertyEnum.CFG_MOCK_PORT));
         }
-        return DriverManager.getConnection(properties.getProperty(MySQLMockPropertyEnum.URL.getPropertyName()), properties);
+        return properties;
     }
 }
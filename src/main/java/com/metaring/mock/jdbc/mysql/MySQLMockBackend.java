@@ -0,0 +1,52 @@
+/**
+ *    Copyright 2019 MetaRing s.r.l.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.metaring.mock.jdbc.mysql;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Properties;
+
+enum MySQLMockBackend {
+
+    MYSQLD,
+
+    H2;
+
+    static final MySQLMockBackend of(Properties properties) {
+        String backend = MySQLMockPropertyEnum.BACKEND.getValue(properties);
+        if (backend == null) {
+            return MYSQLD;
+        }
+        for (MySQLMockBackend mockBackend : values()) {
+            if (mockBackend.name().equalsIgnoreCase(backend)) {
+                return mockBackend;
+            }
+        }
+        throw new RuntimeException(String.format("Unknown MySQL Mock backend '%s', expected one of %s.", backend, Arrays.toString(values()).toLowerCase()));
+    }
+
+    void check(Properties properties) throws SQLException {
+        if (this != H2) {
+            return;
+        }
+        MySQLMockEmbedded.driver();
+        if (MySQLMockPropertyEnum.DAEMON.getBoolean(properties) || MySQLMockPropertyEnum.TENANTS.getInt(properties, 0) > 0 || MySQLMockTransport.of(properties) != MySQLMockTransport.TCP) {
+            throw new SQLException(String.format("MySQL Mock h2 backend cannot be combined with '%s', '%s' or '%s=socket'.", MySQLMockPropertyEnum.DAEMON.getPropertyName(), MySQLMockPropertyEnum.TENANTS.getPropertyName(), MySQLMockPropertyEnum.TRANSPORT.getPropertyName()));
+        }
+    }
+}
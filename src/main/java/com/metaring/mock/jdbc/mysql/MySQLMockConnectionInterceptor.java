@@ -0,0 +1,239 @@
+/**
+ *    Copyright 2019 MetaRing s.r.l.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.metaring.mock.jdbc.mysql;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+class MySQLMockConnectionInterceptor implements InvocationHandler {
+
+    interface MySQLMockConnection {
+        MySQLMockedDatabaseInfo getMockedDatabaseInfo();
+
+        Connection getPhysicalConnection();
+    }
+
+    private final Connection connection;
+    private final MySQLMockedDatabaseInfo mockedDatabaseInfo;
+
+    private MySQLMockConnectionInterceptor(Connection connection, MySQLMockedDatabaseInfo mockedDatabaseInfo) {
+        this.connection = connection;
+        this.mockedDatabaseInfo = mockedDatabaseInfo;
+    }
+
+    static final Connection wrap(Connection connection, MySQLMockedDatabaseInfo mockedDatabaseInfo) {
+        if (connection != null) {
+            mockedDatabaseInfo.metrics.connected();
+        }
+        if (connection == null || mockedDatabaseInfo.statementListeners.isEmpty()) {
+            return connection;
+        }
+        return (Connection) Proxy.newProxyInstance(MySQLMockConnectionInterceptor.class.getClassLoader(), new Class<?>[] { Connection.class, MySQLMockConnection.class }, new MySQLMockConnectionInterceptor(connection, mockedDatabaseInfo));
+    }
+
+    static final MySQLMockedDatabaseInfo mockedDatabaseInfo(Connection connection) {
+        try {
+            if (connection instanceof MySQLMockConnection) {
+                return ((MySQLMockConnection) connection).getMockedDatabaseInfo();
+            }
+            if (connection.isWrapperFor(MySQLMockConnection.class)) {
+                return connection.unwrap(MySQLMockConnection.class).getMockedDatabaseInfo();
+            }
+            String url = connection.getMetaData().getURL();
+            for (CompletableFuture<MySQLMockedDatabaseInfo> mocking : Driver.alreadyMockedDatabases.values()) {
+                if (!mocking.isDone() || mocking.isCompletedExceptionally()) {
+                    continue;
+                }
+                MySQLMockedDatabaseInfo mockedDatabaseInfo = mocking.join();
+                if (mockedDatabaseInfo.mockedUrl.equals(url)) {
+                    return mockedDatabaseInfo;
+                }
+                if (mockedDatabaseInfo.tenants != null && mockedDatabaseInfo.tenants.find(url) != null) {
+                    return mockedDatabaseInfo.tenants.find(url);
+                }
+            }
+        }
+        catch (SQLException | RuntimeException e) {
+        }
+        return null;
+    }
+
+    static final Connection physicalConnection(Connection connection) throws SQLException {
+        if (connection instanceof MySQLMockConnection) {
+            return ((MySQLMockConnection) connection).getPhysicalConnection();
+        }
+        if (connection.isWrapperFor(MySQLMockConnection.class)) {
+            return connection.unwrap(MySQLMockConnection.class).getPhysicalConnection();
+        }
+        return connection;
+    }
+
+    static final Statement intercept(Statement statement, Class<?> statementType, Connection connection, String preparedSql, List<MySQLMockStatementListener> statementListeners) {
+        return (Statement) Proxy.newProxyInstance(MySQLMockConnectionInterceptor.class.getClassLoader(), new Class<?>[] { statementType }, new StatementInterceptor(statement, connection, preparedSql, statementListeners));
+    }
+
+    private static final void fire(List<MySQLMockStatementListener> statementListeners, String sql) {
+        if (sql == null) {
+            return;
+        }
+        for (MySQLMockStatementListener statementListener : statementListeners) {
+            statementListener.executing(sql);
+        }
+    }
+
+    private static final void fireExecuted(List<MySQLMockStatementListener> statementListeners, String sql, Object[] parameters, long nanos) {
+        if (sql == null) {
+            return;
+        }
+        for (MySQLMockStatementListener statementListener : statementListeners) {
+            statementListener.executed(sql, parameters, nanos);
+        }
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "getMockedDatabaseInfo":
+                return mockedDatabaseInfo;
+            case "getPhysicalConnection":
+                return connection;
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "unwrap":
+                if (((Class<?>) args[0]).isInstance(proxy)) {
+                    return proxy;
+                }
+                break;
+            case "isWrapperFor":
+                if (((Class<?>) args[0]).isInstance(proxy)) {
+                    return true;
+                }
+                break;
+            default:
+                break;
+        }
+        Object result;
+        try {
+            result = method.invoke(connection, args);
+        }
+        catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+        if (result instanceof Statement && Statement.class.isAssignableFrom(method.getReturnType())) {
+            String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+            return intercept((Statement) result, method.getReturnType(), (Connection) proxy, sql, mockedDatabaseInfo.statementListeners);
+        }
+        return result;
+    }
+
+    private static class StatementInterceptor implements InvocationHandler {
+
+        private final Statement statement;
+        private final Connection connection;
+        private final String preparedSql;
+        private final List<MySQLMockStatementListener> statementListeners;
+        private final List<String> batch = new ArrayList<>();
+        private Object[] parameters;
+
+        private StatementInterceptor(Statement statement, Connection connection, String preparedSql, List<MySQLMockStatementListener> statementListeners) {
+            this.statement = statement;
+            this.connection = connection;
+            this.preparedSql = preparedSql;
+            this.statementListeners = statementListeners;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String methodName = method.getName();
+            String executedSql = null;
+            List<String> executedBatch = null;
+            switch (methodName) {
+                case "getConnection":
+                    return connection;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "addBatch":
+                    batch.add(args != null && args.length > 0 ? (String) args[0] : preparedSql);
+                    break;
+                case "clearBatch":
+                    batch.clear();
+                    break;
+                case "clearParameters":
+                    parameters = null;
+                    break;
+                case "executeBatch":
+                case "executeLargeBatch":
+                    for (String sql : batch) {
+                        fire(statementListeners, sql);
+                    }
+                    executedBatch = new ArrayList<>(batch);
+                    batch.clear();
+                    break;
+                default:
+                    if (methodName.startsWith("execute")) {
+                        executedSql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : preparedSql;
+                        fire(statementListeners, executedSql);
+                    }
+                    else if (methodName.startsWith("set") && preparedSql != null && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                        parameter((Integer) args[0], methodName.equals("setNull") ? null : args[1]);
+                    }
+                    break;
+            }
+            long start = executedSql != null || executedBatch != null ? System.nanoTime() : 0;
+            try {
+                return method.invoke(statement, args);
+            }
+            catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            finally {
+                if (executedSql != null) {
+                    fireExecuted(statementListeners, executedSql, executedSql == preparedSql ? parameters : null, System.nanoTime() - start);
+                }
+                else if (executedBatch != null && !executedBatch.isEmpty()) {
+                    long nanos = (System.nanoTime() - start) / executedBatch.size();
+                    for (String sql : executedBatch) {
+                        fireExecuted(statementListeners, sql, null, nanos);
+                    }
+                }
+            }
+        }
+
+        private void parameter(int index, Object value) {
+            if (index < 1) {
+                return;
+            }
+            if (parameters == null || parameters.length < index) {
+                parameters = parameters == null ? new Object[Math.max(index, 8)] : Arrays.copyOf(parameters, Math.max(index, parameters.length * 2));
+            }
+            parameters[index - 1] = value;
+        }
+    }
+}
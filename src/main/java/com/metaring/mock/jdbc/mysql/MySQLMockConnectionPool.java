@@ -0,0 +1,303 @@
+/**
+ *    Copyright 2019 MetaRing s.r.l.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.metaring.mock.jdbc.mysql;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+class MySQLMockConnectionPool {
+
+    private static final int DEFAULT_POOL_SIZE = 8;
+    private static final long DEFAULT_POOL_TIMEOUT = 30000;
+    private static final int TRACKED_STATEMENTS_PURGE_THRESHOLD = 64;
+
+    private static final String USER_VARIABLES_QUERY = "SELECT VARIABLE_NAME FROM performance_schema.user_variables_by_thread WHERE THREAD_ID = (SELECT THREAD_ID FROM performance_schema.threads WHERE PROCESSLIST_ID = CONNECTION_ID())";
+
+    private static final ConcurrentMap<List<Object>, MySQLMockConnectionPool> CONNECTION_POOLS = new ConcurrentHashMap<>();
+
+    final MySQLMockedDatabaseInfo mockedDatabaseInfo;
+
+    private final String url;
+    private final Properties properties;
+    private final String catalog;
+    private final int maxSize;
+    private final long timeout;
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<Connection> idleConnections = new LinkedBlockingDeque<>();
+
+    private volatile Integer defaultTransactionIsolation;
+    private volatile Method resetServerStateMethod;
+    private volatile boolean resetServerStateResolved;
+
+    private final LongAdder created = new LongAdder();
+    private final LongAdder borrowed = new LongAdder();
+    private final LongAdder returned = new LongAdder();
+    private final LongAdder discarded = new LongAdder();
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+
+    private MySQLMockConnectionPool(MySQLMockedDatabaseInfo mockedDatabaseInfo, Properties properties) {
+        this.mockedDatabaseInfo = mockedDatabaseInfo;
+        this.url = mockedDatabaseInfo.mockedUrl;
+        this.properties = properties;
+        this.catalog = mockedDatabaseInfo.dbName;
+        this.maxSize = Math.max(1, MySQLMockPropertyEnum.POOL_SIZE.getInt(mockedDatabaseInfo.mockProperties, DEFAULT_POOL_SIZE));
+        this.timeout = MySQLMockPropertyEnum.POOL_TIMEOUT.getLong(mockedDatabaseInfo.mockProperties, DEFAULT_POOL_TIMEOUT);
+        this.permits = new Semaphore(this.maxSize, true);
+    }
+
+    static final MySQLMockConnectionPool get(MySQLMockedDatabaseInfo mockedDatabaseInfo, Properties cleanProperties) {
+        return CONNECTION_POOLS.computeIfAbsent(Arrays.asList(mockedDatabaseInfo.mockedUrl, cleanProperties), key -> new MySQLMockConnectionPool(mockedDatabaseInfo, cleanProperties));
+    }
+
+    static final Map<String, MySQLMockConnectionPoolMetrics> allMetrics() {
+        Map<String, MySQLMockConnectionPoolMetrics> metrics = new LinkedHashMap<>();
+        for (MySQLMockConnectionPool connectionPool : CONNECTION_POOLS.values()) {
+            metrics.merge(connectionPool.url, connectionPool.metrics(), MySQLMockConnectionPoolMetrics::sum);
+        }
+        return metrics;
+    }
+
+    MySQLMockConnectionPoolMetrics metrics() {
+        int idle = idleConnections.size();
+        return new MySQLMockConnectionPoolMetrics(maxSize, maxSize - permits.availablePermits(), idle, created.sum(), borrowed.sum(), returned.sum(), discarded.sum(), waits.sum(), timeouts.sum(), TimeUnit.NANOSECONDS.toMillis(waitNanos.sum()));
+    }
+
+    Connection borrow() throws SQLException {
+        if (!permits.tryAcquire()) {
+            waits.increment();
+            long start = System.nanoTime();
+            boolean acquired;
+            try {
+                acquired = permits.tryAcquire(timeout, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a pooled MySQL Mock connection", e);
+            }
+            finally {
+                waitNanos.add(System.nanoTime() - start);
+            }
+            if (!acquired) {
+                timeouts.increment();
+                throw new SQLException(String.format("No pooled MySQL Mock connection to %s available within %d ms (pool size %d).", url, timeout, maxSize));
+            }
+        }
+        try {
+            Connection connection;
+            while ((connection = idleConnections.pollFirst()) != null && connection.isClosed()) {
+                discarded.increment();
+            }
+            if (connection == null) {
+                connection = mockedDatabaseInfo.clientConnection(properties);
+                created.increment();
+                if (defaultTransactionIsolation == null) {
+                    defaultTransactionIsolation = connection.getTransactionIsolation();
+                }
+            }
+            borrowed.increment();
+            return (Connection) Proxy.newProxyInstance(MySQLMockConnectionPool.class.getClassLoader(), new Class<?>[] { Connection.class }, new LogicalConnection(connection));
+        }
+        catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private void release(Connection connection) {
+        try {
+            reset(connection);
+            idleConnections.offerFirst(connection);
+            returned.increment();
+        }
+        catch (SQLException | RuntimeException e) {
+            discarded.increment();
+            try {
+                connection.close();
+            }
+            catch (SQLException closeException) {
+            }
+        }
+        finally {
+            permits.release();
+        }
+    }
+
+    private void reset(Connection connection) throws SQLException {
+        if (!connection.getAutoCommit()) {
+            connection.rollback();
+        }
+        resetSessionVariables(connection);
+        connection.setAutoCommit(true);
+        if (connection.isReadOnly()) {
+            connection.setReadOnly(false);
+        }
+        if (defaultTransactionIsolation != null && connection.getTransactionIsolation() != defaultTransactionIsolation) {
+            connection.setTransactionIsolation(defaultTransactionIsolation);
+        }
+        if (mockedDatabaseInfo.backend == MySQLMockBackend.H2) {
+            if (!catalog.equals(connection.getSchema())) {
+                connection.setSchema(catalog);
+            }
+        }
+        else if (!catalog.equals(connection.getCatalog())) {
+            connection.setCatalog(catalog);
+        }
+        connection.clearWarnings();
+    }
+
+    private void resetSessionVariables(Connection connection) throws SQLException {
+        if (!resetServerStateResolved) {
+            try {
+                resetServerStateMethod = connection.getClass().getMethod("resetServerState");
+            }
+            catch (NoSuchMethodException e) {
+            }
+            resetServerStateResolved = true;
+        }
+        if (resetServerStateMethod != null) {
+            try {
+                resetServerStateMethod.invoke(connection);
+                return;
+            }
+            catch (InvocationTargetException e) {
+                if (e.getCause() instanceof SQLException) {
+                    throw (SQLException) e.getCause();
+                }
+                throw new SQLException(e.getCause());
+            }
+            catch (IllegalAccessException e) {
+                resetServerStateMethod = null;
+            }
+        }
+        try (Statement statement = connection.createStatement()) {
+            List<String> userVariables = new ArrayList<>();
+            try (ResultSet resultSet = statement.executeQuery(USER_VARIABLES_QUERY)) {
+                while (resultSet.next()) {
+                    userVariables.add("@`" + resultSet.getString(1).replace("`", "``") + "` = NULL");
+                }
+            }
+            if (!userVariables.isEmpty()) {
+                statement.execute("SET " + String.join(", ", userVariables));
+            }
+        }
+        catch (SQLException e) {
+        }
+    }
+
+    private class LogicalConnection implements InvocationHandler {
+
+        private final Connection connection;
+        private final List<Statement> statements = new ArrayList<>();
+        private boolean closed;
+
+        private LogicalConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String methodName = method.getName();
+            switch (methodName) {
+                case "close":
+                    close();
+                    return null;
+                case "isClosed":
+                    return closed;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled " + connection;
+                case "unwrap":
+                    if (((Class<?>) args[0]).isInstance(proxy)) {
+                        return proxy;
+                    }
+                    break;
+                case "isWrapperFor":
+                    if (((Class<?>) args[0]).isInstance(proxy)) {
+                        return true;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("Connection is closed.");
+            }
+            try {
+                Object result = method.invoke(connection, args);
+                if (result instanceof Statement) {
+                    track((Statement) result);
+                }
+                return result;
+            }
+            catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private void track(Statement statement) throws SQLException {
+            if (statements.size() >= TRACKED_STATEMENTS_PURGE_THRESHOLD) {
+                Iterator<Statement> iterator = statements.iterator();
+                while (iterator.hasNext()) {
+                    if (iterator.next().isClosed()) {
+                        iterator.remove();
+                    }
+                }
+            }
+            statements.add(statement);
+        }
+
+        private void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (Statement statement : statements) {
+                try {
+                    statement.close();
+                }
+                catch (SQLException e) {
+                }
+            }
+            statements.clear();
+            release(connection);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ *    Copyright 2019 MetaRing s.r.l.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.metaring.mock.jdbc.mysql;
+
+public final class MySQLMockConnectionPoolMetrics {
+
+    private final int maxSize;
+    private final int active;
+    private final int idle;
+    private final long created;
+    private final long borrowed;
+    private final long returned;
+    private final long discarded;
+    private final long waits;
+    private final long timeouts;
+    private final long waitMillis;
+
+    MySQLMockConnectionPoolMetrics(int maxSize, int active, int idle, long created, long borrowed, long returned, long discarded, long waits, long timeouts, long waitMillis) {
+        this.maxSize = maxSize;
+        this.active = active;
+        this.idle = idle;
+        this.created = created;
+        this.borrowed = borrowed;
+        this.returned = returned;
+        this.discarded = discarded;
+        this.waits = waits;
+        this.timeouts = timeouts;
+        this.waitMillis = waitMillis;
+    }
+
+    static final MySQLMockConnectionPoolMetrics sum(MySQLMockConnectionPoolMetrics first, MySQLMockConnectionPoolMetrics second) {
+        return new MySQLMockConnectionPoolMetrics(first.maxSize + second.maxSize, first.active + second.active, first.idle + second.idle, first.created + second.created, first.borrowed + second.borrowed, first.returned + second.returned, first.discarded + second.discarded, first.waits + second.waits, first.timeouts + second.timeouts, first.waitMillis + second.waitMillis);
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getActive() {
+        return active;
+    }
+
+    public int getIdle() {
+        return idle;
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    public long getBorrowed() {
+        return borrowed;
+    }
+
+    public long getReturned() {
+        return returned;
+    }
+
+    public long getDiscarded() {
+        return discarded;
+    }
+
+    public long getWaits() {
+        return waits;
+    }
+
+    public long getTimeouts() {
+        return timeouts;
+    }
+
+    public long getWaitMillis() {
+        return waitMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("maxSize=%d, active=%d, idle=%d, created=%d, borrowed=%d, returned=%d, discarded=%d, waits=%d, timeouts=%d, waitMillis=%d", maxSize, active, idle, created, borrowed, returned, discarded, waits, timeouts, waitMillis);
+    }
+}
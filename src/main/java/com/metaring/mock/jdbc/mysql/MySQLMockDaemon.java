@@ -0,0 +1,479 @@
+/**
+ *    Copyright 2019 MetaRing s.r.l.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.metaring.mock.jdbc.mysql;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import com.metaring.java.process.fork.JavaChildProcess;
+
+class MySQLMockDaemon {
+
+    private static final String DAEMONS_FOLDER = "daemons";
+    private static final String INSTANCE_FOLDER = "instance";
+    private static final String LEASES_FOLDER = "leases";
+    private static final String STATE_FILE = "state.properties";
+    private static final String SCHEMA_FILE = "schema.sql";
+    private static final String LOCK_FILE = ".lock";
+    private static final String WATCHDOG_LOCK_FILE = "watchdog.lock";
+    private static final String WATCHDOG_LOG_FILE = "watchdog.log";
+    private static final String LEASE_EXTENSION = ".lease";
+    private static final String TEMP_FOLDER_PREFIX = "mysqlmock";
+
+    private static final String STATE_DB_NAME = "dbName";
+    private static final String STATE_HOST = "host";
+    private static final String STATE_PORT = "port";
+    private static final String STATE_SOCKET = "socket";
+    private static final String STATE_FINGERPRINT = "fingerprint";
+    private static final String STATE_PID = "pid";
+    private static final String STATE_LEASES = "leases";
+    private static final String STATE_STARTED = "started";
+
+    private static final long DEFAULT_IDLE_TIMEOUT = 600000;
+    private static final long MAX_WATCHDOG_INTERVAL = 5000;
+    private static final long ATTACH_PROBE_TIMEOUT = 1000;
+
+    private static final String LEASE_ID = UUID.randomUUID().toString().replace("-", "").substring(0, 8);
+
+    private static final Map<Path, FileChannel> LEASES = new ConcurrentHashMap<>();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            for (Path daemonPath : LEASES.keySet()) {
+                release(daemonPath);
+            }
+        }, "mysql-mock-daemon-leases"));
+    }
+
+    static final void mock(MySQLMockedDatabaseInfo mockedDatabaseInfo, String binLocation, int mockPort, Properties properties) throws SQLException {
+        Path daemonPath = MySQLMockDataTemplate.cacheFolder(properties).resolve(DAEMONS_FOLDER).resolve(daemonKey(binLocation, mockPort, properties)).toAbsolutePath();
+        File rootFolder = daemonPath.resolve(INSTANCE_FOLDER).toFile();
+
+        mockedDatabaseInfo.rootFolder = rootFolder;
+        mockedDatabaseInfo.binLocation = binLocation;
+        mockedDatabaseInfo.daemonLease = LEASE_ID;
+        mockedDatabaseInfo.mockedUrl = mockedDatabaseInfo.mockUrl();
+        mockedDatabaseInfo.dumpDBCommands = MySQLMockManager.dumpDBCommands(rootFolder, properties, binLocation);
+
+        try {
+            MySQLMockFiles.locked(daemonPath.resolve(LOCK_FILE), () -> {
+                MySQLMockDumpCache.Entry dumpCacheEntry = MySQLMockDumpCache.resolve(properties);
+                Properties state = readState(daemonPath);
+                if (state != null && isReady(rootFolder, mockPort, properties)) {
+                    if (dumpCacheEntry.fingerprint.equals(state.getProperty(STATE_FINGERPRINT))) {
+                        attach(mockedDatabaseInfo, daemonPath, state, dumpCacheEntry, properties);
+                        return null;
+                    }
+                    int leases = liveLeases(daemonPath);
+                    if (leases > 0) {
+                        throw new SQLException(String.format("Schema of '%s' changed but its MySQL Mock daemon in %s is still leased by %d other JVMs.", mockedDatabaseInfo.dbName, daemonPath, leases));
+                    }
+                    if (migrate(mockedDatabaseInfo, daemonPath, state, dumpCacheEntry, properties)) {
+                        attach(mockedDatabaseInfo, daemonPath, state, dumpCacheEntry, properties);
+                        return null;
+                    }
+                    System.err.println(String.format("MySQL Mock daemon of '%s' has an outdated schema (%s), restarting it.", mockedDatabaseInfo.dbName, state.getProperty(STATE_FINGERPRINT)));
+                }
+                else if (state != null || rootFolder.exists()) {
+                    System.err.println(String.format("MySQL Mock reaping orphaned daemon instance in %s.", rootFolder));
+                }
+                MySQLMockManager.cleanup(rootFolder);
+                Files.deleteIfExists(daemonPath.resolve(STATE_FILE));
+                Files.deleteIfExists(daemonPath.resolve(SCHEMA_FILE));
+                reap(daemonPath);
+                start(mockedDatabaseInfo, daemonPath, binLocation, mockPort, properties, dumpCacheEntry);
+                return null;
+            });
+        }
+        catch (IOException e) {
+            throw new SQLException(String.format("Error while accessing MySQL Mock daemon state in %s.", daemonPath), e);
+        }
+    }
+
+    private static final void attach(MySQLMockedDatabaseInfo mockedDatabaseInfo, Path daemonPath, Properties state, MySQLMockDumpCache.Entry dumpCacheEntry, Properties properties) throws IOException, SQLException {
+        long start = System.nanoTime();
+        mockedDatabaseInfo.dumpFingerprint = dumpCacheEntry.fingerprint;
+        mockedDatabaseInfo.dumpPath = dumpCacheEntry.dumpPath;
+        MySQLMockReferenceData referenceData = MySQLMockReferenceData.of(properties);
+        if (referenceData != null) {
+            mockedDatabaseInfo.referenceData = referenceData.extract(properties, dumpCacheEntry, new MySQLMockProvisioning(mockedDatabaseInfo.metrics));
+        }
+        lease(daemonPath);
+        int leases = liveLeases(daemonPath);
+        if (leases == 1) {
+            Connection connection = mockedDatabaseInfo.maintenanceConnection();
+            for (String dbName : MySQLMockManager.databases(properties)) {
+                if (!dbName.equals(mockedDatabaseInfo.dbName)) {
+                    MySQLMockUtilities.truncateAllTables(connection, dbName);
+                    if (mockedDatabaseInfo.referenceData != null) {
+                        mockedDatabaseInfo.referenceData.restore(connection, dbName, null);
+                    }
+                }
+            }
+            MySQLMockUtilities.resetDatabase(connection, mockedDatabaseInfo);
+            dropTenants(connection, mockedDatabaseInfo.dbName);
+        }
+        watch(daemonPath, properties);
+        state.put(STATE_LEASES, String.valueOf(leases));
+        writeState(daemonPath, state);
+        System.err.println(String.format("MySQL Mock attached to daemon of '%s' (%d leases) in %d ms.", mockedDatabaseInfo.dbName, leases, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+    }
+
+    private static final boolean migrate(MySQLMockedDatabaseInfo mockedDatabaseInfo, Path daemonPath, Properties state, MySQLMockDumpCache.Entry dumpCacheEntry, Properties properties) {
+        Path schemaPath = daemonPath.resolve(SCHEMA_FILE);
+        if (!Files.exists(schemaPath)) {
+            return false;
+        }
+        try {
+            MySQLMockProvisioning provisioning = new MySQLMockProvisioning(mockedDatabaseInfo.metrics);
+            MySQLMockManager.dumpDB(mockedDatabaseInfo, dumpCacheEntry, properties, provisioning);
+            MySQLMockSchemaMigration.migrate(mockedDatabaseInfo, schemaPath, dumpCacheEntry.dumpPath, provisioning.metrics);
+            remember(daemonPath, dumpCacheEntry.dumpPath);
+            state.put(STATE_FINGERPRINT, dumpCacheEntry.fingerprint);
+            return true;
+        }
+        catch (IOException | SQLException | RuntimeException e) {
+            System.err.println(String.format("MySQL Mock could not migrate the schema of daemon '%s' in place: %s", mockedDatabaseInfo.dbName, e.getMessage()));
+            return false;
+        }
+    }
+
+    private static final void remember(Path daemonPath, Path dumpPath) throws IOException {
+        Path tempPath = daemonPath.resolve(SCHEMA_FILE + ".tmp");
+        Files.copy(dumpPath, tempPath, StandardCopyOption.REPLACE_EXISTING);
+        Files.move(tempPath, daemonPath.resolve(SCHEMA_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static final void start(MySQLMockedDatabaseInfo mockedDatabaseInfo, Path daemonPath, String binLocation, int mockPort, Properties properties, MySQLMockDumpCache.Entry dumpCacheEntry) throws IOException, SQLException {
+        File rootFolder = mockedDatabaseInfo.rootFolder;
+        Files.createDirectories(rootFolder.toPath());
+        MySQLMockManager.provision(mockedDatabaseInfo, rootFolder, binLocation, mockPort, properties, null, dumpCacheEntry);
+        remember(daemonPath, mockedDatabaseInfo.dumpPath);
+        lease(daemonPath);
+        Properties state = new Properties();
+        state.put(STATE_DB_NAME, mockedDatabaseInfo.dbName);
+        state.put(STATE_HOST, "localhost");
+        state.put(STATE_PORT, String.valueOf(mockPort));
+        state.put(STATE_SOCKET, MySQLMockManager.socketFile(rootFolder).getAbsolutePath());
+        state.put(STATE_FINGERPRINT, mockedDatabaseInfo.dumpFingerprint);
+        state.put(STATE_PID, pid(rootFolder));
+        state.put(STATE_LEASES, String.valueOf(liveLeases(daemonPath)));
+        state.put(STATE_STARTED, String.valueOf(System.currentTimeMillis()));
+        writeState(daemonPath, state);
+        watch(daemonPath, properties);
+    }
+
+    private static final void lease(Path daemonPath) throws IOException {
+        if (LEASES.containsKey(daemonPath)) {
+            return;
+        }
+        Path leasePath = daemonPath.resolve(LEASES_FOLDER).resolve(LEASE_ID + LEASE_EXTENSION);
+        Files.createDirectories(leasePath.getParent());
+        FileChannel leaseChannel = FileChannel.open(leasePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            leaseChannel.lock();
+        }
+        catch (IOException | RuntimeException e) {
+            leaseChannel.close();
+            throw e;
+        }
+        LEASES.put(daemonPath, leaseChannel);
+    }
+
+    private static final void release(Path daemonPath) {
+        FileChannel leaseChannel = LEASES.remove(daemonPath);
+        if (leaseChannel == null) {
+            return;
+        }
+        try {
+            leaseChannel.close();
+            Files.deleteIfExists(daemonPath.resolve(LEASES_FOLDER).resolve(LEASE_ID + LEASE_EXTENSION));
+            MySQLMockFiles.locked(daemonPath.resolve(LOCK_FILE), () -> {
+                Properties state = readState(daemonPath);
+                if (state != null) {
+                    state.put(STATE_LEASES, String.valueOf(liveLeases(daemonPath)));
+                    writeState(daemonPath, state);
+                }
+                return null;
+            });
+        }
+        catch (IOException | SQLException e) {
+            System.err.println(String.format("MySQL Mock could not release daemon lease in %s: %s", daemonPath, e.getMessage()));
+        }
+    }
+
+    private static final int liveLeases(Path daemonPath) throws IOException {
+        Path leasesPath = daemonPath.resolve(LEASES_FOLDER);
+        if (!Files.isDirectory(leasesPath)) {
+            return 0;
+        }
+        int leases = 0;
+        try (DirectoryStream<Path> leaseFiles = Files.newDirectoryStream(leasesPath, "*" + LEASE_EXTENSION)) {
+            for (Path leaseFile : leaseFiles) {
+                if (leaseFile.getFileName().toString().equals(LEASE_ID + LEASE_EXTENSION)) {
+                    if (LEASES.containsKey(daemonPath)) {
+                        leases++;
+                    }
+                    continue;
+                }
+                try (FileChannel leaseChannel = FileChannel.open(leaseFile, StandardOpenOption.WRITE)) {
+                    FileLock lock = leaseChannel.tryLock();
+                    if (lock == null) {
+                        leases++;
+                        continue;
+                    }
+                    lock.release();
+                }
+                catch (OverlappingFileLockException e) {
+                    leases++;
+                    continue;
+                }
+                catch (IOException e) {
+                    continue;
+                }
+                Files.deleteIfExists(leaseFile);
+            }
+        }
+        return leases;
+    }
+
+    private static final void watch(Path daemonPath, Properties properties) throws IOException {
+        try (FileChannel watchdogChannel = FileChannel.open(daemonPath.resolve(WATCHDOG_LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            FileLock lock = watchdogChannel.tryLock();
+            if (lock == null) {
+                return;
+            }
+            lock.release();
+        }
+        catch (OverlappingFileLockException e) {
+            return;
+        }
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", JavaChildProcess.IS_WINDOWS ? "java.exe" : "java").toString());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(MySQLMockDaemon.class.getName());
+        command.add(daemonPath.toString());
+        command.add(String.valueOf(MySQLMockPropertyEnum.DAEMON_IDLE_TIMEOUT.getLong(properties, DEFAULT_IDLE_TIMEOUT)));
+        new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.appendTo(daemonPath.resolve(WATCHDOG_LOG_FILE).toFile())).start();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path daemonPath = Paths.get(args[0]);
+        long idleTimeout = Long.parseLong(args[1]);
+        try (FileChannel watchdogChannel = FileChannel.open(daemonPath.resolve(WATCHDOG_LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            if (watchdogChannel.tryLock() == null) {
+                return;
+            }
+            long interval = Math.max(100, Math.min(idleTimeout / 4, MAX_WATCHDOG_INTERVAL));
+            AtomicLong idleSince = new AtomicLong(System.nanoTime());
+            while (true) {
+                Thread.sleep(interval);
+                boolean stopped = MySQLMockFiles.locked(daemonPath.resolve(LOCK_FILE), () -> {
+                    Properties state = readState(daemonPath);
+                    if (state == null) {
+                        return true;
+                    }
+                    File rootFolder = daemonPath.resolve(INSTANCE_FOLDER).toFile();
+                    if (!isRunning(rootFolder)) {
+                        System.err.println(String.format("MySQL Mock daemon in %s is no longer running.", rootFolder));
+                        delete(rootFolder.toPath());
+                        Files.deleteIfExists(daemonPath.resolve(STATE_FILE));
+                        return true;
+                    }
+                    int leases = liveLeases(daemonPath);
+                    if (leases > 0) {
+                        idleSince.set(System.nanoTime());
+                    }
+                    else if (System.nanoTime() - idleSince.get() >= TimeUnit.MILLISECONDS.toNanos(idleTimeout)) {
+                        System.err.println(String.format("MySQL Mock daemon in %s idle for %d ms, shutting down.", rootFolder, idleTimeout));
+                        MySQLMockManager.cleanup(rootFolder);
+                        Files.deleteIfExists(daemonPath.resolve(STATE_FILE));
+                        return true;
+                    }
+                    if (!String.valueOf(leases).equals(state.getProperty(STATE_LEASES))) {
+                        state.put(STATE_LEASES, String.valueOf(leases));
+                        writeState(daemonPath, state);
+                    }
+                    return false;
+                });
+                if (stopped) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private static final void reap(Path daemonPath) {
+        try (DirectoryStream<Path> daemonFolders = Files.newDirectoryStream(daemonPath.getParent())) {
+            for (Path daemonFolder : daemonFolders) {
+                if (!daemonFolder.equals(daemonPath) && Files.isDirectory(daemonFolder)) {
+                    reapDaemon(daemonFolder);
+                }
+            }
+        }
+        catch (IOException e) {
+        }
+        try (DirectoryStream<Path> temporaryFolders = Files.newDirectoryStream(Paths.get(System.getProperty("java.io.tmpdir")), TEMP_FOLDER_PREFIX + "*")) {
+            for (Path temporaryFolder : temporaryFolders) {
+                if (Files.isDirectory(temporaryFolder, LinkOption.NOFOLLOW_LINKS) && isStale(temporaryFolder)) {
+                    System.err.println(String.format("MySQL Mock reaping stale temporary directory %s.", temporaryFolder));
+                    delete(temporaryFolder);
+                }
+            }
+        }
+        catch (IOException e) {
+        }
+    }
+
+    private static final void reapDaemon(Path daemonFolder) throws IOException {
+        try (FileChannel lockChannel = FileChannel.open(daemonFolder.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            FileLock lock = lockChannel.tryLock();
+            if (lock == null) {
+                return;
+            }
+            try {
+                Path instancePath = daemonFolder.resolve(INSTANCE_FOLDER);
+                if (Files.exists(instancePath) && !isRunning(instancePath.toFile())) {
+                    System.err.println(String.format("MySQL Mock reaping orphaned daemon instance in %s.", instancePath));
+                    delete(instancePath);
+                    Files.deleteIfExists(daemonFolder.resolve(STATE_FILE));
+                }
+            }
+            finally {
+                lock.release();
+            }
+        }
+        catch (OverlappingFileLockException e) {
+        }
+    }
+
+    private static final boolean isStale(Path temporaryFolder) {
+        return MySQLMockFiles.isOrphaned(temporaryFolder) && !isRunning(temporaryFolder.toFile());
+    }
+
+    private static final void delete(Path rootPath) {
+        try {
+            MySQLMockProfile.deleteDataFolder(rootPath);
+            MySQLMockFiles.delete(rootPath);
+        }
+        catch (IOException e) {
+            System.err.println(String.format("MySQL Mock could not delete directory %s: %s", rootPath, e.getMessage()));
+        }
+    }
+
+    private static final boolean isReady(File rootFolder, int mockPort, Properties properties) {
+        if (!isRunning(rootFolder)) {
+            return false;
+        }
+        Properties probeProperties = new Properties();
+        probeProperties.putAll(properties);
+        probeProperties.put(MySQLMockPropertyEnum.READINESS_TIMEOUT.getPropertyName(), String.valueOf(ATTACH_PROBE_TIMEOUT));
+        try {
+            new MySQLMockReadinessProbe(rootFolder, mockPort, probeProperties).await(null, null);
+            return true;
+        }
+        catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private static final boolean isRunning(File rootFolder) {
+        return MySQLMockManager.isAlive(pid(rootFolder));
+    }
+
+    private static final String pid(File rootFolder) {
+        try {
+            return new String(Files.readAllBytes(new File(rootFolder, "mysql.pid").toPath()), StandardCharsets.UTF_8).trim();
+        }
+        catch (IOException e) {
+            return "";
+        }
+    }
+
+    private static final void dropTenants(Connection connection, String dbName) throws SQLException {
+        Pattern tenantPattern = Pattern.compile(Pattern.quote(dbName) + "_[0-9a-f]{8}_w[0-9]+");
+        List<String> tenants = new ArrayList<>();
+        try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery("SELECT SCHEMA_NAME FROM information_schema.SCHEMATA")) {
+            while (resultSet.next()) {
+                if (tenantPattern.matcher(resultSet.getString(1)).matches()) {
+                    tenants.add(resultSet.getString(1));
+                }
+            }
+        }
+        for (String tenant : tenants) {
+            MySQLMockSql.execute(connection, "DROP DATABASE IF EXISTS " + MySQLMockSql.quote(tenant));
+        }
+    }
+
+    private static final String daemonKey(String binLocation, int mockPort, Properties properties) {
+        return MySQLMockFiles.sha256(String.join("\n",
+            String.valueOf(MySQLMockPropertyEnum.ORIGINAL_HOST.getValue(properties)),
+            String.valueOf(MySQLMockPropertyEnum.ORIGINAL_PORT.getValue(properties)),
+            String.join(",", MySQLMockManager.databases(properties)),
+            binLocation,
+            String.valueOf(mockPort),
+            MySQLMockProfile.of(properties).name(),
+            MySQLMockTransport.of(properties).name())).substring(0, 16);
+    }
+
+    private static final Properties readState(Path daemonPath) throws IOException {
+        Path statePath = daemonPath.resolve(STATE_FILE);
+        if (!Files.exists(statePath)) {
+            return null;
+        }
+        Properties state = new Properties();
+        try (InputStream inputStream = Files.newInputStream(statePath)) {
+            state.load(inputStream);
+        }
+        return state;
+    }
+
+    private static final void writeState(Path daemonPath, Properties state) throws IOException {
+        Path tempPath = daemonPath.resolve(STATE_FILE + ".tmp");
+        try (OutputStream outputStream = Files.newOutputStream(tempPath)) {
+            state.store(outputStream, "MySQL Mock daemon");
+        }
+        Files.move(tempPath, daemonPath.resolve(STATE_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
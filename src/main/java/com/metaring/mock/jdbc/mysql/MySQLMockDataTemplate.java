@@ -0,0 +1,297 @@
+/**
+ *    Copyright 2019 MetaRing s.r.l.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.metaring.mock.jdbc.mysql;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.SQLException;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import com.metaring.java.process.fork.JavaChildProcess;
+
+class MySQLMockDataTemplate {
+
+    private static final String TEMPLATES_FOLDER = "templates";
+    private static final String COMPLETE_MARKER = ".complete";
+    private static final int UPGRADE_LOG_TAIL_LINES = 30;
+
+    private static final Map<String, String> TEMPLATE_KEYS = new ConcurrentHashMap<>();
+
+    private static volatile String MYSQL_ZIP_HASH;
+
+    static final void cloneInto(Path dataPath, String binLocation, Properties properties, MySQLMockMetrics metrics) throws SQLException {
+        Path templateDataPath = templateDataPath(binLocation, properties, metrics);
+        try {
+            MySQLMockMetrics.Timer clone = metrics.begin(MySQLMockPhase.CLONE);
+            long start = System.nanoTime();
+            String strategy = cloneTree(templateDataPath, dataPath);
+            clone.close();
+            System.err.println(String.format("MySQL Mock data directory cloned from template %s (%s) in %d ms.", templateDataPath, strategy, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        }
+        catch (IOException e) {
+            throw new SQLException(String.format("Error while cloning MySQL Mock data template %s", templateDataPath), e);
+        }
+    }
+
+    static final Path cacheFolder(Properties properties) {
+        String cacheFolder = MySQLMockPropertyEnum.CACHE_FOLDER.getValue(properties);
+        Path cachePath = cacheFolder == null ? Paths.get(System.getProperty("user.home"), ".mysqlmock") : Paths.get(cacheFolder);
+        if (cachePath.toAbsolutePath().toString().contains(" ")) {
+            throw new RuntimeException(String.format("Use of cache directory path with spaces ('%s') is discouraged in MySQL Mock.\nPlease use the '%s' property to specify a cache path without spaces.", cachePath.toAbsolutePath(), MySQLMockPropertyEnum.CACHE_FOLDER.getPropertyName()));
+        }
+        return cachePath;
+    }
+
+    private static final Path templateDataPath(String binLocation, Properties properties, MySQLMockMetrics metrics) throws SQLException {
+        Path templatesPath = cacheFolder(properties).resolve(TEMPLATES_FOLDER);
+        MySQLMockProfile profile = MySQLMockProfile.of(properties);
+        String templateKey = TEMPLATE_KEYS.get(binLocation + "\n" + profile);
+        if (templateKey == null) {
+            templateKey = MySQLMockFiles.sha256(mysqldVersion(binLocation) + "\n" + mysqlZipHash() + (profile == MySQLMockProfile.DEFAULT ? "" : "\n" + profile));
+            TEMPLATE_KEYS.put(binLocation + "\n" + profile, templateKey);
+        }
+        Path templatePath = templatesPath.resolve(templateKey);
+        Path templateDataPath = templatePath.resolve("data");
+        if (Files.exists(templatePath.resolve(COMPLETE_MARKER))) {
+            return templateDataPath;
+        }
+        try {
+            MySQLMockFiles.locked(templatesPath.resolve(templateKey + ".lock"), () -> {
+                if (!Files.exists(templatePath.resolve(COMPLETE_MARKER))) {
+                    buildTemplate(templatePath, binLocation, properties, profile, metrics);
+                }
+                return null;
+            });
+        }
+        catch (IOException e) {
+            throw new SQLException(String.format("Error while preparing MySQL Mock data template in %s", templatePath), e);
+        }
+        return templateDataPath;
+    }
+
+    private static final void buildTemplate(Path templatePath, String binLocation, Properties properties, MySQLMockProfile profile, MySQLMockMetrics metrics) throws IOException, SQLException {
+        long start = System.nanoTime();
+
+        MySQLMockFiles.delete(templatePath);
+        Path buildPath = templatePath.resolveSibling(templatePath.getFileName() + ".build");
+        MySQLMockFiles.delete(buildPath);
+        Files.createDirectories(buildPath);
+
+        Path dataPath = buildPath.resolve("data");
+        Files.createDirectories(dataPath);
+
+        try (MySQLMockMetrics.Timer zipExtraction = metrics.begin(MySQLMockPhase.ZIP_EXTRACTION); ZipInputStream zIS = new ZipInputStream(MySQLMockDataTemplate.class.getClassLoader().getResourceAsStream("mysql.zip"))) {
+            ZipEntry zipEntry = null;
+            while ((zipEntry = zIS.getNextEntry()) != null) {
+                Path zipEntryPath = dataPath.resolve(zipEntry.getName());
+                if (zipEntry.isDirectory()) {
+                    zipEntryPath.toFile().mkdirs();
+                }
+                else {
+                    zipExtraction.bytes(Files.copy(zIS, zipEntryPath));
+                }
+            }
+        }
+
+        String rootPathString = buildPath.toAbsolutePath().toString().replace("\\", "/") + "/";
+        String dataPathString = dataPath.toAbsolutePath().toString().replace("\\", "/") + "/";
+        int port = freePort();
+
+        MySQLMockReadinessProbe readinessProbe = new MySQLMockReadinessProbe(buildPath.toFile(), port, properties);
+
+        LinkedList<String> arguments = MySQLMockManager.mysqldArguments(binLocation, dataPathString, rootPathString, port, profile);
+
+        ProcessBuilder mysqldBuilder = new ProcessBuilder(arguments.toArray(new String[arguments.size()]));
+        mysqldBuilder.redirectErrorStream(true);
+        mysqldBuilder.redirectOutput(buildPath.resolve("mysqld.log").toFile());
+        Process process = mysqldBuilder.start();
+
+        boolean upgraded = false;
+        try {
+            MySQLMockMetrics.Timer bootstrapStart = metrics.begin(MySQLMockPhase.BOOTSTRAP_START);
+            readinessProbe.await(process, null);
+            bootstrapStart.close();
+
+            arguments.clear();
+
+            arguments.add(JavaChildProcess.QUOTES + binLocation + "mysql_upgrade" + JavaChildProcess.QUOTES);
+
+            arguments.add("-u");
+            arguments.add("root");
+
+            arguments.add("--socket=" + JavaChildProcess.QUOTES + MySQLMockManager.socketFile(buildPath.toFile()).getAbsolutePath().replace("\\", "/") + JavaChildProcess.QUOTES);
+
+            arguments.add("-P");
+            arguments.add("" + port);
+
+            arguments.add("--force");
+
+            ProcessBuilder processBuilder = new ProcessBuilder(arguments.toArray(new String[arguments.size()]));
+            processBuilder.redirectErrorStream(true);
+            processBuilder.redirectOutput(buildPath.resolve("mysql_upgrade.log").toFile());
+            MySQLMockMetrics.Timer upgrade = metrics.begin(MySQLMockPhase.UPGRADE);
+            int exitValue = processBuilder.start().waitFor();
+            upgrade.close();
+            if (exitValue != 0) {
+                throw new SQLException(String.format("mysql_upgrade exited with code %d while building MySQL Mock data template %s:\n\n%s", exitValue, templatePath, MySQLMockFiles.tail(buildPath.resolve("mysql_upgrade.log"), UPGRADE_LOG_TAIL_LINES)));
+            }
+            upgraded = true;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while building MySQL Mock data template", e);
+        }
+        finally {
+            MySQLMockManager.stop(process);
+            if (!upgraded) {
+                discard(buildPath);
+            }
+        }
+
+        Files.deleteIfExists(dataPath.resolve("auto.cnf"));
+
+        Files.move(buildPath, templatePath, StandardCopyOption.ATOMIC_MOVE);
+        Files.createFile(templatePath.resolve(COMPLETE_MARKER));
+
+        System.err.println(String.format("MySQL Mock data template %s built in %d ms.", templatePath, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+    }
+
+    private static final void discard(Path buildPath) {
+        try {
+            MySQLMockFiles.delete(buildPath);
+        }
+        catch (IOException e) {
+            System.err.println(String.format("MySQL Mock could not delete template build directory %s: %s", buildPath, e.getMessage()));
+        }
+    }
+
+    private static final String cloneTree(Path source, Path target) throws IOException {
+        Files.createDirectories(target);
+        if (reflink(source, target)) {
+            return "reflink";
+        }
+        MySQLMockFiles.delete(target);
+        Files.createDirectories(target);
+        final boolean[] linked = new boolean[] { true };
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(target.resolve(source.relativize(dir).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Path targetFile = target.resolve(source.relativize(file).toString());
+                if (linked[0] && file.getFileName().toString().endsWith(".frm")) {
+                    try {
+                        Files.createLink(targetFile, file);
+                        return FileVisitResult.CONTINUE;
+                    }
+                    catch (IOException | UnsupportedOperationException e) {
+                        linked[0] = false;
+                    }
+                }
+                Files.copy(file, targetFile, StandardCopyOption.COPY_ATTRIBUTES);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return linked[0] ? "hardlink/copy" : "copy";
+    }
+
+    private static final boolean reflink(Path source, Path target) {
+        if (JavaChildProcess.IS_WINDOWS) {
+            return false;
+        }
+        String[] command;
+        if (System.getProperty("os.name", "").toLowerCase().contains("mac")) {
+            command = new String[] { "cp", "-Rc", source.toAbsolutePath() + "/.", target.toAbsolutePath().toString() };
+        }
+        else {
+            command = new String[] { "cp", "-R", "--reflink=always", source.toAbsolutePath() + "/.", target.toAbsolutePath().toString() };
+        }
+        try {
+            ProcessBuilder processBuilder = new ProcessBuilder(command);
+            processBuilder.redirectErrorStream(true);
+            processBuilder.redirectOutput(ProcessBuilder.Redirect.appendTo(target.getParent().resolve("clone.log").toFile()));
+            return processBuilder.start().waitFor() == 0;
+        }
+        catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static final String mysqldVersion(String binLocation) throws SQLException {
+        try {
+            ProcessBuilder processBuilder = new ProcessBuilder(JavaChildProcess.QUOTES + binLocation + "mysqld" + JavaChildProcess.QUOTES, "--version");
+            processBuilder.redirectErrorStream(true);
+            Process process = processBuilder.start();
+            String version = new String(readAll(process.getInputStream()), StandardCharsets.UTF_8).trim();
+            process.waitFor();
+            return version;
+        }
+        catch (Exception e) {
+            throw new SQLException("Error while reading mysqld version in " + binLocation, e);
+        }
+    }
+
+    private static final String mysqlZipHash() throws SQLException {
+        if (MYSQL_ZIP_HASH == null) {
+            try (InputStream inputStream = MySQLMockDataTemplate.class.getClassLoader().getResourceAsStream("mysql.zip")) {
+                MYSQL_ZIP_HASH = MySQLMockFiles.sha256(inputStream);
+            }
+            catch (Exception e) {
+                throw new SQLException("Error while hashing mysql.zip", e);
+            }
+        }
+        return MYSQL_ZIP_HASH;
+    }
+
+    static final int freePort() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            serverSocket.setReuseAddress(true);
+            return serverSocket.getLocalPort();
+        }
+    }
+
+    private static final byte[] readAll(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            byteArrayOutputStream.write(buffer, 0, read);
+        }
+        return byteArrayOutputStream.toByteArray();
+    }
+}
@@ -0,0 +1,282 @@
+/**
+ *    Copyright 2019 MetaRing s.r.l.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.metaring.mock.jdbc.mysql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+class MySQLMockDirtyTables implements MySQLMockStatementListener {
+
+    private static final int MAX_TOKENS = 16;
+
+    private static final Set<String> READ_ONLY_COMMANDS = new HashSet<>(Arrays.asList("SELECT", "SHOW", "SET", "USE", "BEGIN", "START", "COMMIT", "ROLLBACK", "SAVEPOINT", "RELEASE", "EXPLAIN", "DESCRIBE", "DESC", "HELP", "ANALYZE", "CHECK", "CHECKSUM", "KILL", "PREPARE", "DEALLOCATE", "LOCK", "UNLOCK"));
+    private static final Set<String> INSERT_MODIFIERS = new HashSet<>(Arrays.asList("LOW_PRIORITY", "DELAYED", "HIGH_PRIORITY", "IGNORE", "INTO"));
+    private static final Set<String> UPDATE_MODIFIERS = new HashSet<>(Arrays.asList("LOW_PRIORITY", "IGNORE"));
+    private static final Set<String> DELETE_MODIFIERS = new HashSet<>(Arrays.asList("LOW_PRIORITY", "QUICK", "IGNORE"));
+    private static final Set<String> DELETE_TAIL_KEYWORDS = new HashSet<>(Arrays.asList("WHERE", "ORDER", "LIMIT", "PARTITION", ";"));
+
+    private static final String TRIGGER_TABLES_QUERY = "SELECT DISTINCT EVENT_OBJECT_TABLE FROM information_schema.TRIGGERS WHERE TRIGGER_SCHEMA = ?";
+
+    static final class Baseline {
+
+        private volatile long version;
+        private final Map<String, Long> tableVersions = new ConcurrentHashMap<>();
+
+        private Baseline(long version) {
+            this.version = version;
+        }
+    }
+
+    private final String schemaName;
+    private final AtomicLong versions = new AtomicLong();
+    private final ConcurrentMap<String, Long> tableVersions = new ConcurrentHashMap<>();
+    private final Baseline truncated = new Baseline(0);
+    private volatile long allTablesVersion;
+    private volatile Set<String> triggerTables;
+
+    MySQLMockDirtyTables(String schemaName) {
+        this.schemaName = schemaName;
+    }
+
+    @Override
+    public void executing(String sql) {
+        Set<String> tables = modifiedTables(sql);
+        if (tables == null) {
+            allTablesVersion = versions.incrementAndGet();
+            triggerTables = null;
+            return;
+        }
+        for (String table : tables) {
+            tableVersions.put(key(table), versions.incrementAndGet());
+        }
+    }
+
+    Baseline baseline() {
+        return new Baseline(versions.get());
+    }
+
+    Set<String> modifiedSince(Baseline baseline) {
+        if (allTablesVersion > baseline.version) {
+            return null;
+        }
+        Set<String> tables = new TreeSet<>();
+        for (Map.Entry<String, Long> tableVersion : tableVersions.entrySet()) {
+            Long settledVersion = baseline.tableVersions.get(tableVersion.getKey());
+            if (tableVersion.getValue() > (settledVersion == null ? baseline.version : settledVersion)) {
+                tables.add(tableVersion.getKey());
+            }
+        }
+        return tables;
+    }
+
+    long modifying(Collection<String> tables) {
+        long version = versions.incrementAndGet();
+        for (String table : tables) {
+            tableVersions.put(key(table), version);
+        }
+        return version;
+    }
+
+    long modifyingAll() {
+        long version = versions.incrementAndGet();
+        allTablesVersion = version;
+        return version;
+    }
+
+    void settle(Baseline baseline, Collection<String> tables, long version) {
+        for (String table : tables) {
+            baseline.tableVersions.put(table, version);
+        }
+    }
+
+    void settle(Baseline baseline, long version) {
+        baseline.tableVersions.clear();
+        baseline.version = version;
+    }
+
+    void truncatedAll(long version) {
+        settle(truncated, version);
+    }
+
+    boolean truncate(MySQLMockedDatabaseInfo mockedDatabaseInfo, Connection connection, String schemaName) throws SQLException {
+        Set<String> modifiedTables = modifiedSince(truncated);
+        if (modifiedTables == null) {
+            return false;
+        }
+        Set<String> tables = new TreeSet<>();
+        for (String table : modifiedTables) {
+            int dot = table.indexOf('.');
+            if (dot == -1 ? schemaName.equals(this.schemaName) : table.substring(0, dot).equals(schemaName)) {
+                tables.add(dot == -1 ? table : table.substring(dot + 1));
+            }
+        }
+        if (!tables.isEmpty()) {
+            boolean embedded = mockedDatabaseInfo.backend == MySQLMockBackend.H2;
+            if (!embedded && !Collections.disjoint(tables, triggerTables(connection, schemaName))) {
+                return false;
+            }
+            long version = modifying(keys(schemaName, tables));
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(MySQLMockSql.foreignKeyChecks(embedded, false));
+                try {
+                    for (String table : tables) {
+                        statement.addBatch(MySQLMockSql.truncateTable(embedded, schemaName, table));
+                    }
+                    statement.executeBatch();
+                }
+                finally {
+                    statement.execute(MySQLMockSql.foreignKeyChecks(embedded, true));
+                }
+            }
+            if (mockedDatabaseInfo.referenceData != null) {
+                mockedDatabaseInfo.referenceData.restore(connection, schemaName, tables);
+            }
+            settle(truncated, keys(schemaName, tables), version);
+        }
+        return true;
+    }
+
+    private String key(String table) {
+        return table.startsWith(schemaName + ".") ? table.substring(schemaName.length() + 1) : table;
+    }
+
+    private List<String> keys(String schemaName, Collection<String> tables) {
+        List<String> keys = new ArrayList<>(tables.size());
+        for (String table : tables) {
+            keys.add(schemaName.equals(this.schemaName) ? table : schemaName + "." + table);
+        }
+        return keys;
+    }
+
+    private Set<String> triggerTables(Connection connection, String schemaName) throws SQLException {
+        Set<String> tables = schemaName.equals(this.schemaName) ? triggerTables : null;
+        if (tables == null) {
+            tables = new HashSet<>();
+            try (PreparedStatement preparedStatement = connection.prepareStatement(TRIGGER_TABLES_QUERY)) {
+                preparedStatement.setString(1, schemaName);
+                try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                    while (resultSet.next()) {
+                        tables.add(resultSet.getString(1));
+                    }
+                }
+            }
+            if (schemaName.equals(this.schemaName)) {
+                triggerTables = tables;
+            }
+        }
+        return tables;
+    }
+
+    static final Set<String> modifiedTables(String sql) {
+        if (MySQLMockSql.isMultiStatement(sql)) {
+            return null;
+        }
+        List<String> tokens = MySQLMockSql.tokens(sql, MAX_TOKENS);
+        if (tokens.isEmpty()) {
+            return Collections.emptySet();
+        }
+        String command = tokens.get(0).toUpperCase();
+        if (READ_ONLY_COMMANDS.contains(command)) {
+            return Collections.emptySet();
+        }
+        int i = 1;
+        switch (command) {
+            case "INSERT":
+            case "REPLACE":
+                while (i < tokens.size() && INSERT_MODIFIERS.contains(tokens.get(i).toUpperCase())) {
+                    i++;
+                }
+                return table(tokens, i);
+            case "UPDATE":
+                while (i < tokens.size() && UPDATE_MODIFIERS.contains(tokens.get(i).toUpperCase())) {
+                    i++;
+                }
+                if (isKeyword(tokens, i + 1, "SET") || (isIdentifier(tokens, i + 1) && isKeyword(tokens, i + 2, "SET")) || (isKeyword(tokens, i + 1, "AS") && isKeyword(tokens, i + 3, "SET"))) {
+                    return table(tokens, i);
+                }
+                return null;
+            case "DELETE":
+                while (i < tokens.size() && DELETE_MODIFIERS.contains(tokens.get(i).toUpperCase())) {
+                    i++;
+                }
+                if (!isKeyword(tokens, i, "FROM")) {
+                    return null;
+                }
+                i++;
+                int next = i + 1;
+                if (isKeyword(tokens, next, "AS")) {
+                    next += 2;
+                }
+                else if (isIdentifier(tokens, next) && !DELETE_TAIL_KEYWORDS.contains(tokens.get(next).toUpperCase())) {
+                    next++;
+                }
+                if (next < tokens.size() && !DELETE_TAIL_KEYWORDS.contains(tokens.get(next).toUpperCase())) {
+                    return null;
+                }
+                return table(tokens, i);
+            case "LOAD":
+                for (; i + 2 < tokens.size(); i++) {
+                    if (isKeyword(tokens, i, "INTO") && isKeyword(tokens, i + 1, "TABLE")) {
+                        return table(tokens, i + 2);
+                    }
+                }
+                return null;
+            case "TRUNCATE":
+                if (isKeyword(tokens, i, "TABLE")) {
+                    i++;
+                }
+                return table(tokens, i);
+            default:
+                return null;
+        }
+    }
+
+    private static final Set<String> table(List<String> tokens, int index) {
+        if (!isIdentifier(tokens, index)) {
+            return null;
+        }
+        return Collections.singleton(tokens.get(index));
+    }
+
+    private static final boolean isIdentifier(List<String> tokens, int index) {
+        if (index >= tokens.size() || tokens.get(index).isEmpty()) {
+            return false;
+        }
+        String token = tokens.get(index);
+        char first = token.charAt(0);
+        return token.length() > 1 || Character.isLetterOrDigit(first) || first == '_' || first == '$';
+    }
+
+    private static final boolean isKeyword(List<String> tokens, int index, String keyword) {
+        return index < tokens.size() && tokens.get(index).equalsIgnoreCase(keyword);
+    }
+}
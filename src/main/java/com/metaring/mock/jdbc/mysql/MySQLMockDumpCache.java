@@ -0,0 +1,164 @@
+/**
+ *    Copyright 2019 MetaRing s.r.l.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.metaring.mock.jdbc.mysql;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Properties;
+
+class MySQLMockDumpCache {
+
+    static final class Entry {
+
+        final Path dumpsPath;
+
+        final String fingerprint;
+
+        final Path dumpPath;
+
+        private Entry(Path dumpsPath, String fingerprint) {
+            this.dumpsPath = dumpsPath;
+            this.fingerprint = fingerprint;
+            this.dumpPath = dumpsPath.resolve(fingerprint + DUMP_EXTENSION);
+        }
+
+        Path lockPath() {
+            return dumpsPath.resolve(".lock");
+        }
+
+        Path tempPath() {
+            return dumpsPath.resolve(fingerprint + ".tmp");
+        }
+
+        boolean isCached() {
+            return Files.exists(dumpPath);
+        }
+
+        void commit() throws IOException {
+            Files.move(tempPath(), dumpPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.write(dumpsPath.resolve(LATEST_FILE), fingerprint.getBytes(StandardCharsets.UTF_8));
+        }
+
+        void discard() {
+            try {
+                Files.deleteIfExists(tempPath());
+            }
+            catch (IOException e) {
+            }
+        }
+    }
+
+    private static final String DUMPS_FOLDER = "dumps";
+    private static final String LATEST_FILE = "latest";
+    private static final String DUMP_EXTENSION = ".sql";
+
+    private static final String[] FINGERPRINT_QUERIES = {
+        "SELECT TABLE_NAME, TABLE_TYPE, ENGINE, ROW_FORMAT, TABLE_COLLATION, CREATE_TIME, CREATE_OPTIONS, TABLE_COMMENT FROM information_schema.TABLES WHERE TABLE_SCHEMA = ? ORDER BY TABLE_NAME",
+        "SELECT TABLE_NAME, COLUMN_NAME, ORDINAL_POSITION, COLUMN_DEFAULT, IS_NULLABLE, COLUMN_TYPE, COLLATION_NAME, COLUMN_KEY, EXTRA, COLUMN_COMMENT FROM information_schema.COLUMNS WHERE TABLE_SCHEMA = ? ORDER BY TABLE_NAME, ORDINAL_POSITION",
+        "SELECT TABLE_NAME, INDEX_NAME, SEQ_IN_INDEX, COLUMN_NAME, NON_UNIQUE, SUB_PART, INDEX_TYPE FROM information_schema.STATISTICS WHERE TABLE_SCHEMA = ? ORDER BY TABLE_NAME, INDEX_NAME, SEQ_IN_INDEX",
+        "SELECT TABLE_NAME, CONSTRAINT_NAME, COLUMN_NAME, REFERENCED_TABLE_SCHEMA, REFERENCED_TABLE_NAME, REFERENCED_COLUMN_NAME FROM information_schema.KEY_COLUMN_USAGE WHERE TABLE_SCHEMA = ? AND REFERENCED_TABLE_NAME IS NOT NULL ORDER BY TABLE_NAME, CONSTRAINT_NAME, ORDINAL_POSITION",
+        "SELECT TABLE_NAME, MD5(VIEW_DEFINITION), CHECK_OPTION, SECURITY_TYPE FROM information_schema.VIEWS WHERE TABLE_SCHEMA = ? ORDER BY TABLE_NAME",
+        "SELECT ROUTINE_TYPE, ROUTINE_NAME, MD5(ROUTINE_DEFINITION), CREATED, LAST_ALTERED, SQL_MODE FROM information_schema.ROUTINES WHERE ROUTINE_SCHEMA = ? ORDER BY ROUTINE_TYPE, ROUTINE_NAME",
+        "SELECT TRIGGER_NAME, EVENT_MANIPULATION, EVENT_OBJECT_TABLE, ACTION_TIMING, MD5(ACTION_STATEMENT), CREATED FROM information_schema.TRIGGERS WHERE TRIGGER_SCHEMA = ? ORDER BY TRIGGER_NAME",
+        "SELECT EVENT_NAME, MD5(EVENT_DEFINITION), STATUS, CREATED, LAST_ALTERED FROM information_schema.EVENTS WHERE EVENT_SCHEMA = ? ORDER BY EVENT_NAME"
+    };
+
+    static final Entry resolve(Properties properties) throws SQLException {
+        String dbName = String.join(",", MySQLMockManager.databases(properties));
+        Path dumpsPath = MySQLMockDataTemplate.cacheFolder(properties).resolve(DUMPS_FOLDER).resolve(MySQLMockFiles.sha256(originalUrl(properties) + dbName).substring(0, 16));
+        try {
+            Files.createDirectories(dumpsPath);
+            if (MySQLMockPropertyEnum.OFFLINE.getBoolean(properties)) {
+                Path latestPath = dumpsPath.resolve(LATEST_FILE);
+                Entry entry = Files.exists(latestPath) ? new Entry(dumpsPath, new String(Files.readAllBytes(latestPath), StandardCharsets.UTF_8).trim()) : null;
+                if (entry == null || !entry.isCached()) {
+                    throw new SQLException(String.format("Offline mode requested but no cached dump of '%s' exists in %s.", dbName, dumpsPath));
+                }
+                System.err.println(String.format("MySQL Mock offline mode: using cached dump of '%s' (%s).", dbName, entry.fingerprint));
+                return entry;
+            }
+
+            Entry entry = new Entry(dumpsPath, fingerprint(properties));
+            if (MySQLMockPropertyEnum.REFRESH_DUMP_CACHE.getBoolean(properties)) {
+                Files.deleteIfExists(entry.dumpPath);
+            }
+            return entry;
+        }
+        catch (IOException e) {
+            throw new SQLException(String.format("Error while accessing dump cache of '%s' in %s.", dbName, dumpsPath), e);
+        }
+    }
+
+    static final String fingerprint(Properties properties) throws SQLException {
+        MessageDigest messageDigest = MySQLMockFiles.messageDigest();
+        try (Connection connection = originalConnection(properties, "information_schema")) {
+            for (String dbName : MySQLMockManager.databases(properties)) {
+                messageDigest.update(dbName.getBytes(StandardCharsets.UTF_8));
+                for (String fingerprintQuery : FINGERPRINT_QUERIES) {
+                    try (PreparedStatement preparedStatement = connection.prepareStatement(fingerprintQuery)) {
+                        preparedStatement.setString(1, dbName);
+                        try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                            int columnCount = resultSet.getMetaData().getColumnCount();
+                            while (resultSet.next()) {
+                                for (int i = 1; i <= columnCount; i++) {
+                                    String value = resultSet.getString(i);
+                                    messageDigest.update((value == null ? "\u0000" : value).getBytes(StandardCharsets.UTF_8));
+                                    messageDigest.update((byte) 1);
+                                }
+                                messageDigest.update((byte) 2);
+                            }
+                        }
+                    }
+                    messageDigest.update((byte) 3);
+                }
+            }
+        }
+        return MySQLMockFiles.hex(messageDigest.digest());
+    }
+
+    static final Connection originalConnection(Properties properties, String database) throws SQLException {
+        Properties connectionProperties = new Properties();
+        String user = MySQLMockPropertyEnum.USER.getValue(properties);
+        if (user != null) {
+            connectionProperties.put(MySQLMockPropertyEnum.USER.getPropertyName(), user);
+        }
+        String password = MySQLMockPropertyEnum.PASSWORD.getValue(properties);
+        if (password != null) {
+            connectionProperties.put(MySQLMockPropertyEnum.PASSWORD.getPropertyName(), password);
+        }
+        String url = originalUrl(properties) + database;
+        Connection connection = Driver.MYSQL_ORIGINAL_DRIVER.connect(url, connectionProperties);
+        if (connection == null) {
+            throw new SQLException(String.format("MySQL original driver does not accept URL '%s'.", url));
+        }
+        return connection;
+    }
+
+    static final String originalUrl(Properties properties) {
+        String host = MySQLMockPropertyEnum.ORIGINAL_HOST.getValue(properties);
+        String port = MySQLMockPropertyEnum.ORIGINAL_PORT.getValue(properties);
+        return String.format("jdbc:mysql://%s%s/", host == null ? "localhost" : host, port == null ? "" : ":" + port);
+    }
+}
@@ -0,0 +1,41 @@
+/**
+ *    Copyright 2019 MetaRing s.r.l.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.metaring.mock.jdbc.mysql;
+
+import java.util.Arrays;
+import java.util.Properties;
+
+enum MySQLMockDumper {
+
+    JDBC,
+
+    MYSQLDUMP;
+
+    static final MySQLMockDumper of(Properties properties) {
+        String dumper = MySQLMockPropertyEnum.DUMPER.getValue(properties);
+        if (dumper == null) {
+            return JDBC;
+        }
+        for (MySQLMockDumper mockDumper : values()) {
+            if (mockDumper.name().equalsIgnoreCase(dumper)) {
+                return mockDumper;
+            }
+        }
+        throw new RuntimeException(String.format("Unknown MySQL Mock dumper '%s', expected one of %s.", dumper, Arrays.toString(values()).toLowerCase()));
+    }
+}
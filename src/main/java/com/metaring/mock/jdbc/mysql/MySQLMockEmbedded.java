@@ -0,0 +1,573 @@
+/**
+ *    Copyright 2019 MetaRing s.r.l.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.metaring.mock.jdbc.mysql;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+class MySQLMockEmbedded {
+
+    static final String PRODUCT_NAME = "H2";
+
+    private static final String DRIVER_CLASS_NAME = "org.h2.Driver";
+    private static final String URL_SETTINGS = ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;CASE_INSENSITIVE_IDENTIFIERS=TRUE;DB_CLOSE_DELAY=-1";
+    private static final String REPORT_EXTENSION = ".h2-report.txt";
+
+    private static final Set<String> OBJECT_KINDS = new HashSet<>(Arrays.asList("DATABASE", "SCHEMA", "TABLE", "VIEW", "INDEX", "PROCEDURE", "FUNCTION", "TRIGGER", "EVENT"));
+    private static final Set<String> SKIPPED_KINDS = new HashSet<>(Arrays.asList("PROCEDURE", "FUNCTION", "TRIGGER", "EVENT"));
+    private static final Set<String> SPATIAL_TYPES = new HashSet<>(Arrays.asList("geometry", "point", "linestring", "polygon", "multipoint", "multilinestring", "multipolygon", "geometrycollection"));
+
+    private static final Pattern DELIMITER_PATTERN = Pattern.compile("DELIMITER\\s+(\\S+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern PARTITION_PATTERN = Pattern.compile("/\\*!\\d*\\s*PARTITION\\s+BY.*?\\*/", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    static final Pattern VERSION_COMMENT_PATTERN = Pattern.compile("/\\*M?!\\d*\\s?(.*?)\\s*\\*/", Pattern.DOTALL);
+    private static final Pattern VIEW_PATTERN = Pattern.compile("^CREATE\\s+(OR\\s+REPLACE\\s+)?(ALGORITHM\\s*=\\s*\\w+\\s+)?(DEFINER\\s*=\\s*\\S+\\s+)?(SQL\\s+SECURITY\\s+\\w+\\s+)?VIEW\\s+", Pattern.CASE_INSENSITIVE);
+    private static final Pattern CHECK_OPTION_PATTERN = Pattern.compile("\\s+WITH\\s+(CASCADED\\s+|LOCAL\\s+)?CHECK\\s+OPTION\\s*$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern COLUMN_ATTRIBUTES_PATTERN = Pattern.compile("\\s+(CHARACTER\\s+SET|CHARSET|COLLATE)\\s+\\w+|\\s+(UNSIGNED|ZEROFILL|VIRTUAL|STORED)\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern INDEX_OPTIONS_PATTERN = Pattern.compile("\\s+USING\\s+(BTREE|HASH)\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern PREFIX_LENGTH_PATTERN = Pattern.compile("`\\(\\d+\\)");
+    private static final Pattern BIT_LITERAL_PATTERN = Pattern.compile("\\b[bB]'([01]+)'");
+    private static final Pattern ZERO_DATE_PATTERN = Pattern.compile("'0000-00-00( 00:00:00)?'");
+    private static final Pattern REFERENCES_PATTERN = Pattern.compile("REFERENCES\\s+(`(?:[^`]|``)+`)(?!\\.)", Pattern.CASE_INSENSITIVE);
+
+    private static java.sql.Driver driver;
+
+    private final Statement statement;
+    private final List<String> foreignKeys = new ArrayList<>();
+    final List<String> approximated = new ArrayList<>();
+    final List<String> skipped = new ArrayList<>();
+    final List<String> failed = new ArrayList<>();
+    private String schemaName;
+    private long executed;
+
+    MySQLMockEmbedded(Statement statement, String schemaName) {
+        this.statement = statement;
+        this.schemaName = schemaName;
+    }
+
+    static final synchronized java.sql.Driver driver() throws SQLException {
+        if (driver == null) {
+            try {
+                driver = (java.sql.Driver) Class.forName(DRIVER_CLASS_NAME).getConstructor().newInstance();
+            }
+            catch (ClassNotFoundException e) {
+                throw new SQLException(String.format("MySQL Mock h2 backend requires com.h2database:h2 on the classpath (%s not found).", DRIVER_CLASS_NAME), e);
+            }
+            catch (ReflectiveOperationException e) {
+                throw new SQLException(String.format("Error while instantiating %s.", DRIVER_CLASS_NAME), e);
+            }
+        }
+        return driver;
+    }
+
+    static final String url(Properties properties) {
+        String serverKey = MySQLMockPropertyEnum.SERVER_KEY.getValue(properties);
+        String databaseName = serverKey == null ? MySQLMockPropertyEnum.NAME.getValue(properties) : serverKey;
+        return "jdbc:h2:mem:mysqlmock_" + MySQLMockFiles.sha256(String.valueOf(databaseName)).substring(0, 16) + URL_SETTINGS;
+    }
+
+    static final Connection connect(String url, String schemaName, Properties properties) throws SQLException {
+        Properties connectionProperties = new Properties();
+        connectionProperties.put(MySQLMockPropertyEnum.USER.getPropertyName(), properties.getProperty(MySQLMockPropertyEnum.USER.getPropertyName(), "root"));
+        connectionProperties.put(MySQLMockPropertyEnum.PASSWORD.getPropertyName(), properties.getProperty(MySQLMockPropertyEnum.PASSWORD.getPropertyName(), ""));
+        Connection connection = driver().connect(url, connectionProperties);
+        if (schemaName != null) {
+            try {
+                connection.setSchema(schemaName);
+            }
+            catch (SQLException | RuntimeException e) {
+                connection.close();
+                throw e;
+            }
+        }
+        return connection;
+    }
+
+    static final void load(MySQLMockedDatabaseInfo mockedDatabaseInfo, MySQLMockProvisioning provisioning) throws SQLException {
+
+        long start = System.nanoTime();
+
+        MySQLMockMetrics.Timer schemaLoad = provisioning.metrics.begin(MySQLMockPhase.SCHEMA_LOAD);
+
+        Path reportPath = mockedDatabaseInfo.dumpPath.resolveSibling(mockedDatabaseInfo.dumpFingerprint + REPORT_EXTENSION);
+
+        MySQLMockEmbedded embedded = null;
+        try (Connection connection = connect(mockedDatabaseInfo.mockedUrl, null, Driver.cleanProperties(mockedDatabaseInfo.mockProperties)); Statement statement = connection.createStatement(); BufferedReader bufferedReader = Files.newBufferedReader(mockedDatabaseInfo.dumpPath, StandardCharsets.UTF_8)) {
+            embedded = new MySQLMockEmbedded(statement, mockedDatabaseInfo.dbName);
+            for (String sql : statements(bufferedReader)) {
+                provisioning.checkAborted();
+                embedded.translate(sql);
+            }
+            embedded.addForeignKeys();
+        }
+        catch (IOException e) {
+            throw new SQLException(String.format("Error while reading dump of '%s' from %s.", mockedDatabaseInfo.dbName, mockedDatabaseInfo.dumpPath), e);
+        }
+        finally {
+            if (embedded != null) {
+                embedded.writeReport(reportPath, mockedDatabaseInfo);
+            }
+        }
+
+        schemaLoad.bytes(mockedDatabaseInfo.dumpPath.toFile().length()).statements(embedded.executed).close();
+
+        System.err.println(String.format("MySQL Mock loaded '%s' into h2 in %d ms: %d approximated, %d skipped, %d failed definitions (see %s).", mockedDatabaseInfo.dbName, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), embedded.approximated.size(), embedded.skipped.size(), embedded.failed.size(), reportPath));
+    }
+
+    static final String standardLiterals(String sql) {
+        if (sql.indexOf('\\') == -1) {
+            return sql;
+        }
+        int length = sql.length();
+        StringBuilder stringBuilder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            char c = sql.charAt(i);
+            if (c == '`' || c == '"') {
+                int end = MySQLMockSql.skipQuoted(sql, i);
+                stringBuilder.append(sql, i, end);
+                i = end - 1;
+                continue;
+            }
+            stringBuilder.append(c);
+            if (c != '\'') {
+                continue;
+            }
+            for (i++; i < length; i++) {
+                char literal = sql.charAt(i);
+                if (literal == '\\' && i + 1 < length) {
+                    char escaped = sql.charAt(++i);
+                    switch (escaped) {
+                        case '0':
+                            stringBuilder.append('\0');
+                            break;
+                        case 'b':
+                            stringBuilder.append('\b');
+                            break;
+                        case 'n':
+                            stringBuilder.append('\n');
+                            break;
+                        case 'r':
+                            stringBuilder.append('\r');
+                            break;
+                        case 't':
+                            stringBuilder.append('\t');
+                            break;
+                        case 'Z':
+                            stringBuilder.append('\u001A');
+                            break;
+                        case '\'':
+                            stringBuilder.append("''");
+                            break;
+                        case '%':
+                        case '_':
+                            stringBuilder.append('\\').append(escaped);
+                            break;
+                        default:
+                            stringBuilder.append(escaped);
+                            break;
+                    }
+                }
+                else if (literal == '\'' && i + 1 < length && sql.charAt(i + 1) == '\'') {
+                    stringBuilder.append("''");
+                    i++;
+                }
+                else {
+                    stringBuilder.append(literal);
+                    if (literal == '\'') {
+                        break;
+                    }
+                }
+            }
+        }
+        return stringBuilder.toString();
+    }
+
+    static final List<String> statements(BufferedReader bufferedReader) throws IOException {
+        List<String> statements = new ArrayList<>();
+        String delimiter = ";";
+        StringBuilder statement = new StringBuilder();
+        String line = null;
+        while ((line = bufferedReader.readLine()) != null) {
+            String trimmedLine = line.trim();
+            if (statement.length() == 0) {
+                if (trimmedLine.isEmpty() || trimmedLine.startsWith("--") || trimmedLine.startsWith("#")) {
+                    continue;
+                }
+                Matcher delimiterMatcher = DELIMITER_PATTERN.matcher(trimmedLine);
+                if (delimiterMatcher.matches()) {
+                    delimiter = delimiterMatcher.group(1);
+                    continue;
+                }
+            }
+            statement.append(line).append('\n');
+            if (trimmedLine.endsWith(delimiter)) {
+                String sql = statement.toString().trim();
+                sql = sql.substring(0, sql.length() - delimiter.length()).trim();
+                if (!sql.isEmpty()) {
+                    statements.add(sql);
+                }
+                statement.setLength(0);
+            }
+        }
+        if (statement.toString().trim().length() > 0) {
+            statements.add(statement.toString().trim());
+        }
+        return statements;
+    }
+
+    void translate(String sql) throws SQLException {
+        sql = standardLiterals(VERSION_COMMENT_PATTERN.matcher(PARTITION_PATTERN.matcher(sql).replaceAll("")).replaceAll("$1")).trim();
+        List<String> tokens = MySQLMockSql.tokens(sql, 24);
+        String command = tokens.isEmpty() ? "" : tokens.get(0).toUpperCase();
+        String kind = objectKind(tokens);
+        String name = objectName(tokens, kind);
+        switch (command) {
+            case "":
+            case "SET":
+            case "LOCK":
+            case "UNLOCK":
+                return;
+            case "USE":
+                schemaName = tokens.get(1);
+                execute("SET SCHEMA " + MySQLMockSql.quote(schemaName));
+                return;
+            case "ALTER":
+                if ("DATABASE".equals(kind) || "SCHEMA".equals(kind)) {
+                    return;
+                }
+                break;
+            case "DROP":
+                if ("DATABASE".equals(kind) || "SCHEMA".equals(kind)) {
+                    execute("DROP SCHEMA IF EXISTS " + MySQLMockSql.quote(name) + " CASCADE");
+                    return;
+                }
+                if (SKIPPED_KINDS.contains(kind)) {
+                    return;
+                }
+                break;
+            case "CREATE":
+                if ("DATABASE".equals(kind) || "SCHEMA".equals(kind)) {
+                    execute("CREATE SCHEMA IF NOT EXISTS " + MySQLMockSql.quote(name));
+                    return;
+                }
+                if (SKIPPED_KINDS.contains(kind)) {
+                    skipped.add(String.format("%s %s.%s: stored programs are not supported", kind.toLowerCase(), schemaName, MySQLMockSql.tableName(name)));
+                    return;
+                }
+                if ("TABLE".equals(kind)) {
+                    createTable(sql, MySQLMockSql.tableName(name));
+                    return;
+                }
+                if ("VIEW".equals(kind)) {
+                    createView(sql, MySQLMockSql.tableName(name));
+                    return;
+                }
+                break;
+            default:
+                break;
+        }
+        try {
+            execute(sql);
+        }
+        catch (SQLException e) {
+            failed.add(String.format("statement in %s: %s (%s)", schemaName, abbreviate(sql), e.getMessage()));
+        }
+    }
+
+    private static final String objectKind(List<String> tokens) {
+        for (int i = 1; i < tokens.size(); i++) {
+            String token = tokens.get(i).toUpperCase();
+            if (OBJECT_KINDS.contains(token)) {
+                return token;
+            }
+        }
+        return null;
+    }
+
+    private static final String objectName(List<String> tokens, String kind) {
+        if (kind == null) {
+            return null;
+        }
+        for (int i = 1; i < tokens.size() - 1; i++) {
+            if (tokens.get(i).equalsIgnoreCase(kind)) {
+                for (int j = i + 1; j < tokens.size(); j++) {
+                    String token = tokens.get(j).toUpperCase();
+                    if (!token.equals("IF") && !token.equals("NOT") && !token.equals("EXISTS")) {
+                        return tokens.get(j);
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private void createTable(String sql, String tableName) throws SQLException {
+        String[] lines = sql.split("\n");
+        if (lines.length < 3 || !lines[0].trim().endsWith("(") || !lines[lines.length - 1].trim().startsWith(")")) {
+            execute(sql);
+            return;
+        }
+        List<String> definitions = new ArrayList<>();
+        List<String> indexes = new ArrayList<>();
+        for (int i = 1; i < lines.length - 1; i++) {
+            String line = lines[i].trim();
+            if (line.endsWith(",")) {
+                line = line.substring(0, line.length() - 1);
+            }
+            String definition = definition(tableName, line, indexes);
+            if (definition != null) {
+                definitions.add("  " + definition);
+            }
+        }
+        String createTable = lines[0].trim() + "\n" + String.join(",\n", definitions) + "\n)";
+        try {
+            execute(createTable);
+        }
+        catch (SQLException e) {
+            throw new SQLException(String.format("MySQL Mock h2 backend cannot create table %s.%s: %s\n\n%s", schemaName, tableName, e.getMessage(), createTable), e);
+        }
+        for (String index : indexes) {
+            try {
+                execute(index);
+            }
+            catch (SQLException e) {
+                failed.add(String.format("index of %s.%s dropped: %s (%s)", schemaName, tableName, index, e.getMessage()));
+            }
+        }
+    }
+
+    private String definition(String tableName, String line, List<String> indexes) {
+        String upperLine = line.toUpperCase();
+        if (line.startsWith("`")) {
+            return column(tableName, line);
+        }
+        if (upperLine.startsWith("PRIMARY KEY")) {
+            return "PRIMARY KEY " + indexColumns(line, line.indexOf('('));
+        }
+        if (upperLine.startsWith("FULLTEXT") || upperLine.startsWith("SPATIAL")) {
+            skipped.add(String.format("index of %s.%s: %s", schemaName, tableName, line));
+            return null;
+        }
+        boolean unique = upperLine.startsWith("UNIQUE");
+        if (unique || upperLine.startsWith("KEY") || upperLine.startsWith("INDEX")) {
+            int nameStart = line.indexOf('`');
+            int nameEnd = MySQLMockSql.skipQuoted(line, nameStart);
+            String indexColumns = indexColumns(line, line.indexOf('(', nameEnd));
+            if (indexColumns.startsWith("((") || indexColumns.contains(",(")) {
+                skipped.add(String.format("index of %s.%s: functional key parts are not supported: %s", schemaName, tableName, line));
+                return null;
+            }
+            String indexName = tableName + "_" + line.substring(nameStart + 1, nameEnd - 1).replace("``", "`");
+            indexes.add(String.format("CREATE %sINDEX %s ON %s %s", unique ? "UNIQUE " : "", MySQLMockSql.quote(indexName), MySQLMockSql.quote(tableName), indexColumns));
+            return null;
+        }
+        if (upperLine.startsWith("CONSTRAINT") && upperLine.contains(" FOREIGN KEY ")) {
+            Matcher referencesMatcher = REFERENCES_PATTERN.matcher(line);
+            String foreignKey = referencesMatcher.find() ? line.substring(0, referencesMatcher.start(1)) + MySQLMockSql.quote(schemaName) + "." + line.substring(referencesMatcher.start(1)) : line;
+            foreignKeys.add(String.format("ALTER TABLE %s.%s ADD %s", MySQLMockSql.quote(schemaName), MySQLMockSql.quote(tableName), foreignKey));
+            return null;
+        }
+        return line;
+    }
+
+    private static final String indexColumns(String line, int open) {
+        return PREFIX_LENGTH_PATTERN.matcher(INDEX_OPTIONS_PATTERN.matcher(line.substring(open, closingParenthesis(line, open) + 1)).replaceAll("")).replaceAll("`");
+    }
+
+    private static final int closingParenthesis(String line, int open) {
+        int depth = 0;
+        for (int i = open; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\'' || c == '"' || c == '`') {
+                i = MySQLMockSql.skipQuoted(line, i) - 1;
+            }
+            else if (c == '(') {
+                depth++;
+            }
+            else if (c == ')' && --depth == 0) {
+                return i;
+            }
+        }
+        return line.length() - 1;
+    }
+
+    private String column(String tableName, String line) {
+        int nameEnd = MySQLMockSql.skipQuoted(line, 0);
+        String columnName = line.substring(0, nameEnd);
+        String definition = line.substring(nameEnd).trim();
+        int typeEnd = 0;
+        while (typeEnd < definition.length() && Character.isLetterOrDigit(definition.charAt(typeEnd))) {
+            typeEnd++;
+        }
+        int argumentsEnd = typeEnd;
+        if (argumentsEnd < definition.length() && definition.charAt(argumentsEnd) == '(') {
+            argumentsEnd = closingParenthesis(definition, argumentsEnd) + 1;
+        }
+        String type = definition.substring(0, typeEnd).toLowerCase();
+        String arguments = definition.substring(typeEnd, argumentsEnd);
+        String attributes = definition.substring(argumentsEnd);
+        boolean unsigned = attributes.trim().toLowerCase().startsWith("unsigned");
+        String column = tableName + "." + columnName.replace("`", "");
+        attributes = replaceUnquoted(attributes, COLUMN_ATTRIBUTES_PATTERN, "");
+        Matcher bitLiteralMatcher = BIT_LITERAL_PATTERN.matcher(attributes);
+        StringBuffer stringBuffer = new StringBuffer();
+        while (bitLiteralMatcher.find()) {
+            bitLiteralMatcher.appendReplacement(stringBuffer, Long.toString(Long.parseLong(bitLiteralMatcher.group(1), 2)));
+        }
+        attributes = bitLiteralMatcher.appendTail(stringBuffer).toString();
+        if (ZERO_DATE_PATTERN.matcher(attributes).find()) {
+            attributes = ZERO_DATE_PATTERN.matcher(attributes).replaceAll("'0001-01-01$1'");
+            approximated.add(String.format("%s.%s: zero date default replaced by 0001-01-01", schemaName, column));
+        }
+        return columnName + " " + type(column, type, arguments, unsigned) + attributes;
+    }
+
+    private String type(String column, String type, String arguments, boolean unsigned) {
+        switch (type) {
+            case "tinyint":
+                return unsigned ? "smallint" : "tinyint";
+            case "smallint":
+                return unsigned ? "int" : "smallint";
+            case "mediumint":
+                return "int";
+            case "int":
+            case "integer":
+                return unsigned ? "bigint" : "int";
+            case "bigint":
+                if (unsigned) {
+                    approximated.add(String.format("%s.%s: bigint unsigned stored as signed bigint", schemaName, column));
+                }
+                return "bigint";
+            case "bit":
+                return arguments.isEmpty() || arguments.equals("(1)") ? "boolean" : "bigint";
+            case "year":
+                return "smallint";
+            case "float":
+            case "double":
+            case "real":
+                return arguments.contains(",") ? type : type + arguments;
+            case "set":
+                approximated.add(String.format("%s.%s: set%s stored as varchar", schemaName, column, arguments));
+                return "varchar(1024)";
+            case "json":
+                approximated.add(String.format("%s.%s: json stored as clob, JSON functions are not available", schemaName, column));
+                return "clob";
+            default:
+                if (SPATIAL_TYPES.contains(type)) {
+                    approximated.add(String.format("%s.%s: %s stored as blob, spatial functions are not available", schemaName, column, type));
+                    return "blob";
+                }
+                return type + arguments;
+        }
+    }
+
+    private void createView(String sql, String viewName) {
+        Matcher viewMatcher = VIEW_PATTERN.matcher(sql);
+        String createView = viewMatcher.find() ? "CREATE OR REPLACE VIEW " + sql.substring(viewMatcher.end()) : sql;
+        Matcher checkOptionMatcher = CHECK_OPTION_PATTERN.matcher(createView);
+        if (checkOptionMatcher.find()) {
+            createView = createView.substring(0, checkOptionMatcher.start());
+            approximated.add(String.format("view %s.%s: check option dropped", schemaName, viewName));
+        }
+        try {
+            execute(createView);
+        }
+        catch (SQLException e) {
+            failed.add(String.format("view %s.%s: %s", schemaName, viewName, e.getMessage()));
+            try {
+                execute("DROP VIEW IF EXISTS " + MySQLMockSql.quote(viewName));
+            }
+            catch (SQLException dropException) {
+            }
+        }
+    }
+
+    void addForeignKeys() {
+        for (String foreignKey : foreignKeys) {
+            try {
+                execute(foreignKey);
+            }
+            catch (SQLException e) {
+                failed.add(String.format("foreign key dropped: %s (%s)", foreignKey, e.getMessage()));
+            }
+        }
+    }
+
+    private void execute(String sql) throws SQLException {
+        statement.execute(sql);
+        executed++;
+    }
+
+    private void writeReport(Path reportPath, MySQLMockedDatabaseInfo mockedDatabaseInfo) {
+        List<String> report = new ArrayList<>();
+        report.add(String.format("MySQL Mock h2 compatibility report of '%s' (%s): %d statements executed.", mockedDatabaseInfo.dbName, mockedDatabaseInfo.dumpFingerprint, executed));
+        section(report, "Approximated", approximated);
+        section(report, "Skipped", skipped);
+        section(report, "Failed", failed);
+        try {
+            Files.write(reportPath, report, StandardCharsets.UTF_8);
+        }
+        catch (IOException e) {
+            System.err.println(String.format("MySQL Mock could not write h2 compatibility report to %s: %s", reportPath, e.getMessage()));
+        }
+    }
+
+    private static final void section(List<String> report, String title, List<String> entries) {
+        report.add("");
+        report.add(String.format("%s (%d):", title, entries.size()));
+        for (String entry : entries) {
+            report.add("  " + entry);
+        }
+    }
+
+    private static final String replaceUnquoted(String sql, Pattern pattern, String replacement) {
+        StringBuilder stringBuilder = new StringBuilder();
+        int start = 0;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (c == '\'' || c == '"' || c == '`') {
+                stringBuilder.append(pattern.matcher(sql.substring(start, i)).replaceAll(replacement));
+                start = i;
+                i = MySQLMockSql.skipQuoted(sql, i);
+                stringBuilder.append(sql, start, i);
+                start = i;
+                i--;
+            }
+        }
+        return stringBuilder.append(pattern.matcher(sql.substring(start)).replaceAll(replacement)).toString();
+    }
+
+    private static final String abbreviate(String sql) {
+        String singleLine = sql.replaceAll("\\s+", " ");
+        return singleLine.length() > 120 ? singleLine.substring(0, 117) + "..." : singleLine;
+    }
+}
@@ -0,0 +1,207 @@
+/**
+ *    Copyright 2019 MetaRing s.r.l.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.metaring.mock.jdbc.mysql;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.metaring.java.process.fork.JavaChildProcess;
+
+class MySQLMockFiles {
+
+    interface LockedAction<T> {
+        T run() throws IOException, SQLException;
+    }
+
+    private static final String OWNER_FILE = ".mysqlmock.owner";
+
+    private static final Map<Path, Object> LOCK_MONITORS = new ConcurrentHashMap<>();
+    private static final Map<Path, FileChannel> OWNED_FOLDERS = new ConcurrentHashMap<>();
+
+    static final <T> T locked(Path lockPath, LockedAction<T> action) throws IOException, SQLException {
+        lockPath = lockPath.toAbsolutePath().normalize();
+        Files.createDirectories(lockPath.getParent());
+        synchronized (LOCK_MONITORS.computeIfAbsent(lockPath, path -> new Object())) {
+            try (FileChannel lockChannel = FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                FileLock lock = lockChannel.lock();
+                try {
+                    return action.run();
+                }
+                finally {
+                    lock.release();
+                }
+            }
+        }
+    }
+
+    static final void own(Path folder) throws IOException {
+        folder = folder.toAbsolutePath().normalize();
+        FileChannel ownerChannel = FileChannel.open(folder.resolve(OWNER_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            ownerChannel.lock();
+            ownerChannel.write(ByteBuffer.wrap(ManagementFactory.getRuntimeMXBean().getName().getBytes(StandardCharsets.UTF_8)));
+        }
+        catch (IOException | RuntimeException e) {
+            ownerChannel.close();
+            throw e;
+        }
+        OWNED_FOLDERS.put(folder, ownerChannel);
+    }
+
+    static final void disown(Path folder) {
+        FileChannel ownerChannel = OWNED_FOLDERS.remove(folder.toAbsolutePath().normalize());
+        if (ownerChannel == null) {
+            return;
+        }
+        try {
+            ownerChannel.close();
+        }
+        catch (IOException e) {
+        }
+    }
+
+    static final boolean isOrphaned(Path folder) {
+        Path ownerPath = folder.resolve(OWNER_FILE);
+        if (!Files.isRegularFile(ownerPath, LinkOption.NOFOLLOW_LINKS)) {
+            return false;
+        }
+        try (FileChannel ownerChannel = FileChannel.open(ownerPath, StandardOpenOption.WRITE)) {
+            FileLock lock = ownerChannel.tryLock();
+            if (lock == null) {
+                return false;
+            }
+            lock.release();
+            return true;
+        }
+        catch (IOException | OverlappingFileLockException e) {
+            return false;
+        }
+    }
+
+    static final void delete(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    static final void copy(List<Path> files, Path targetFolder) throws IOException {
+        if (files.isEmpty()) {
+            return;
+        }
+        Files.createDirectories(targetFolder);
+        if (!JavaChildProcess.IS_WINDOWS) {
+            List<String> command = new ArrayList<>();
+            command.add("cp");
+            command.add(System.getProperty("os.name", "").toLowerCase().contains("mac") ? "-c" : "--reflink=auto");
+            for (Path file : files) {
+                command.add(file.toAbsolutePath().toString());
+            }
+            command.add(targetFolder.toAbsolutePath().toString());
+            try {
+                Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+                MySQLMockProcessOutput.drain(process.getInputStream(), "mysql-mock-copy");
+                if (process.waitFor() == 0) {
+                    return;
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while copying files", e);
+            }
+            catch (IOException e) {
+            }
+        }
+        for (Path file : files) {
+            Files.copy(file, targetFolder.resolve(file.getFileName().toString()), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    static final String tail(Path file, int maxLines) {
+        try {
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            return String.join("\n", lines.subList(Math.max(0, lines.size() - maxLines), lines.size()));
+        }
+        catch (IOException e) {
+            return "";
+        }
+    }
+
+    static final String sha256(String text) {
+        return hex(messageDigest().digest(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    static final String sha256(InputStream inputStream) throws IOException {
+        MessageDigest messageDigest = messageDigest();
+        byte[] buffer = new byte[65536];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            messageDigest.update(buffer, 0, read);
+        }
+        return hex(messageDigest.digest());
+    }
+
+    static final MessageDigest messageDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static final String hex(byte[] bytes) {
+        StringBuilder stringBuilder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            stringBuilder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return stringBuilder.toString();
+    }
+}
@@ -0,0 +1,643 @@
+/**
+ *    Copyright 2019 MetaRing s.r.l.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.metaring.mock.jdbc.mysql;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+class MySQLMockFixtures {
+
+    static final class Rows {
+
+        final String tableName;
+
+        final List<String> columns;
+
+        final List<Object[]> values = new ArrayList<>();
+
+        private Rows(String tableName, List<String> columns) {
+            this.tableName = tableName;
+            this.columns = columns;
+        }
+    }
+
+    static final class Fixture {
+
+        final List<Rows> rows = new ArrayList<>();
+
+        final List<String> statements = new ArrayList<>();
+    }
+
+    private static final String CLASSPATH_PREFIX = "classpath:";
+    private static final int MAX_ROWS_PER_INSERT = 1000;
+    private static final int MAX_PARAMETERS_PER_INSERT = 65535;
+
+    private static final Map<String, Fixture> FIXTURES = new ConcurrentHashMap<>();
+
+    static final void load(Connection connection, Collection<String> locations) throws SQLException {
+        Map<String, List<Rows>> rowsByTable = new LinkedHashMap<>();
+        List<String> statements = new ArrayList<>();
+        for (String location : locations) {
+            Fixture fixture = fixture(location);
+            for (Rows rows : fixture.rows) {
+                rowsByTable.computeIfAbsent(rows.tableName, tableName -> new ArrayList<>()).add(rows);
+            }
+            statements.addAll(fixture.statements);
+        }
+
+        if (!rowsByTable.isEmpty()) {
+            load(connection, rowsByTable);
+        }
+
+        if (!statements.isEmpty()) {
+            try (Statement statement = connection.createStatement()) {
+                for (String sql : statements) {
+                    statement.addBatch(sql);
+                }
+                statement.executeBatch();
+            }
+        }
+    }
+
+    private static final void load(Connection connection, Map<String, List<Rows>> rowsByTable) throws SQLException {
+        Map<String, Set<String>> parents = parents(connection, rowsByTable.keySet());
+        List<List<String>> levels = MySQLMockSql.dependencyLevels(rowsByTable.keySet(), parents);
+        MySQLMockedDatabaseInfo mockedDatabaseInfo = MySQLMockConnectionInterceptor.mockedDatabaseInfo(connection);
+        boolean embedded = MySQLMockSql.isEmbedded(connection);
+        boolean parallel = mockedDatabaseInfo != null && mockedDatabaseInfo.recorder == null && !embedded && connection.getAutoCommit();
+        Set<String> loaded = new HashSet<>();
+        for (List<String> level : levels) {
+            Set<String> cyclic = new HashSet<>();
+            for (String tableName : level) {
+                if (!loaded.containsAll(parents.getOrDefault(tableName, Collections.emptySet()))) {
+                    cyclic.add(tableName);
+                }
+            }
+            if (!parallel || level.size() == 1) {
+                for (String tableName : level) {
+                    insert(connection, tableName, rowsByTable.get(tableName), cyclic.contains(tableName), embedded);
+                }
+            }
+            else {
+                MySQLMockProvisioning provisioning = new MySQLMockProvisioning(mockedDatabaseInfo.metrics);
+                List<CompletableFuture<Void>> inserts = new ArrayList<>();
+                for (String tableName : level) {
+                    inserts.add(provisioning.stage(() -> {
+                        try (Connection tableConnection = mockedDatabaseInfo.connect(Driver.cleanProperties(mockedDatabaseInfo.mockProperties))) {
+                            tableConnection.setCatalog(connection.getCatalog());
+                            insert(tableConnection, tableName, rowsByTable.get(tableName), cyclic.contains(tableName), false);
+                        }
+                        return null;
+                    }));
+                }
+                MySQLMockProvisioning.await(CompletableFuture.allOf(inserts.toArray(new CompletableFuture<?>[inserts.size()])));
+            }
+            loaded.addAll(level);
+        }
+        if (parallel && mockedDatabaseInfo.dirtyTables != null) {
+            mockedDatabaseInfo.dirtyTables.modifying(rowsByTable.keySet());
+        }
+    }
+
+    private static final void insert(Connection connection, String tableName, List<Rows> tableRows, boolean cyclic, boolean embedded) throws SQLException {
+        if (cyclic) {
+            MySQLMockSql.execute(connection, MySQLMockSql.foreignKeyChecks(embedded, false));
+        }
+        try {
+            for (Rows rows : tableRows) {
+                int columns = rows.columns.size();
+                int rowsPerInsert = Math.max(1, Math.min(MAX_ROWS_PER_INSERT, MAX_PARAMETERS_PER_INSERT / Math.max(1, columns)));
+                PreparedStatement preparedStatement = null;
+                int preparedRows = 0;
+                try {
+                    for (int from = 0; from < rows.values.size(); from += rowsPerInsert) {
+                        int to = Math.min(rows.values.size(), from + rowsPerInsert);
+                        if (preparedStatement == null || preparedRows != to - from) {
+                            if (preparedStatement != null) {
+                                preparedStatement.close();
+                            }
+                            preparedStatement = connection.prepareStatement(insertSql(tableName, rows.columns, to - from));
+                            preparedRows = to - from;
+                        }
+                        int index = 1;
+                        for (int row = from; row < to; row++) {
+                            for (Object value : rows.values.get(row)) {
+                                preparedStatement.setObject(index++, value);
+                            }
+                        }
+                        preparedStatement.executeUpdate();
+                    }
+                }
+                finally {
+                    if (preparedStatement != null) {
+                        preparedStatement.close();
+                    }
+                }
+            }
+        }
+        finally {
+            if (cyclic) {
+                MySQLMockSql.execute(connection, MySQLMockSql.foreignKeyChecks(embedded, true));
+            }
+        }
+    }
+
+    private static final String insertSql(String tableName, List<String> columns, int rows) {
+        StringBuilder stringBuilder = new StringBuilder("INSERT INTO ").append(qualifiedName(tableName)).append(" (");
+        StringBuilder placeholders = new StringBuilder("(");
+        for (int i = 0; i < columns.size(); i++) {
+            stringBuilder.append(i == 0 ? "" : ",").append(MySQLMockSql.quote(columns.get(i)));
+            placeholders.append(i == 0 ? "?" : ",?");
+        }
+        stringBuilder.append(") VALUES ");
+        placeholders.append(')');
+        for (int i = 0; i < rows; i++) {
+            stringBuilder.append(i == 0 ? "" : ",").append(placeholders);
+        }
+        return stringBuilder.toString();
+    }
+
+    private static final String qualifiedName(String tableName) {
+        int dot = tableName.indexOf('.');
+        return dot == -1 ? MySQLMockSql.quote(tableName) : MySQLMockSql.quote(tableName.substring(0, dot)) + "." + MySQLMockSql.quote(tableName.substring(dot + 1));
+    }
+
+    private static final Map<String, Set<String>> parents(Connection connection, Collection<String> tableNames) throws SQLException {
+        boolean embedded = MySQLMockSql.isEmbedded(connection);
+        String catalog = MySQLMockSql.database(connection);
+        Map<String, String> tableNamesByKey = new HashMap<>();
+        for (String tableName : tableNames) {
+            tableNamesByKey.put(key(catalog, tableName), tableName);
+        }
+        Map<String, Set<String>> parents = new HashMap<>();
+        DatabaseMetaData databaseMetaData = connection.getMetaData();
+        for (String tableName : tableNames) {
+            int dot = tableName.indexOf('.');
+            String database = dot == -1 ? catalog : tableName.substring(0, dot);
+            try (ResultSet resultSet = embedded ? databaseMetaData.getImportedKeys(null, database, MySQLMockSql.tableName(tableName)) : databaseMetaData.getImportedKeys(database, null, MySQLMockSql.tableName(tableName))) {
+                while (resultSet.next()) {
+                    String parent = tableNamesByKey.get(key(resultSet.getString(embedded ? "PKTABLE_SCHEM" : "PKTABLE_CAT"), resultSet.getString("PKTABLE_NAME")));
+                    if (parent != null && !parent.equals(tableName)) {
+                        parents.computeIfAbsent(tableName, name -> new HashSet<>()).add(parent);
+                    }
+                }
+            }
+        }
+        return parents;
+    }
+
+    private static final String key(String catalog, String tableName) {
+        return (tableName.indexOf('.') == -1 ? catalog + "." + tableName : tableName).toLowerCase();
+    }
+
+    private static final Fixture fixture(String location) throws SQLException {
+        URL url = url(location);
+        String version = url.toString();
+        if ("file".equals(url.getProtocol())) {
+            try {
+                File file = new File(url.toURI());
+                version += "@" + file.lastModified() + ":" + file.length();
+            }
+            catch (URISyntaxException | IllegalArgumentException e) {
+            }
+        }
+        Fixture fixture = FIXTURES.get(version);
+        if (fixture == null) {
+            fixture = parse(url);
+            FIXTURES.put(version, fixture);
+        }
+        return fixture;
+    }
+
+    private static final URL url(String location) throws SQLException {
+        String resource = location.startsWith(CLASSPATH_PREFIX) ? location.substring(CLASSPATH_PREFIX.length()) : null;
+        try {
+            if (resource == null) {
+                File file = new File(location);
+                if (file.isFile()) {
+                    return file.toURI().toURL();
+                }
+                resource = location;
+            }
+        }
+        catch (IOException e) {
+            throw new SQLException(String.format("Invalid fixture location '%s'.", location), e);
+        }
+        while (resource.startsWith("/")) {
+            resource = resource.substring(1);
+        }
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        URL url = classLoader == null ? null : classLoader.getResource(resource);
+        if (url == null) {
+            url = MySQLMockFixtures.class.getClassLoader().getResource(resource);
+        }
+        if (url == null) {
+            throw new SQLException(String.format("Fixture '%s' not found as a file nor as a classpath resource.", location));
+        }
+        return url;
+    }
+
+    private static final Fixture parse(URL url) throws SQLException {
+        String path = url.getPath();
+        String fileName = path.substring(path.lastIndexOf('/') + 1);
+        int extensionIndex = fileName.lastIndexOf('.');
+        String extension = extensionIndex == -1 ? "" : fileName.substring(extensionIndex + 1).toLowerCase();
+        String tableName = extensionIndex == -1 ? fileName : fileName.substring(0, extensionIndex);
+        Fixture fixture = new Fixture();
+        try (InputStream inputStream = url.openStream(); Reader reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8)) {
+            switch (extension) {
+                case "csv":
+                    parseCsv(reader, tableName, fixture);
+                    break;
+                case "json":
+                    parseJson(reader, tableName, fixture);
+                    break;
+                case "sql":
+                    fixture.statements.addAll(MySQLMockSql.split(read(reader)));
+                    break;
+                default:
+                    throw new SQLException(String.format("Unsupported fixture format of '%s', expected .csv, .json or .sql.", url));
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            throw new SQLException(String.format("Error while parsing fixture '%s': %s", url, e.getMessage()), e);
+        }
+        return fixture;
+    }
+
+    private static final String read(Reader reader) throws IOException {
+        StringWriter writer = new StringWriter();
+        char[] buffer = new char[8192];
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            writer.write(buffer, 0, read);
+        }
+        return writer.toString();
+    }
+
+    static final void parseCsv(Reader reader, String tableName, Fixture fixture) throws IOException {
+        String csv = read(reader);
+        if (csv.startsWith("\uFEFF")) {
+            csv = csv.substring(1);
+        }
+        Rows rows = null;
+        List<Object> record = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean wasQuoted = false;
+        int length = csv.length();
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? csv.charAt(i) : '\n';
+            if (quoted) {
+                if (c == '"' && i + 1 < length && csv.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                }
+                else if (c == '"') {
+                    quoted = false;
+                }
+                else if (i == length) {
+                    throw new IOException("Unterminated quoted field");
+                }
+                else {
+                    field.append(c);
+                }
+                continue;
+            }
+            if (c == '"') {
+                quoted = true;
+                wasQuoted = true;
+            }
+            else if (c == ',' || c == '\n') {
+                record.add(field.length() == 0 && !wasQuoted ? null : field.toString());
+                field.setLength(0);
+                wasQuoted = false;
+                if (c == '\n') {
+                    if (record.size() > 1 || record.get(0) != null) {
+                        if (rows == null) {
+                            List<String> columns = new ArrayList<>();
+                            for (Object column : record) {
+                                columns.add(String.valueOf(column).trim());
+                            }
+                            rows = new Rows(tableName, columns);
+                        }
+                        else if (record.size() != rows.columns.size()) {
+                            throw new IOException(String.format("Row %d has %d fields, expected %d", rows.values.size() + 1, record.size(), rows.columns.size()));
+                        }
+                        else {
+                            rows.values.add(record.toArray());
+                        }
+                    }
+                    record.clear();
+                }
+            }
+            else if (c != '\r') {
+                field.append(c);
+            }
+        }
+        if (rows != null) {
+            fixture.rows.add(rows);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static final void parseJson(Reader reader, String tableName, Fixture fixture) throws IOException {
+        Object json = new JsonParser(read(reader)).parse();
+        if (json instanceof List) {
+            addJsonRows(tableName, (List<Object>) json, fixture);
+        }
+        else if (json instanceof Map) {
+            for (Map.Entry<String, Object> table : ((Map<String, Object>) json).entrySet()) {
+                if (!(table.getValue() instanceof List)) {
+                    throw new IOException(String.format("Table '%s' must be an array of row objects", table.getKey()));
+                }
+                addJsonRows(table.getKey(), (List<Object>) table.getValue(), fixture);
+            }
+        }
+        else {
+            throw new IOException("Expected an array of rows or an object of tables");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static final void addJsonRows(String tableName, List<Object> jsonRows, Fixture fixture) throws IOException {
+        Rows rows = null;
+        for (Object jsonRow : jsonRows) {
+            if (!(jsonRow instanceof Map)) {
+                throw new IOException(String.format("Rows of table '%s' must be objects", tableName));
+            }
+            Map<String, Object> row = (Map<String, Object>) jsonRow;
+            List<String> columns = new ArrayList<>(row.keySet());
+            if (rows == null || !rows.columns.equals(columns)) {
+                rows = new Rows(tableName, columns);
+                fixture.rows.add(rows);
+            }
+            Object[] values = new Object[columns.size()];
+            int i = 0;
+            for (Object value : row.values()) {
+                values[i++] = value instanceof Map || value instanceof List ? JsonParser.toJson(value) : value;
+            }
+            rows.values.add(values);
+        }
+    }
+
+    static final class JsonParser {
+
+        private final String json;
+        private int index;
+
+        JsonParser(String json) {
+            this.json = json;
+        }
+
+        Object parse() throws IOException {
+            Object value = value();
+            skipWhitespace();
+            if (index < json.length()) {
+                throw error("Unexpected trailing content");
+            }
+            return value;
+        }
+
+        private Object value() throws IOException {
+            skipWhitespace();
+            if (index >= json.length()) {
+                throw error("Unexpected end of input");
+            }
+            char c = json.charAt(index);
+            switch (c) {
+                case '{':
+                    return object();
+                case '[':
+                    return array();
+                case '"':
+                    return string();
+                case 't':
+                    return literal("true", Boolean.TRUE);
+                case 'f':
+                    return literal("false", Boolean.FALSE);
+                case 'n':
+                    return literal("null", null);
+                default:
+                    return number();
+            }
+        }
+
+        private Map<String, Object> object() throws IOException {
+            Map<String, Object> object = new LinkedHashMap<>();
+            index++;
+            skipWhitespace();
+            if (peek() == '}') {
+                index++;
+                return object;
+            }
+            while (true) {
+                skipWhitespace();
+                if (peek() != '"') {
+                    throw error("Expected a property name");
+                }
+                String name = string();
+                skipWhitespace();
+                expect(':');
+                object.put(name, value());
+                skipWhitespace();
+                if (peek() == ',') {
+                    index++;
+                    continue;
+                }
+                expect('}');
+                return object;
+            }
+        }
+
+        private List<Object> array() throws IOException {
+            List<Object> array = new ArrayList<>();
+            index++;
+            skipWhitespace();
+            if (peek() == ']') {
+                index++;
+                return array;
+            }
+            while (true) {
+                array.add(value());
+                skipWhitespace();
+                if (peek() == ',') {
+                    index++;
+                    continue;
+                }
+                expect(']');
+                return array;
+            }
+        }
+
+        private String string() throws IOException {
+            StringBuilder stringBuilder = new StringBuilder();
+            index++;
+            while (index < json.length()) {
+                char c = json.charAt(index++);
+                if (c == '"') {
+                    return stringBuilder.toString();
+                }
+                if (c != '\\') {
+                    stringBuilder.append(c);
+                    continue;
+                }
+                if (index >= json.length()) {
+                    break;
+                }
+                char escape = json.charAt(index++);
+                switch (escape) {
+                    case 'b':
+                        stringBuilder.append('\b');
+                        break;
+                    case 'f':
+                        stringBuilder.append('\f');
+                        break;
+                    case 'n':
+                        stringBuilder.append('\n');
+                        break;
+                    case 'r':
+                        stringBuilder.append('\r');
+                        break;
+                    case 't':
+                        stringBuilder.append('\t');
+                        break;
+                    case 'u':
+                        if (index + 4 > json.length()) {
+                            throw error("Invalid unicode escape");
+                        }
+                        stringBuilder.append((char) Integer.parseInt(json.substring(index, index + 4), 16));
+                        index += 4;
+                        break;
+                    default:
+                        stringBuilder.append(escape);
+                }
+            }
+            throw error("Unterminated string");
+        }
+
+        private Object number() throws IOException {
+            int start = index;
+            while (index < json.length() && "+-0123456789.eE".indexOf(json.charAt(index)) != -1) {
+                index++;
+            }
+            String number = json.substring(start, index);
+            try {
+                BigDecimal decimal = new BigDecimal(number);
+                if (number.indexOf('.') == -1 && number.indexOf('e') == -1 && number.indexOf('E') == -1 && decimal.toBigInteger().bitLength() < 64) {
+                    return decimal.longValueExact();
+                }
+                return decimal;
+            }
+            catch (NumberFormatException | ArithmeticException e) {
+                index = start;
+                throw error("Invalid value");
+            }
+        }
+
+        private Object literal(String literal, Object value) throws IOException {
+            if (!json.startsWith(literal, index)) {
+                throw error("Invalid value");
+            }
+            index += literal.length();
+            return value;
+        }
+
+        private char peek() {
+            return index < json.length() ? json.charAt(index) : '\0';
+        }
+
+        private void expect(char c) throws IOException {
+            if (peek() != c) {
+                throw error(String.format("Expected '%c'", c));
+            }
+            index++;
+        }
+
+        private void skipWhitespace() {
+            while (index < json.length() && Character.isWhitespace(json.charAt(index))) {
+                index++;
+            }
+        }
+
+        private IOException error(String message) {
+            return new IOException(String.format("%s at offset %d", message, index));
+        }
+
+        @SuppressWarnings("unchecked")
+        static String toJson(Object value) {
+            if (value == null) {
+                return "null";
+            }
+            if (value instanceof String) {
+                StringBuilder stringBuilder = new StringBuilder("\"");
+                for (char c : ((String) value).toCharArray()) {
+                    if (c == '"' || c == '\\') {
+                        stringBuilder.append('\\').append(c);
+                    }
+                    else if (c < 0x20) {
+                        stringBuilder.append(String.format("\\u%04x", (int) c));
+                    }
+                    else {
+                        stringBuilder.append(c);
+                    }
+                }
+                return stringBuilder.append('"').toString();
+            }
+            if (value instanceof Map) {
+                StringBuilder stringBuilder = new StringBuilder("{");
+                for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+                    stringBuilder.append(stringBuilder.length() == 1 ? "" : ",").append(toJson(entry.getKey())).append(':').append(toJson(entry.getValue()));
+                }
+                return stringBuilder.append('}').toString();
+            }
+            if (value instanceof List) {
+                StringBuilder stringBuilder = new StringBuilder("[");
+                for (Object item : (List<Object>) value) {
+                    stringBuilder.append(stringBuilder.length() == 1 ? "" : ",").append(toJson(item));
+                }
+                return stringBuilder.append(']').toString();
+            }
+            return value.toString();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ *    Copyright 2019 MetaRing s.r.l.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.metaring.mock.jdbc.mysql;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+
+import com.metaring.java.process.fork.JavaProcessFork;
+
+class MySQLMockInstancePool {
+
+    static final class Instance {
+
+        final File rootFolder;
+
+        final int port;
+
+        final JavaProcessFork process;
+
+        private final String key;
+
+        private Instance(File rootFolder, int port, JavaProcessFork process, String key) {
+            this.rootFolder = rootFolder;
+            this.port = port;
+            this.process = process;
+            this.key = key;
+        }
+
+        private boolean matches(String key) {
+            return this.key.equals(key);
+        }
+    }
+
+    private static final long DEFAULT_CLAIM_TIMEOUT = 60000;
+
+    private static final LinkedBlockingDeque<Instance> SPARES = new LinkedBlockingDeque<>();
+
+    private static String binLocation;
+    private static Properties properties;
+    private static int targetSpares;
+    private static int maxInstances = Integer.MAX_VALUE;
+    private static int instances;
+    private static int starting;
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            Instance spare;
+            while ((spare = SPARES.pollFirst()) != null) {
+                MySQLMockManager.cleanup(spare.rootFolder);
+            }
+        }, "mysql-mock-spares-shutdown"));
+    }
+
+    static final synchronized void configure(String binLocation, Properties properties) {
+        int spares = MySQLMockPropertyEnum.SPARES.getInt(properties, -1);
+        int maxInstances = MySQLMockPropertyEnum.MAX_INSTANCES.getInt(properties, -1);
+        if (maxInstances > 0) {
+            MySQLMockInstancePool.maxInstances = maxInstances;
+        }
+        if (spares < 0 || binLocation == null || MySQLMockInstancePool.binLocation != null) {
+            return;
+        }
+        MySQLMockInstancePool.binLocation = binLocation;
+        MySQLMockInstancePool.properties = properties;
+        MySQLMockInstancePool.targetSpares = spares;
+        refill();
+    }
+
+    static final String key(String binLocation, Properties properties) {
+        return binLocation + "\n" + MySQLMockProfile.of(properties) + "\n" + MySQLMockDataTemplate.cacheFolder(properties).toAbsolutePath();
+    }
+
+    static final Instance claim(String key, boolean useSpare) throws SQLException {
+        Instance spare = useSpare ? SPARES.pollFirst() : null;
+        if (spare == null || !spare.matches(key)) {
+            if (spare != null) {
+                SPARES.offerFirst(spare);
+                spare = null;
+            }
+            if (!reserve()) {
+                if (!useSpare || !isStarting()) {
+                    throw new SQLException(String.format("Global cap of %d concurrent MySQL Mock instances reached.", maxInstances));
+                }
+                try {
+                    spare = SPARES.pollFirst(DEFAULT_CLAIM_TIMEOUT, TimeUnit.MILLISECONDS);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted while waiting for a spare MySQL Mock instance", e);
+                }
+                if (spare == null || !spare.matches(key)) {
+                    if (spare != null) {
+                        SPARES.offerFirst(spare);
+                    }
+                    throw new SQLException(String.format("Global cap of %d concurrent MySQL Mock instances reached.", maxInstances));
+                }
+            }
+        }
+        synchronized (MySQLMockInstancePool.class) {
+            refill();
+        }
+        return spare;
+    }
+
+    static final synchronized void released() {
+        instances--;
+        refill();
+    }
+
+    private static final synchronized boolean reserve() {
+        if (instances >= maxInstances) {
+            return false;
+        }
+        instances++;
+        return true;
+    }
+
+    private static final synchronized boolean isStarting() {
+        return starting > 0;
+    }
+
+    private static final void refill() {
+        while (binLocation != null && SPARES.size() + starting < targetSpares && reserve()) {
+            starting++;
+            String spareBinLocation = binLocation;
+            Properties spareProperties = properties;
+            MySQLMockProvisioning.EXECUTOR.execute(() -> start(spareBinLocation, spareProperties));
+        }
+    }
+
+    private static final void start(String binLocation, Properties properties) {
+        long start = System.nanoTime();
+        File rootFolder = null;
+        try {
+            rootFolder = Files.createTempDirectory("mysqlmock").toFile();
+            MySQLMockFiles.own(rootFolder.toPath());
+            int port = MySQLMockDataTemplate.freePort();
+            JavaProcessFork process = MySQLMockManager.createTempInstance(rootFolder, binLocation, port, properties, new MySQLMockProvisioning());
+            SPARES.offerLast(new Instance(rootFolder, port, process, key(binLocation, properties)));
+            System.err.println(String.format("MySQL Mock spare instance ready on port %d in %d ms.", port, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+            synchronized (MySQLMockInstancePool.class) {
+                starting--;
+            }
+        }
+        catch (Exception e) {
+            System.err.println(String.format("MySQL Mock could not start a spare instance: %s", e.getMessage()));
+            if (rootFolder != null) {
+                MySQLMockManager.cleanup(rootFolder);
+            }
+            synchronized (MySQLMockInstancePool.class) {
+                starting--;
+                instances--;
+            }
+        }
+    }
+}
@@ -0,0 +1,334 @@
+/**
+ *    Copyright 2019 MetaRing s.r.l.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.metaring.mock.jdbc.mysql;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+public final class MySQLMockIsolationScope implements AutoCloseable {
+
+    private static final ThreadLocal<Map<String, MySQLMockIsolationScope>> CURRENT_SCOPES = ThreadLocal.withInitial(HashMap::new);
+
+    private static final Set<String> IMPLICIT_COMMIT_COMMANDS = new HashSet<>(Arrays.asList("ALTER", "ANALYZE", "BEGIN", "CACHE", "CHANGE", "CHECK", "COMMIT", "CREATE", "DROP", "FLUSH", "GRANT", "INSTALL", "LOCK", "OPTIMIZE", "RENAME", "REPAIR", "RESET", "REVOKE", "START", "TRUNCATE", "UNINSTALL", "UNLOCK", "XA"));
+
+    private final String mockKey;
+    private final MySQLMockedDatabaseInfo mockedDatabaseInfo;
+    private final MySQLMockIsolationScope parent;
+    private final MySQLMockIsolationScope root;
+    private final Connection connection;
+    private final Savepoint savepoint;
+    private final List<MySQLMockStatementListener> statementListeners;
+    private final MySQLMockTenants leasedTenants;
+
+    private volatile String implicitCommit;
+    private boolean closed;
+
+    private MySQLMockIsolationScope(String mockKey, MySQLMockedDatabaseInfo mockedDatabaseInfo, MySQLMockIsolationScope parent, Connection connection, MySQLMockTenants leasedTenants) throws SQLException {
+        this.mockKey = mockKey;
+        this.mockedDatabaseInfo = mockedDatabaseInfo;
+        this.parent = parent;
+        this.root = parent == null ? this : parent.root;
+        this.connection = connection;
+        this.leasedTenants = leasedTenants;
+        this.statementListeners = mockedDatabaseInfo.statementProfiler == null ? Collections.singletonList(this.root::executing) : Arrays.asList(this.root::executing, mockedDatabaseInfo.statementProfiler);
+        if (parent == null) {
+            connection.setAutoCommit(false);
+        }
+        this.savepoint = connection.setSavepoint();
+    }
+
+    static final MySQLMockIsolationScope begin(String mockKey, MySQLMockedDatabaseInfo mockedDatabaseInfo, Properties cleanProperties, MySQLMockTenants leasedTenants) throws SQLException {
+        Map<String, MySQLMockIsolationScope> currentScopes = CURRENT_SCOPES.get();
+        MySQLMockIsolationScope parent = currentScopes.get(mockKey);
+        MySQLMockIsolationScope isolationScope;
+        if (parent != null) {
+            isolationScope = new MySQLMockIsolationScope(mockKey, mockedDatabaseInfo, parent, parent.connection, null);
+        }
+        else {
+            Connection connection = mockedDatabaseInfo.connect(cleanProperties);
+            try {
+                isolationScope = new MySQLMockIsolationScope(mockKey, mockedDatabaseInfo, null, connection, leasedTenants);
+            }
+            catch (SQLException | RuntimeException e) {
+                connection.close();
+                throw e;
+            }
+        }
+        currentScopes.put(mockKey, isolationScope);
+        return isolationScope;
+    }
+
+    static final boolean isActive() {
+        return !CURRENT_SCOPES.get().isEmpty();
+    }
+
+    static final MySQLMockIsolationScope current(String mockKey) {
+        return CURRENT_SCOPES.get().get(mockKey);
+    }
+
+    Connection connection() {
+        return (Connection) Proxy.newProxyInstance(MySQLMockIsolationScope.class.getClassLoader(), new Class<?>[] { Connection.class, MySQLMockConnectionInterceptor.MySQLMockConnection.class }, new IsolatedConnection());
+    }
+
+    public boolean hasImplicitCommit() {
+        return root.implicitCommit != null;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (closed) {
+            return;
+        }
+        Map<String, MySQLMockIsolationScope> currentScopes = CURRENT_SCOPES.get();
+        MySQLMockIsolationScope current = currentScopes.get(mockKey);
+        while (current != null && current != this && current.root == root) {
+            current.close();
+            current = currentScopes.get(mockKey);
+        }
+        closed = true;
+        if (parent == null) {
+            currentScopes.remove(mockKey);
+            if (currentScopes.isEmpty()) {
+                CURRENT_SCOPES.remove();
+            }
+        }
+        else {
+            currentScopes.put(mockKey, parent);
+        }
+        try {
+            if (root.implicitCommit == null) {
+                try {
+                    connection.rollback(savepoint);
+                    if (parent != null) {
+                        connection.releaseSavepoint(savepoint);
+                    }
+                }
+                catch (SQLException e) {
+                    root.implicitCommit = "savepoint lost (" + e.getMessage() + ")";
+                }
+            }
+            if (root.implicitCommit != null) {
+                connection.rollback();
+                System.err.println(String.format("MySQL Mock isolation scope of '%s' falling back to a full reset after an implicit commit: %s", mockedDatabaseInfo.dbName, root.implicitCommit));
+                MySQLMockUtilities.resetDatabase(connection, mockedDatabaseInfo);
+                connection.commit();
+            }
+        }
+        finally {
+            if (parent == null) {
+                try {
+                    connection.rollback();
+                }
+                finally {
+                    try {
+                        connection.close();
+                    }
+                    finally {
+                        if (leasedTenants != null) {
+                            leasedTenants.release();
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void executing(String sql) {
+        if (implicitCommit == null && causesImplicitCommit(sql)) {
+            implicitCommit = sql;
+        }
+    }
+
+    static final boolean causesImplicitCommit(String sql) {
+        for (String statement : MySQLMockSql.split(sql)) {
+            List<String> tokens = MySQLMockSql.tokens(statement, 4);
+            if (tokens.isEmpty()) {
+                continue;
+            }
+            String command = tokens.get(0).toUpperCase();
+            String argument = tokens.size() > 1 ? tokens.get(1).toUpperCase() : "";
+            if (IMPLICIT_COMMIT_COMMANDS.contains(command)) {
+                if ((command.equals("CREATE") || command.equals("DROP")) && argument.equals("TEMPORARY")) {
+                    continue;
+                }
+                return true;
+            }
+            if (command.equals("ROLLBACK") && !argument.equals("TO") && !(argument.equals("WORK") && tokens.size() > 2 && tokens.get(2).equalsIgnoreCase("TO"))) {
+                return true;
+            }
+            if (command.equals("LOAD") && argument.equals("INDEX")) {
+                return true;
+            }
+            if (command.equals("SET") && (argument.equals("AUTOCOMMIT") || argument.equals("@@AUTOCOMMIT") || argument.equals("@@SESSION.AUTOCOMMIT") || argument.equals("PASSWORD"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private class IsolatedConnection implements InvocationHandler {
+
+        private final List<Statement> statements = new ArrayList<>();
+        private final List<MySQLMockStatementListener> connectionListeners = new ArrayList<>();
+        private boolean autoCommit = true;
+        private Savepoint transaction;
+        private boolean closed;
+
+        private IsolatedConnection() {
+            connectionListeners.add(this::beginTransaction);
+            connectionListeners.addAll(statementListeners);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    close();
+                    return null;
+                case "isClosed":
+                    return closed || MySQLMockIsolationScope.this.closed;
+                case "getMockedDatabaseInfo":
+                    return mockedDatabaseInfo;
+                case "getPhysicalConnection":
+                    return null;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Isolated " + connection;
+                case "unwrap":
+                    if (((Class<?>) args[0]).isInstance(proxy)) {
+                        return proxy;
+                    }
+                    break;
+                case "isWrapperFor":
+                    if (((Class<?>) args[0]).isInstance(proxy)) {
+                        return true;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            if (closed || MySQLMockIsolationScope.this.closed) {
+                throw new SQLException("Connection is closed.");
+            }
+            switch (method.getName()) {
+                case "getAutoCommit":
+                    return autoCommit;
+                case "setAutoCommit":
+                    if (autoCommit != (Boolean) args[0]) {
+                        autoCommit = (Boolean) args[0];
+                        if (autoCommit) {
+                            endTransaction();
+                        }
+                        else {
+                            transaction = connection.setSavepoint();
+                        }
+                    }
+                    return null;
+                case "commit":
+                    endTransaction();
+                    return null;
+                case "rollback":
+                    if (args == null || args.length == 0) {
+                        if (transaction != null) {
+                            connection.rollback(transaction);
+                            endTransaction();
+                        }
+                        return null;
+                    }
+                    break;
+                case "abort":
+                    close();
+                    return null;
+                default:
+                    break;
+            }
+            Object result;
+            try {
+                result = method.invoke(connection, args);
+            }
+            catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (result instanceof Statement && Statement.class.isAssignableFrom(method.getReturnType())) {
+                statements.add((Statement) result);
+                String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+                return MySQLMockConnectionInterceptor.intercept((Statement) result, method.getReturnType(), (Connection) proxy, sql, connectionListeners);
+            }
+            return result;
+        }
+
+        private void beginTransaction(String sql) {
+            if (autoCommit || transaction != null) {
+                return;
+            }
+            try {
+                transaction = connection.setSavepoint();
+            }
+            catch (SQLException e) {
+                if (root.implicitCommit == null) {
+                    root.implicitCommit = "savepoint lost (" + e.getMessage() + ")";
+                }
+            }
+        }
+
+        private void endTransaction() {
+            if (transaction == null) {
+                return;
+            }
+            Savepoint ended = transaction;
+            transaction = null;
+            try {
+                connection.releaseSavepoint(ended);
+            }
+            catch (SQLException e) {
+            }
+        }
+
+        private void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (Statement statement : statements) {
+                try {
+                    statement.close();
+                }
+                catch (SQLException e) {
+                }
+            }
+            statements.clear();
+        }
+    }
+}
@@ -20,15 +20,22 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
 import com.metaring.framework.util.StringUtil;
 import com.metaring.java.process.fork.JavaChildProcess;
@@ -36,10 +43,19 @@ import com.metaring.java.process.fork.JavaProcessFork;
 
 class MySQLMockManager {
 
+    private static final long STOP_TIMEOUT = 30000;
+    private static final int MAX_SOCKET_PATH_BYTES = 107;
+
+    private static final String DEFINER = "DEFINER=";
+    private static final Pattern DEFINER_PATTERN = Pattern.compile("DEFINER=[a-zA-Z0-9._%-`]+@[`a-zA-Z0-9.-_%]+");
+    private static final String DEFINER_REPLACEMENT = "DEFINER=`root`@`localhost`";
+
     private static String LOCAL_MYSQL_BIN_LOCATION;
 
     static MySQLMockedDatabaseInfo mock(Properties properties) throws SQLException {
 
+        long start = System.nanoTime();
+
         MySQLMockedDatabaseInfo mockedDatabaseInfo = new MySQLMockedDatabaseInfo(properties);
 
         String dbName = properties.getProperty(MySQLMockPropertyEnum.NAME.getPropertyName());
@@ -48,6 +64,18 @@ class MySQLMockManager {
             throw new SQLException(String.format("Missing mandatory configuration parameter '%s'.", MySQLMockPropertyEnum.NAME.getPropertyName()));
         }
 
+        MySQLMockBackend backend = MySQLMockBackend.of(properties);
+
+        backend.check(properties);
+
+        MySQLMockTransport transport = MySQLMockTransport.of(properties);
+
+        transport.check();
+
+        MySQLMockRecordingMode recordingMode = MySQLMockRecordingMode.of(properties);
+
+        recordingMode.check(properties);
+
         int mockPort = -1;
         try {
             mockPort = Integer.parseInt(properties.get(MySQLMockPropertyEnum.MOCK_PORT.getPropertyName()).toString());
@@ -55,9 +83,15 @@ class MySQLMockManager {
         catch (Exception e) {
         }
 
-        if (mockPort == -1) {
+        if (transport == MySQLMockTransport.SOCKET) {
+            mockPort = -1;
+        }
+        else if (mockPort == -1 && backend == MySQLMockBackend.MYSQLD) {
             throw new SQLException(String.format("Missing mandatory configuration parameter '%s'.", MySQLMockPropertyEnum.MOCK_PORT.getPropertyName()));
         }
+        else if (mockPort == 0 && backend == MySQLMockBackend.MYSQLD && (MySQLMockPropertyEnum.DAEMON.getBoolean(properties) || recordingMode != MySQLMockRecordingMode.OFF)) {
+            throw new SQLException(String.format("A '%s' of 0 picks a free port and is only supported by temporary mysqld instances.", MySQLMockPropertyEnum.MOCK_PORT.getPropertyName()));
+        }
 
         int originalPort = -1;
         try {
@@ -66,10 +100,12 @@ class MySQLMockManager {
         catch (Exception e) {
         }
 
-        if (mockPort == originalPort) {
+        if (mockPort != -1 && mockPort == originalPort) {
             throw new SQLException(String.format("Mock port %d cannot be the same as the original port.", mockPort));
         }
 
+        MySQLMockMetrics.Timer binaryChecks = mockedDatabaseInfo.metrics.begin(MySQLMockPhase.BINARY_CHECKS);
+
         String localMySqlBinLocation = properties.getProperty(MySQLMockPropertyEnum.BIN_LOCATION.getPropertyName());
 
         if (StringUtil.isNullOrEmpty(localMySqlBinLocation)) {
@@ -80,28 +116,17 @@ class MySQLMockManager {
             throw new SQLException(String.format("Missing mandatory configuration parameter '%s'.", MySQLMockPropertyEnum.BIN_LOCATION.getPropertyName()));
         }
 
-        String binLocation = localMySqlBinLocation.replace("\\", "/");
+        String binLocation = binLocation(localMySqlBinLocation);
 
-        if (binLocation.startsWith("\"")) {
-            binLocation = binLocation.substring(1);
-        }
-        if (binLocation.endsWith("\"")) {
-            binLocation = binLocation.substring(0, binLocation.length() - 1);
-        }
-
-        if (!binLocation.endsWith("/")) {
-            binLocation += "/";
-        }
-
-        if (!new File(binLocation + "mysqldump").exists() && !new File(binLocation + "mysqldump.exe").exists() && !new File(binLocation + "mysqldump.sh").exists()) {
+        if (!MySQLMockPropertyEnum.OFFLINE.getBoolean(properties) && MySQLMockDumper.of(properties) == MySQLMockDumper.MYSQLDUMP && !new File(binLocation + "mysqldump").exists() && !new File(binLocation + "mysqldump.exe").exists() && !new File(binLocation + "mysqldump.sh").exists()) {
             throw new RuntimeException("Missing mysqldump in " + localMySqlBinLocation);
         }
 
-        if (!new File(binLocation + "mysql").exists() && !new File(binLocation + "mysql.exe").exists() && !new File(binLocation + "mysql.sh").exists()) {
+        if (backend == MySQLMockBackend.MYSQLD && !new File(binLocation + "mysql").exists() && !new File(binLocation + "mysql.exe").exists() && !new File(binLocation + "mysql.sh").exists()) {
             throw new RuntimeException("Missing mysql in " + localMySqlBinLocation);
         }
 
-        if (!new File(binLocation + "mysqld").exists() && !new File(binLocation + "mysqld.exe").exists() && !new File(binLocation + "mysqld.sh").exists()) {
+        if (backend == MySQLMockBackend.MYSQLD && !new File(binLocation + "mysqld").exists() && !new File(binLocation + "mysqld.exe").exists() && !new File(binLocation + "mysqld.sh").exists()) {
             String linux = "";
             if (!JavaChildProcess.IS_WINDOWS) {
                 linux = "\n(In Linux distros you can try to solve with command:\n\nsudo ln -s /usr/sbin/mysqld /usr/bin/mysqld\n\n)";
@@ -109,7 +134,7 @@ class MySQLMockManager {
             throw new RuntimeException("Missing mysqld in " + localMySqlBinLocation + linux);
         }
 
-        if (!new File(binLocation + "mysql_upgrade").exists() && !new File(binLocation + "mysql_upgrade.exe").exists() && !new File(binLocation + "mysql_upgrade.sh").exists()) {
+        if (backend == MySQLMockBackend.MYSQLD && !new File(binLocation + "mysql_upgrade").exists() && !new File(binLocation + "mysql_upgrade.exe").exists() && !new File(binLocation + "mysql_upgrade.sh").exists()) {
             throw new RuntimeException("Missing mysql_upgrade in " + localMySqlBinLocation);
         }
 
@@ -117,48 +142,274 @@ class MySQLMockManager {
             LOCAL_MYSQL_BIN_LOCATION = localMySqlBinLocation;
         }
 
-        String orignalTemporaryFolder = null;
-        try {
-            orignalTemporaryFolder = properties.getProperty(MySQLMockPropertyEnum.TEMP_FOLDER.getPropertyName(), Files.createTempDirectory("mysqlmock").toFile().getAbsolutePath());
-        }
-        catch (IOException e) {
-            throw new RuntimeException(e);
+        binaryChecks.close();
+
+        int serverMockPort = mockPort;
+
+        MySQLMockServer server = MySQLMockServer.of(mockedDatabaseInfo, () -> {
+            if (backend == MySQLMockBackend.H2) {
+                mockEmbeddedInstance(mockedDatabaseInfo, binLocation, properties);
+            }
+            else if (MySQLMockPropertyEnum.DAEMON.getBoolean(properties)) {
+                MySQLMockDaemon.mock(mockedDatabaseInfo, binLocation, serverMockPort, properties);
+            }
+            else {
+                mockTempInstance(mockedDatabaseInfo, binLocation, serverMockPort, transport, properties);
+            }
+            return null;
+        });
+
+        if (server.serverDatabaseInfo != mockedDatabaseInfo) {
+            server.attach(mockedDatabaseInfo);
         }
 
-        String temporaryFolder = orignalTemporaryFolder.replace("\\", "/");
+        int tenants = MySQLMockPropertyEnum.TENANTS.getInt(properties, 0);
+        if (tenants > 0) {
+            if (isMultiDatabaseDump(mockedDatabaseInfo.dumpDBCommands)) {
+                throw new SQLException(String.format("Tenants of '%s' need a dump of that schema alone, they cannot be combined with '%s'.", dbName, MySQLMockPropertyEnum.DATABASES.getPropertyName()));
+            }
+            mockedDatabaseInfo.tenants = new MySQLMockTenants(mockedDatabaseInfo, tenants);
+        }
 
-        if (temporaryFolder.contains(" ")) {
-            throw new RuntimeException(String.format("Use of temporary directory path with spaces ('%s') is discouraged in MySQL Mock.\nPlease use the '%s' property or the '%s' Core property to specify an empty temporary path without spaces.", orignalTemporaryFolder, MySQLMockPropertyEnum.TEMP_FOLDER.getPropertyName(), MySQLMockPropertyEnum.CFG_TEMP_FOLDER));
+        if (recordingMode == MySQLMockRecordingMode.RECORD) {
+            mockedDatabaseInfo.recorder = MySQLMockRecorder.of(mockedDatabaseInfo);
         }
 
-        if (!temporaryFolder.endsWith("/")) {
-            temporaryFolder += "/";
+        MySQLMockMetrics.register(mockedDatabaseInfo, System.nanoTime() - start);
+
+        System.err.println(String.format("MySQL Mock of '%s' started at %s in %d ms.", dbName, mockedDatabaseInfo.mockedUrl, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+
+        return mockedDatabaseInfo;
+    }
+
+    private static final void mockTempInstance(MySQLMockedDatabaseInfo mockedDatabaseInfo, String binLocation, int mockPort, MySQLMockTransport transport, Properties properties) throws SQLException {
+
+        MySQLMockMetrics.Timer tempFolder = mockedDatabaseInfo.metrics.begin(MySQLMockPhase.TEMP_FOLDER);
+
+        MySQLMockInstancePool.configure(binLocation, properties);
+
+        boolean anyPort = transport == MySQLMockTransport.TCP && mockPort == 0;
+
+        MySQLMockInstancePool.Instance spare = MySQLMockInstancePool.claim(MySQLMockInstancePool.key(binLocation, properties), anyPort && StringUtil.isNullOrEmpty(properties.getProperty(MySQLMockPropertyEnum.TEMP_FOLDER.getPropertyName())));
+
+        File temporaryFile;
+
+        if (spare != null) {
+            temporaryFile = spare.rootFolder;
+            mockPort = spare.port;
         }
+        else {
+            String orignalTemporaryFolder = properties.getProperty(MySQLMockPropertyEnum.TEMP_FOLDER.getPropertyName());
+            boolean owned = orignalTemporaryFolder == null;
+            if (owned) {
+                try {
+                    Path temporaryPath = Files.createTempDirectory("mysqlmock");
+                    MySQLMockFiles.own(temporaryPath);
+                    orignalTemporaryFolder = temporaryPath.toFile().getAbsolutePath();
+                }
+                catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
 
-        File temporaryFile = new File(temporaryFolder);
+            String temporaryFolder = orignalTemporaryFolder.replace("\\", "/");
 
-        if (temporaryFile.exists()) {
-            if (!temporaryFile.isDirectory()) {
-                throw new RuntimeException(String.format("Temporary path %s does not represent a directory.", orignalTemporaryFolder));
+            if (temporaryFolder.contains(" ")) {
+                throw new RuntimeException(String.format("Use of temporary directory path with spaces ('%s') is discouraged in MySQL Mock.\nPlease use the '%s' property or the '%s' Core property to specify an empty temporary path without spaces.", orignalTemporaryFolder, MySQLMockPropertyEnum.TEMP_FOLDER.getPropertyName(), MySQLMockPropertyEnum.CFG_TEMP_FOLDER));
             }
-            if (temporaryFile.listFiles().length > 0) {
-                throw new RuntimeException(String.format("Temporary directory %s is not empty.", orignalTemporaryFolder));
+
+            if (!temporaryFolder.endsWith("/")) {
+                temporaryFolder += "/";
+            }
+
+            temporaryFile = new File(temporaryFolder);
+
+            if (!owned && temporaryFile.exists()) {
+                if (!temporaryFile.isDirectory()) {
+                    throw new RuntimeException(String.format("Temporary path %s does not represent a directory.", orignalTemporaryFolder));
+                }
+                if (temporaryFile.listFiles().length > 0) {
+                    throw new RuntimeException(String.format("Temporary directory %s is not empty.", orignalTemporaryFolder));
+                }
+            }
+            temporaryFile.mkdirs();
+
+            if (anyPort) {
+                try {
+                    mockPort = MySQLMockDataTemplate.freePort();
+                }
+                catch (IOException e) {
+                    throw new SQLException("Could not find a free port for MySQL Mock", e);
+                }
             }
         }
-        temporaryFile.mkdirs();
+
+        if (anyPort) {
+            properties.put(MySQLMockPropertyEnum.MOCK_PORT.getPropertyName(), mockPort);
+            mockedDatabaseInfo.mockedUrl = mockedDatabaseInfo.mockUrl();
+        }
+
+        tempFolder.close();
+
+        mockedDatabaseInfo.rootFolder = temporaryFile;
+
+        if (transport == MySQLMockTransport.SOCKET) {
+            mockedDatabaseInfo.mockedUrl = mockedDatabaseInfo.mockUrl();
+        }
+
+        mockedDatabaseInfo.binLocation = binLocation;
 
         mockedDatabaseInfo.dumpDBCommands = dumpDBCommands(temporaryFile, properties, binLocation);
 
-        mockedDatabaseInfo.dumpDB = dumpDB(mockedDatabaseInfo.dumpDBCommands, mockedDatabaseInfo.dbName);
+        provision(mockedDatabaseInfo, temporaryFile, binLocation, mockPort, properties, spare, null);
+    }
 
-        mockedDatabaseInfo.tempInstance = createTempInstance(temporaryFile, binLocation, mockPort);
+    private static final void mockEmbeddedInstance(MySQLMockedDatabaseInfo mockedDatabaseInfo, String binLocation, Properties properties) throws SQLException {
 
-        loadDB(temporaryFile, binLocation, mockPort, mockedDatabaseInfo.dumpDB, properties);
+        mockedDatabaseInfo.binLocation = binLocation;
 
-        return mockedDatabaseInfo;
+        mockedDatabaseInfo.dumpDBCommands = dumpDBCommands(null, properties, binLocation);
+
+        provision(mockedDatabaseInfo, null, binLocation, -1, properties, null, null);
+    }
+
+    static final String binLocation(String localMySqlBinLocation) {
+
+        String binLocation = localMySqlBinLocation.replace("\\", "/");
+
+        if (binLocation.startsWith("\"")) {
+            binLocation = binLocation.substring(1);
+        }
+        if (binLocation.endsWith("\"")) {
+            binLocation = binLocation.substring(0, binLocation.length() - 1);
+        }
+
+        if (!binLocation.endsWith("/")) {
+            binLocation += "/";
+        }
+
+        return binLocation;
+    }
+
+    static final List<String> databases(Properties properties) {
+        TreeSet<String> databases = new TreeSet<>();
+        databases.add(properties.getProperty(MySQLMockPropertyEnum.NAME.getPropertyName()));
+        String otherDatabases = MySQLMockPropertyEnum.DATABASES.getValue(properties);
+        if (otherDatabases != null) {
+            for (String database : otherDatabases.split(",")) {
+                if (!database.trim().isEmpty()) {
+                    databases.add(database.trim());
+                }
+            }
+        }
+        return new ArrayList<>(databases);
+    }
+
+    static final boolean isMultiDatabaseDump(String[] dumpDBCommands) {
+        return dumpDBCommands != null && Arrays.asList(dumpDBCommands).contains("--databases");
+    }
+
+    static final void loadDatabases(MySQLMockedDatabaseInfo serverDatabaseInfo, MySQLMockedDatabaseInfo mockedDatabaseInfo, List<String> databases) throws SQLException {
+
+        Properties properties = new Properties();
+        properties.putAll(mockedDatabaseInfo.mockProperties);
+        properties.put(MySQLMockPropertyEnum.DATABASES.getPropertyName(), String.join(",", databases));
+
+        mockedDatabaseInfo.dumpDBCommands = dumpDBCommands(serverDatabaseInfo.rootFolder, properties, serverDatabaseInfo.binLocation);
+
+        MySQLMockProvisioning provisioning = new MySQLMockProvisioning(mockedDatabaseInfo.metrics);
+
+        MySQLMockReferenceData referenceData = MySQLMockReferenceData.of(mockedDatabaseInfo.mockProperties);
+
+        try {
+            MySQLMockDumpCache.Entry dumpCacheEntry = dumpDB(mockedDatabaseInfo, MySQLMockDumpCache.resolve(properties), properties, provisioning);
+            mockedDatabaseInfo.dumpFingerprint = dumpCacheEntry.fingerprint;
+            mockedDatabaseInfo.dumpPath = dumpCacheEntry.dumpPath;
+            if (referenceData != null) {
+                referenceData = referenceData.only(databases).extract(properties, dumpCacheEntry, provisioning);
+            }
+        }
+        catch (IOException e) {
+            throw new SQLException(e);
+        }
+
+        int port = MySQLMockTransport.of(serverDatabaseInfo.mockProperties) == MySQLMockTransport.SOCKET ? -1 : MySQLMockPropertyEnum.MOCK_PORT.getInt(serverDatabaseInfo.mockProperties, -1);
+        loadDB(serverDatabaseInfo.rootFolder, serverDatabaseInfo.binLocation, port, mockedDatabaseInfo, mockedDatabaseInfo.dbName, provisioning);
+
+        if (referenceData != null) {
+            referenceData.load(mockedDatabaseInfo, provisioning);
+            mockedDatabaseInfo.referenceData = referenceData;
+        }
+    }
+
+    static final void provision(MySQLMockedDatabaseInfo mockedDatabaseInfo, File temporaryFile, String binLocation, int mockPort, Properties properties, MySQLMockInstancePool.Instance spare, MySQLMockDumpCache.Entry resolvedDumpCacheEntry) throws SQLException {
+
+        MySQLMockProvisioning provisioning = new MySQLMockProvisioning(mockedDatabaseInfo.metrics);
+
+        CompletableFuture<MySQLMockDumpCache.Entry> dumpStage = provisioning.stage(() -> dumpDB(mockedDatabaseInfo, resolvedDumpCacheEntry != null ? resolvedDumpCacheEntry : MySQLMockDumpCache.resolve(properties), properties, provisioning));
+
+        MySQLMockReferenceData referenceData = MySQLMockReferenceData.of(properties);
+
+        CompletableFuture<MySQLMockReferenceData> referenceDataStage = referenceData == null ? CompletableFuture.completedFuture(null) : dumpStage.thenApplyAsync(dumpCacheEntry -> {
+            try {
+                return referenceData.extract(properties, dumpCacheEntry, provisioning);
+            }
+            catch (IOException | SQLException e) {
+                throw new CompletionException(e);
+            }
+        }, MySQLMockProvisioning.EXECUTOR);
+
+        referenceDataStage.whenComplete((result, throwable) -> {
+            if (throwable != null) {
+                provisioning.abort();
+            }
+        });
+
+        CompletableFuture<JavaProcessFork> instanceStage = spare != null || mockedDatabaseInfo.backend == MySQLMockBackend.H2 ? CompletableFuture.completedFuture(spare == null ? null : spare.process) : provisioning.stage(() -> createTempInstance(temporaryFile, binLocation, mockPort, properties, provisioning));
+
+        CompletableFuture<Void> loadStage = dumpStage.thenAcceptBothAsync(instanceStage, (dumpCacheEntry, tempInstance) -> {
+            try {
+                provisioning.checkAborted();
+                mockedDatabaseInfo.dumpFingerprint = dumpCacheEntry.fingerprint;
+                mockedDatabaseInfo.dumpPath = dumpCacheEntry.dumpPath;
+                mockedDatabaseInfo.tempInstance = tempInstance;
+                loadDB(temporaryFile, binLocation, mockPort, mockedDatabaseInfo, mockedDatabaseInfo.dbName, provisioning);
+            }
+            catch (SQLException e) {
+                throw new CompletionException(e);
+            }
+        }, MySQLMockProvisioning.EXECUTOR);
+
+        CompletableFuture<Void> referenceDataLoadStage = loadStage.thenAcceptBothAsync(referenceDataStage, (loaded, extractedReferenceData) -> {
+            try {
+                provisioning.checkAborted();
+                if (extractedReferenceData != null) {
+                    extractedReferenceData.load(mockedDatabaseInfo, provisioning);
+                    mockedDatabaseInfo.referenceData = extractedReferenceData;
+                }
+            }
+            catch (SQLException e) {
+                throw new CompletionException(e);
+            }
+        }, MySQLMockProvisioning.EXECUTOR);
+
+        try {
+            MySQLMockProvisioning.await(referenceDataLoadStage);
+        }
+        catch (SQLException e) {
+            provisioning.abort();
+            MySQLMockProvisioning.settle(dumpStage, referenceDataStage, instanceStage, loadStage, referenceDataLoadStage);
+            if (temporaryFile != null) {
+                cleanup(temporaryFile);
+                if (!MySQLMockPropertyEnum.DAEMON.getBoolean(properties)) {
+                    MySQLMockInstancePool.released();
+                }
+            }
+            throw e;
+        }
     }
 
-    private static final String[] dumpDBCommands(File rootFolder, Properties properties, String binLocation) {
+    static final String[] dumpDBCommands(File rootFolder, Properties properties, String binLocation) {
 
         LinkedList<String> arguments = new LinkedList<>();
 
@@ -186,56 +437,115 @@ class MySQLMockManager {
         arguments.add("--routines=true");
         arguments.add("--events");
         arguments.add("-d");
-        arguments.add(properties.getProperty(MySQLMockPropertyEnum.NAME.getPropertyName()));
+
+        List<String> databases = databases(properties);
+        if (databases.size() > 1) {
+            arguments.add("--add-drop-database");
+            arguments.add("--databases");
+            arguments.addAll(databases);
+        }
+        else {
+            arguments.add(properties.getProperty(MySQLMockPropertyEnum.NAME.getPropertyName()));
+        }
 
         return arguments.toArray(new String[arguments.size()]);
     }
 
-    private static final String dumpDB(String[] dumpDBCommand, String dbName) {
+    static final String rewriteDefiner(String line) {
+        if (line.indexOf(DEFINER) == -1) {
+            return line;
+        }
+        return DEFINER_PATTERN.matcher(line).replaceAll(DEFINER_REPLACEMENT);
+    }
 
-        String output;
-        boolean error = false;
+    static final MySQLMockDumpCache.Entry dumpDB(MySQLMockedDatabaseInfo mockedDatabaseInfo, MySQLMockDumpCache.Entry dumpCacheEntry, Properties properties, MySQLMockProvisioning provisioning) throws IOException, SQLException {
 
-        try {
-            Process process = Runtime.getRuntime().exec(dumpDBCommand);
-            BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            String dump = null;
-            StringBuilder stringBuilder = new StringBuilder();
-            stringBuilder.append("DROP DATABASE IF EXISTS ").append(dbName).append(";\n\n");
-            stringBuilder.append("CREATE DATABASE ").append(dbName).append(";\n\n");
-            stringBuilder.append("USE ").append(dbName).append(";\n\n");
-            while ((dump = bufferedReader.readLine()) != null) {
-                stringBuilder.append(dump);
-                stringBuilder.append("\n");
-            }
-            StringBuilder errorBuilder = new StringBuilder();
-            if (process.getErrorStream().available() > 0) {
-                try (BufferedReader errorReader = new BufferedReader(new InputStreamReader(process.getErrorStream()));) {
-                    while ((dump = errorReader.readLine()) != null) {
-                        if (!dump.contains("Using a password")) {
-                            error = true;
-                            errorBuilder.append(dump);
-                            errorBuilder.append("\n");
+        if (dumpCacheEntry.isCached()) {
+            System.err.println(String.format("MySQL Mock using cached dump of '%s' (%s).", mockedDatabaseInfo.dbName, dumpCacheEntry.fingerprint));
+            return dumpCacheEntry;
+        }
+
+        return MySQLMockFiles.locked(dumpCacheEntry.lockPath(), () -> {
+            if (!dumpCacheEntry.isCached()) {
+                MySQLMockMetrics.Timer dump = provisioning.metrics.begin(MySQLMockPhase.DUMP);
+                long start = System.nanoTime();
+                try {
+                    try (Writer cacheWriter = Files.newBufferedWriter(dumpCacheEntry.tempPath(), StandardCharsets.UTF_8)) {
+                        if (MySQLMockDumper.of(properties) == MySQLMockDumper.MYSQLDUMP) {
+                            dumpDB(mockedDatabaseInfo.dumpDBCommands, mockedDatabaseInfo.dbName, provisioning, cacheWriter);
                         }
-                        if (!dump.contains("Using a password")) {
-                            System.err.println(dump);
+                        else {
+                            MySQLMockSchemaExtractor.extract(properties, provisioning, cacheWriter);
                         }
                     }
+                    dumpCacheEntry.commit();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted while dumping original database", e);
+                }
+                finally {
+                    dumpCacheEntry.discard();
                 }
+                dump.bytes(dumpCacheEntry.dumpPath.toFile().length()).close();
+                System.err.println(String.format("MySQL Mock dumped '%s' in %d ms.", mockedDatabaseInfo.dbName, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
             }
+            return dumpCacheEntry;
+        });
+    }
+
+    private static final void dumpDB(String[] dumpDBCommand, String dbName, MySQLMockProvisioning provisioning, Writer... writers) throws IOException, InterruptedException {
+
+        Process process = provisioning.track(Runtime.getRuntime().exec(dumpDBCommand));
+        MySQLMockProcessOutput errorOutput = MySQLMockProcessOutput.drain(process.getErrorStream(), "mysqldump-stderr");
+
+        try (BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            if (!isMultiDatabaseDump(dumpDBCommand)) {
+                write(writers, "DROP DATABASE IF EXISTS " + dbName + ";\n\n");
+                write(writers, "CREATE DATABASE " + dbName + ";\n\n");
+                write(writers, "USE " + dbName + ";\n\n");
+            }
+            long rewriteNanos = 0;
+            long rewritten = 0;
+            long statements = 0;
+            String dump = null;
+            while ((dump = bufferedReader.readLine()) != null) {
+                long rewriteStart = System.nanoTime();
+                String rewrittenDump = rewriteDefiner(dump);
+                rewriteNanos += System.nanoTime() - rewriteStart;
+                if (rewrittenDump != dump) {
+                    rewritten++;
+                }
+                if (dump.endsWith(";")) {
+                    statements++;
+                }
+                write(writers, rewrittenDump);
+                write(writers, "\n");
+            }
+            provisioning.metrics.record(MySQLMockPhase.DEFINER_REWRITE, rewriteNanos, 0, rewritten);
+            provisioning.metrics.record(MySQLMockPhase.DUMP, 0, 0, statements);
+        }
+        catch (IOException | RuntimeException e) {
             process.destroy();
-            output = error ? errorBuilder.toString() : stringBuilder.toString().replaceAll("DEFINER=[a-zA-Z0-9._%-`]+@[`a-zA-Z0-9.-_%]+", "DEFINER=`root`@`localhost`").trim();
+            throw e;
         }
-        catch (Exception e) {
-            throw new RuntimeException(e);
+
+        int exitValue = process.waitFor();
+        provisioning.untrack(process);
+        String errors = errorOutput.await();
+        if (exitValue != 0 || !errors.isEmpty()) {
+            System.err.println(errors);
+            throw new RuntimeException("Error from mysqldump procedure:\n\n" + errors);
         }
-        if (error) {
-            throw new RuntimeException("Error from mysqldump procedure:\n\n" + output);
+    }
+
+    private static final void write(Writer[] writers, String text) throws IOException {
+        for (Writer writer : writers) {
+            writer.write(text);
         }
-        return output;
     }
 
-    private static final JavaProcessFork createTempInstance(File rootFolder, String binLocation, int port) throws SQLException {
+    static final JavaProcessFork createTempInstance(File rootFolder, String binLocation, int port, Properties properties, MySQLMockProvisioning provisioning) throws SQLException {
 
         JavaProcessFork javaProcessFork = null;
         try {
@@ -245,153 +555,287 @@ class MySQLMockManager {
                 rootPathString += "/";
             }
 
-            Path dataPath = rootPath.resolve("data");
+            MySQLMockProfile profile = MySQLMockProfile.of(properties);
+
+            Path dataPath = profile.createDataFolder(rootPath);
             File dataFolder = dataPath.toFile();
-            dataFolder.mkdirs();
             String dataPathString = dataFolder.getAbsolutePath().replace("\\", "/");
             if (!dataPathString.endsWith("/")) {
                 dataPathString += "/";
             }
 
-            File socketFile = rootPath.resolve("mysql.sock").toFile();
-            String socketPathString = socketFile.getAbsolutePath().replace("\\", "/");
+            File socketFile = socketFile(rootFolder);
 
             File pidFile = rootPath.resolve("mysql.pid").toFile();
-            String pidPathString = pidFile.getAbsolutePath().replace("\\", "/");
-
-            pidFile.deleteOnExit();
-            socketFile.deleteOnExit();
-            dataFolder.deleteOnExit();
-            rootFolder.deleteOnExit();
-
-            try (ZipInputStream zIS = new ZipInputStream(MySQLMockManager.class.getClassLoader().getResourceAsStream("mysql.zip"))) {
-                ZipEntry zipEntry = null;
-                while ((zipEntry = zIS.getNextEntry()) != null) {
-                    Path zipEntryPath = dataPath.resolve(zipEntry.getName());
-                    if (zipEntry.isDirectory()) {
-                        zipEntryPath.toFile().mkdirs();
-                    }
-                    else {
-                        Files.copy(zIS, zipEntryPath);
-                    }
-                }
-            }
-
-            LinkedList<String> arguments = new LinkedList<>();
 
-            arguments.add(JavaChildProcess.QUOTES + binLocation + "mysqld" + JavaChildProcess.QUOTES);
+            boolean daemon = MySQLMockPropertyEnum.DAEMON.getBoolean(properties);
 
-            arguments.add("-h");
-            arguments.add(JavaChildProcess.QUOTES + dataPathString + JavaChildProcess.QUOTES);
+            if (!daemon) {
+                pidFile.deleteOnExit();
+                socketFile.deleteOnExit();
+                dataFolder.deleteOnExit();
+                rootFolder.deleteOnExit();
+            }
 
-            arguments.add("--socket=" + JavaChildProcess.QUOTES + socketPathString + JavaChildProcess.QUOTES);
+            MySQLMockDataTemplate.cloneInto(dataPath, binLocation, properties, provisioning.metrics);
 
-            arguments.add("--pid-file=" + JavaChildProcess.QUOTES + pidPathString + JavaChildProcess.QUOTES);
+            provisioning.checkAborted();
 
-            arguments.add("-P");
-            arguments.add("" + port);
+            MySQLMockReadinessProbe readinessProbe = new MySQLMockReadinessProbe(rootFolder, port, properties);
 
-            arguments.add("--explicit_defaults_for_timestamp");
+            LinkedList<String> arguments = mysqldArguments(binLocation, dataPathString, rootPathString, port, profile);
 
-            Process process = Runtime.getRuntime().exec(arguments.toArray(new String[arguments.size()]));
+            MySQLMockMetrics.Timer instanceStart = provisioning.metrics.begin(MySQLMockPhase.INSTANCE_START);
 
+            Process daemonProcess = null;
             try {
-                Thread.sleep(2500);
+                if (daemon) {
+                    daemonProcess = provisioning.track(new ProcessBuilder(arguments).directory(rootFolder).redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.appendTo(rootPath.resolve("mysqld.out").toFile())).start());
+                }
+                else {
+                    javaProcessFork = JavaProcessFork.fork(arguments.toArray(new String[arguments.size()]), rootFolder);
+                }
+
+                System.err.println(String.format("MySQL Mock instance ready in %d ms.", readinessProbe.await(daemonProcess, provisioning)));
+            }
+            catch (SQLException | RuntimeException e) {
+                if (daemonProcess != null) {
+                    stop(daemonProcess);
+                }
+                else if (javaProcessFork != null) {
+                    shutdown(rootFolder, provisioning.isAborted());
+                }
+                throw e;
             }
-            catch (Exception e) {
+            finally {
+                if (daemonProcess != null) {
+                    provisioning.untrack(daemonProcess);
+                }
             }
 
-            arguments.clear();
+            instanceStart.close();
+        }
+        catch (SQLException e) {
+            throw e;
+        }
+        catch (Exception e) {
+            throw new SQLException(e);
+        }
+        return javaProcessFork;
+    }
+
+    static final void stop(Process process) {
+        try {
+            process.destroy();
+            if (!process.waitFor(STOP_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                process.destroyForcibly().waitFor();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 
-            arguments.add(JavaChildProcess.QUOTES + binLocation + "mysql_upgrade" + JavaChildProcess.QUOTES);
+    static final LinkedList<String> mysqldArguments(String binLocation, String dataPathString, String rootPathString, int port, MySQLMockProfile profile) {
 
-            arguments.add("-u");
-            arguments.add("root");
+        LinkedList<String> arguments = new LinkedList<>();
+
+        arguments.add(JavaChildProcess.QUOTES + binLocation + "mysqld" + JavaChildProcess.QUOTES);
 
-            arguments.add("--socket=" + JavaChildProcess.QUOTES + socketPathString + JavaChildProcess.QUOTES);
+        arguments.add("-h");
+        arguments.add(JavaChildProcess.QUOTES + dataPathString + JavaChildProcess.QUOTES);
 
+        arguments.add("--socket=" + JavaChildProcess.QUOTES + socketFile(new File(rootPathString)).getAbsolutePath().replace("\\", "/") + JavaChildProcess.QUOTES);
+
+        arguments.add("--pid-file=" + JavaChildProcess.QUOTES + rootPathString + "mysql.pid" + JavaChildProcess.QUOTES);
+
+        arguments.add("--log-error=" + JavaChildProcess.QUOTES + rootPathString + "mysql.err" + JavaChildProcess.QUOTES);
+
+        if (port > 0) {
             arguments.add("-P");
             arguments.add("" + port);
+        }
+        else {
+            arguments.add("--skip-networking");
+        }
 
-            arguments.add("--force");
+        arguments.add("--explicit_defaults_for_timestamp");
 
-            Runtime.getRuntime().exec(arguments.toArray(new String[arguments.size()])).waitFor();
+        profile.addMysqldArguments(arguments);
 
-            try {
-                process.destroy();
-            }
-            catch (Exception e) {
-            }
+        return arguments;
+    }
 
-            socketFile.delete();
+    static final void loadTenant(MySQLMockedDatabaseInfo templateDatabaseInfo, MySQLMockedDatabaseInfo tenantDatabaseInfo) throws SQLException {
+        int port = MySQLMockTransport.of(templateDatabaseInfo.mockProperties) == MySQLMockTransport.SOCKET ? -1 : MySQLMockPropertyEnum.MOCK_PORT.getInt(templateDatabaseInfo.mockProperties, -1);
+        MySQLMockProvisioning provisioning = new MySQLMockProvisioning();
+        loadDB(templateDatabaseInfo.rootFolder, templateDatabaseInfo.binLocation, port, tenantDatabaseInfo, templateDatabaseInfo.dbName, provisioning);
+        if (templateDatabaseInfo.referenceData != null) {
+            MySQLMockReferenceData referenceData = templateDatabaseInfo.referenceData.renamed(templateDatabaseInfo.dbName, tenantDatabaseInfo.dbName);
+            referenceData.load(tenantDatabaseInfo, provisioning);
+            tenantDatabaseInfo.referenceData = referenceData;
+        }
+    }
+
+    private static final void loadDB(File rootFolder, String binLocation, int port, MySQLMockedDatabaseInfo mockedDatabaseInfo, String dumpDbName, MySQLMockProvisioning provisioning) throws SQLException {
+
+        if (mockedDatabaseInfo.backend == MySQLMockBackend.H2) {
+            MySQLMockEmbedded.load(mockedDatabaseInfo, provisioning);
+            return;
+        }
 
-            pidFile.delete();
+        Path rootPath = rootFolder.toPath();
 
-            arguments.clear();
+        File socketFile = socketFile(rootFolder);
+        String socketPathString = socketFile.getAbsolutePath().replace("\\", "/");
 
-            arguments.add(JavaChildProcess.QUOTES + binLocation + "mysqld" + JavaChildProcess.QUOTES);
+        List<String> arguments = new ArrayList<>();
 
-            arguments.add("-h");
-            arguments.add(JavaChildProcess.QUOTES + dataPathString + JavaChildProcess.QUOTES);
+        arguments.add(JavaChildProcess.QUOTES + binLocation + "mysql" + JavaChildProcess.QUOTES);
 
-            arguments.add("--socket=" + JavaChildProcess.QUOTES + socketPathString + JavaChildProcess.QUOTES);
+        arguments.add("-u");
+        arguments.add("root");
 
-            arguments.add("--pid-file=" + JavaChildProcess.QUOTES + pidPathString + JavaChildProcess.QUOTES);
+        arguments.add("--socket=" + JavaChildProcess.QUOTES + socketPathString + JavaChildProcess.QUOTES);
 
+        if (port > 0) {
             arguments.add("-P");
             arguments.add("" + port);
+        }
 
-            arguments.add("--explicit_defaults_for_timestamp");
+        arguments.add("--default-character-set=utf8");
 
-            javaProcessFork = JavaProcessFork.fork(arguments.toArray(new String[arguments.size()]), rootFolder);
+        long start = System.nanoTime();
 
-            if (!JavaChildProcess.IS_WINDOWS) {
-                try {
-                    System.err.println("UNIX Systems need a preventive wait before MySQL Mock procedure end. Sleeping 3.5 secs...");
-                    Thread.sleep(3500);
-                }
-                catch (Exception e) {
+        MySQLMockMetrics.Timer schemaLoad = provisioning.metrics.begin(MySQLMockPhase.SCHEMA_LOAD);
+
+        boolean renamed = !dumpDbName.equals(mockedDatabaseInfo.dbName);
+
+        try {
+            ProcessBuilder processBuilder = new ProcessBuilder(arguments.toArray(new String[arguments.size()]));
+            processBuilder.redirectErrorStream(true);
+            if (!renamed) {
+                processBuilder.redirectInput(mockedDatabaseInfo.dumpPath.toFile());
+            }
+            Process process = provisioning.track(processBuilder.start());
+            MySQLMockProcessOutput output = MySQLMockProcessOutput.drain(process.getInputStream(), "mysql-output");
+            if (renamed) {
+                try (BufferedReader bufferedReader = Files.newBufferedReader(mockedDatabaseInfo.dumpPath, StandardCharsets.UTF_8); Writer writer = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8)) {
+                    String dropDatabase = "DROP DATABASE IF EXISTS " + dumpDbName + ";";
+                    String createDatabase = "CREATE DATABASE " + dumpDbName + ";";
+                    String useDatabase = "USE " + dumpDbName + ";";
+                    boolean header = true;
+                    String dump = null;
+                    while ((dump = bufferedReader.readLine()) != null) {
+                        if (header) {
+                            if (dump.equals(dropDatabase)) {
+                                dump = "DROP DATABASE IF EXISTS " + mockedDatabaseInfo.dbName + ";";
+                            }
+                            else if (dump.equals(createDatabase)) {
+                                dump = "CREATE DATABASE " + mockedDatabaseInfo.dbName + ";";
+                            }
+                            else if (dump.equals(useDatabase)) {
+                                dump = "USE " + mockedDatabaseInfo.dbName + ";";
+                                header = false;
+                            }
+                        }
+                        writer.write(dump);
+                        writer.write("\n");
+                    }
                 }
             }
+            int exitValue = process.waitFor();
+            provisioning.untrack(process);
+            String errors = output.await();
+            if (exitValue != 0) {
+                throw new SQLException("Error while loading dump into MySQL Mock:\n\n" + errors);
+            }
         }
-        catch (Exception e) {
+        catch (IOException e) {
             throw new SQLException(e);
         }
-        return javaProcessFork;
-    }
-
-    private static final void loadDB(File rootFolder, String binLocation, int port, String dumpDB, Properties properties) {
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while loading dump into MySQL Mock", e);
+        }
 
-        Path rootPath = rootFolder.toPath();
+        schemaLoad.bytes(mockedDatabaseInfo.dumpPath.toFile().length()).close();
 
-        Path sqlPath = rootPath.resolve("dump.sql");
+        System.err.println(String.format("MySQL Mock loaded '%s' in %d ms.", mockedDatabaseInfo.dbName, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+    }
 
+    static final void cleanup(File rootFolder) {
+        MySQLMockMetrics.unregister(rootFolder);
+        shutdown(rootFolder);
+        MySQLMockFiles.disown(rootFolder.toPath());
         try {
+            File socketFile = socketFile(rootFolder);
+            Files.deleteIfExists(socketFile.toPath());
+            Files.deleteIfExists(new File(socketFile.getPath() + ".lock").toPath());
+            MySQLMockProfile.deleteDataFolder(rootFolder.toPath());
+            MySQLMockFiles.delete(rootFolder.toPath());
+        }
+        catch (IOException e) {
+            System.err.println(String.format("MySQL Mock could not delete temporary directory %s: %s", rootFolder, e.getMessage()));
+        }
+    }
 
-            Files.write(sqlPath, dumpDB.getBytes());
-
-            File socketFile = rootPath.resolve("mysql.sock").toFile();
-            String socketPathString = socketFile.getAbsolutePath().replace("\\", "/");
-
-            List<String> arguments = new ArrayList<>();
-
-            arguments.add(JavaChildProcess.QUOTES + binLocation + "mysql" + JavaChildProcess.QUOTES);
-
-            arguments.add("-u");
-            arguments.add("root");
+    static final File socketFile(File rootFolder) {
+        File socketFile = new File(rootFolder.getAbsoluteFile(), "mysql.sock");
+        if (JavaChildProcess.IS_WINDOWS || socketFile.getPath().getBytes(StandardCharsets.UTF_8).length <= MAX_SOCKET_PATH_BYTES) {
+            return socketFile;
+        }
+        File shortSocketFile = new File(System.getProperty("java.io.tmpdir"), "mysqlmock-" + MySQLMockFiles.sha256(socketFile.getPath()).substring(0, 16) + ".sock").getAbsoluteFile();
+        if (shortSocketFile.getPath().getBytes(StandardCharsets.UTF_8).length > MAX_SOCKET_PATH_BYTES) {
+            throw new RuntimeException(String.format("MySQL Mock socket path %s exceeds the %d bytes allowed for unix sockets, point java.io.tmpdir to a shorter directory.", shortSocketFile, MAX_SOCKET_PATH_BYTES));
+        }
+        return shortSocketFile;
+    }
 
-            arguments.add("--socket=" + JavaChildProcess.QUOTES + socketPathString + JavaChildProcess.QUOTES);
+    static final boolean isAlive(String pid) {
+        if (pid.isEmpty()) {
+            return false;
+        }
+        try {
+            Process process = new ProcessBuilder(JavaChildProcess.IS_WINDOWS ? new String[] { "tasklist", "/FI", "PID eq " + pid, "/NH" } : new String[] { "kill", "-0", pid }).redirectErrorStream(true).start();
+            String output = MySQLMockProcessOutput.drain(process.getInputStream(), "mysql-mock-pid").await();
+            if (process.waitFor() != 0) {
+                return !JavaChildProcess.IS_WINDOWS && output.contains("not permitted");
+            }
+            return !JavaChildProcess.IS_WINDOWS || output.contains(pid);
+        }
+        catch (IOException e) {
+            return false;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
 
-            arguments.add("-P");
-            arguments.add("" + port);
+    static final void shutdown(File rootFolder) {
+        shutdown(rootFolder, false);
+    }
 
-            ProcessBuilder processBuilder = new ProcessBuilder(arguments.toArray(new String[arguments.size()]));
-            processBuilder.redirectInput(ProcessBuilder.Redirect.from(sqlPath.toFile()));
-            Process process = processBuilder.start();
-            process.waitFor();
+    private static final void shutdown(File rootFolder, boolean starting) {
+        File pidFile = new File(rootFolder, "mysql.pid");
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(STOP_TIMEOUT);
+        try {
+            while (starting && !pidFile.exists() && System.nanoTime() < deadline) {
+                Thread.sleep(50);
+            }
+            String pid = new String(Files.readAllBytes(pidFile.toPath()), StandardCharsets.UTF_8).trim();
+            Process kill = new ProcessBuilder(JavaChildProcess.IS_WINDOWS ? new String[] { "taskkill", "/F", "/PID", pid } : new String[] { "kill", pid }).redirectErrorStream(true).start();
+            MySQLMockProcessOutput.drain(kill.getInputStream(), "mysql-mock-kill");
+            kill.waitFor();
+            while (pidFile.exists() && System.nanoTime() < deadline) {
+                Thread.sleep(50);
+            }
         }
-        catch (Exception e) {
-            throw new RuntimeException(e);
+        catch (IOException e) {
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 }
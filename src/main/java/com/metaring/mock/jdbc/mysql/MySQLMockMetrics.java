@@ -0,0 +1,323 @@
+/**
+ *    Copyright 2019 MetaRing s.r.l.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.metaring.mock.jdbc.mysql;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.ObjectName;
+
+class MySQLMockMetrics implements MySQLMockMetricsMXBean {
+
+    final class Timer implements AutoCloseable {
+
+        private final MySQLMockPhase phase;
+        private final Object event = JFR_AVAILABLE ? MySQLMockPhaseEvent.start() : null;
+        private final long start = System.nanoTime();
+        private long bytes;
+        private long statements;
+
+        private Timer(MySQLMockPhase phase) {
+            this.phase = phase;
+        }
+
+        Timer bytes(long bytes) {
+            this.bytes += bytes;
+            return this;
+        }
+
+        Timer statements(long statements) {
+            this.statements += statements;
+            return this;
+        }
+
+        @Override
+        public void close() {
+            record(phase, System.nanoTime() - start, bytes, statements, event);
+        }
+    }
+
+    private static final String OBJECT_NAME_DOMAIN = MySQLMockMetrics.class.getPackage().getName();
+
+    private static final boolean JFR_AVAILABLE = MySQLMockPhaseEvent.isAvailable();
+
+    private static final List<MySQLMockMetrics> REGISTERED = new CopyOnWriteArrayList<>();
+
+    private static volatile Path summaryPath;
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            Path path = summaryPath;
+            if (path != null) {
+                writeSummary(path);
+            }
+        }, "mysql-mock-metrics-summary"));
+    }
+
+    private final String databaseName;
+    private final Map<MySQLMockPhase, LongAdder> phaseNanos = new ConcurrentHashMap<>();
+    private final Map<MySQLMockPhase, LongAdder> phaseBytes = new ConcurrentHashMap<>();
+    private final Map<MySQLMockPhase, LongAdder> phaseStatements = new ConcurrentHashMap<>();
+    private final LongAdder connectionsOpened = new LongAdder();
+    private volatile MySQLMockedDatabaseInfo mockedDatabaseInfo;
+    private volatile ObjectName objectName;
+    private volatile long provisioningNanos;
+    private volatile long readyAt;
+
+    MySQLMockMetrics(String databaseName) {
+        this.databaseName = databaseName;
+    }
+
+    Timer begin(MySQLMockPhase phase) {
+        return new Timer(phase);
+    }
+
+    void record(MySQLMockPhase phase, long nanos, long bytes, long statements) {
+        record(phase, nanos, bytes, statements, null);
+    }
+
+    private void record(MySQLMockPhase phase, long nanos, long bytes, long statements, Object event) {
+        phaseNanos.computeIfAbsent(phase, key -> new LongAdder()).add(nanos);
+        phaseBytes.computeIfAbsent(phase, key -> new LongAdder()).add(bytes);
+        phaseStatements.computeIfAbsent(phase, key -> new LongAdder()).add(statements);
+        if (JFR_AVAILABLE) {
+            MySQLMockPhaseEvent.commit(event, databaseName, phase.label(), nanos, bytes, statements);
+        }
+    }
+
+    void connected() {
+        connectionsOpened.increment();
+    }
+
+    static final void register(MySQLMockedDatabaseInfo mockedDatabaseInfo, long provisioningNanos) {
+        MySQLMockMetrics metrics = mockedDatabaseInfo.metrics;
+        metrics.mockedDatabaseInfo = mockedDatabaseInfo;
+        metrics.provisioningNanos = provisioningNanos;
+        metrics.readyAt = System.currentTimeMillis();
+        REGISTERED.add(metrics);
+        String metricsFile = MySQLMockPropertyEnum.METRICS_FILE.getValue(mockedDatabaseInfo.mockProperties);
+        if (metricsFile != null && summaryPath == null) {
+            summaryPath = Paths.get(metricsFile);
+        }
+        String mockKey = MySQLMockPropertyEnum.MOCK_KEY.getValue(mockedDatabaseInfo.mockProperties);
+        try {
+            ObjectName objectName = new ObjectName(OBJECT_NAME_DOMAIN + ":type=MockedDatabase,name=" + ObjectName.quote(mockKey != null ? mockKey : mockedDatabaseInfo.mockedUrl));
+            for (MySQLMockMetrics registered : REGISTERED) {
+                if (registered != metrics && objectName.equals(registered.objectName)) {
+                    unregister(registered);
+                }
+            }
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, objectName);
+            metrics.objectName = objectName;
+        }
+        catch (Exception e) {
+            System.err.println(String.format("MySQL Mock could not register metrics MBean of '%s': %s", metrics.databaseName, e.getMessage()));
+        }
+    }
+
+    static final void unregister(File rootFolder) {
+        File absoluteRootFolder = rootFolder.getAbsoluteFile();
+        for (MySQLMockMetrics metrics : REGISTERED) {
+            MySQLMockedDatabaseInfo mockedDatabaseInfo = metrics.mockedDatabaseInfo;
+            if (mockedDatabaseInfo != null && mockedDatabaseInfo.rootFolder != null && absoluteRootFolder.equals(mockedDatabaseInfo.rootFolder.getAbsoluteFile())) {
+                unregister(metrics);
+            }
+        }
+    }
+
+    private static final void unregister(MySQLMockMetrics metrics) {
+        REGISTERED.remove(metrics);
+        ObjectName objectName = metrics.objectName;
+        metrics.objectName = null;
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        }
+        catch (InstanceNotFoundException e) {
+        }
+        catch (Exception e) {
+            System.err.println(String.format("MySQL Mock could not unregister metrics MBean of '%s': %s", metrics.databaseName, e.getMessage()));
+        }
+    }
+
+    static final void writeSummary(Path path) {
+        StringBuilder stringBuilder = new StringBuilder("{\n  \"databases\": [");
+        String separator = "\n";
+        for (MySQLMockMetrics metrics : REGISTERED) {
+            stringBuilder.append(separator);
+            metrics.appendJson(stringBuilder);
+            separator = ",\n";
+        }
+        stringBuilder.append("\n  ]\n}\n");
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+                writer.write(stringBuilder.toString());
+            }
+        }
+        catch (IOException e) {
+            System.err.println(String.format("MySQL Mock could not write metrics summary to %s: %s", path, e.getMessage()));
+        }
+    }
+
+    private void appendJson(StringBuilder stringBuilder) {
+        stringBuilder.append("    {\n");
+        stringBuilder.append("      \"database\": ").append(json(databaseName)).append(",\n");
+        stringBuilder.append("      \"mockedUrl\": ").append(json(getMockedUrl())).append(",\n");
+        stringBuilder.append("      \"provisioningMillis\": ").append(getProvisioningMillis()).append(",\n");
+        stringBuilder.append("      \"connectionsOpened\": ").append(getConnectionsOpened()).append(",\n");
+        stringBuilder.append("      \"phases\": {");
+        String separator = "\n";
+        for (MySQLMockPhase phase : MySQLMockPhase.values()) {
+            if (!phaseNanos.containsKey(phase)) {
+                continue;
+            }
+            stringBuilder.append(separator).append("        ").append(json(phase.label())).append(": { ");
+            stringBuilder.append("\"millis\": ").append(TimeUnit.NANOSECONDS.toMillis(sum(phaseNanos, phase))).append(", ");
+            stringBuilder.append("\"bytes\": ").append(sum(phaseBytes, phase)).append(", ");
+            stringBuilder.append("\"statements\": ").append(sum(phaseStatements, phase)).append(" }");
+            separator = ",\n";
+        }
+        stringBuilder.append("\n      }\n    }");
+    }
+
+    @Override
+    public String getDatabaseName() {
+        return databaseName;
+    }
+
+    @Override
+    public String getMockedUrl() {
+        MySQLMockedDatabaseInfo mockedDatabaseInfo = this.mockedDatabaseInfo;
+        return mockedDatabaseInfo == null ? null : mockedDatabaseInfo.mockedUrl;
+    }
+
+    @Override
+    public long getPid() {
+        MySQLMockedDatabaseInfo mockedDatabaseInfo = this.mockedDatabaseInfo;
+        if (mockedDatabaseInfo == null || mockedDatabaseInfo.rootFolder == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(new String(Files.readAllBytes(new File(mockedDatabaseInfo.rootFolder, "mysql.pid").toPath()), StandardCharsets.UTF_8).trim());
+        }
+        catch (IOException | NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public long getUptimeMillis() {
+        return readyAt == 0 ? 0 : System.currentTimeMillis() - readyAt;
+    }
+
+    @Override
+    public long getProvisioningMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(provisioningNanos);
+    }
+
+    @Override
+    public Map<String, Long> getPhaseMillis() {
+        Map<String, Long> phaseMillis = new TreeMap<>();
+        for (Map.Entry<MySQLMockPhase, LongAdder> entry : phaseNanos.entrySet()) {
+            phaseMillis.put(entry.getKey().label(), TimeUnit.NANOSECONDS.toMillis(entry.getValue().sum()));
+        }
+        return phaseMillis;
+    }
+
+    @Override
+    public Map<String, Long> getPhaseBytes() {
+        return labelled(phaseBytes);
+    }
+
+    @Override
+    public Map<String, Long> getPhaseStatements() {
+        return labelled(phaseStatements);
+    }
+
+    @Override
+    public long getConnectionsOpened() {
+        return connectionsOpened.sum();
+    }
+
+    @Override
+    public int getPooledActiveConnections() {
+        MySQLMockConnectionPoolMetrics poolMetrics = poolMetrics();
+        return poolMetrics == null ? 0 : poolMetrics.getActive();
+    }
+
+    @Override
+    public int getPooledIdleConnections() {
+        MySQLMockConnectionPoolMetrics poolMetrics = poolMetrics();
+        return poolMetrics == null ? 0 : poolMetrics.getIdle();
+    }
+
+    private MySQLMockConnectionPoolMetrics poolMetrics() {
+        String mockedUrl = getMockedUrl();
+        return mockedUrl == null ? null : MySQLMockConnectionPool.allMetrics().get(mockedUrl);
+    }
+
+    private static final Map<String, Long> labelled(Map<MySQLMockPhase, LongAdder> values) {
+        Map<String, Long> labelled = new TreeMap<>();
+        for (Map.Entry<MySQLMockPhase, LongAdder> entry : values.entrySet()) {
+            labelled.put(entry.getKey().label(), entry.getValue().sum());
+        }
+        return labelled;
+    }
+
+    private static final long sum(Map<MySQLMockPhase, LongAdder> values, MySQLMockPhase phase) {
+        LongAdder value = values.get(phase);
+        return value == null ? 0 : value.sum();
+    }
+
+    private static final String json(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder stringBuilder = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                stringBuilder.append('\\').append(c);
+            }
+            else if (c < 0x20) {
+                stringBuilder.append(String.format("\\u%04x", (int) c));
+            }
+            else {
+                stringBuilder.append(c);
+            }
+        }
+        return stringBuilder.append('"').toString();
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ *    Copyright 2019 MetaRing s.r.l.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.metaring.mock.jdbc.mysql;
+
+enum MySQLMockPhase {
+
+    BINARY_CHECKS,
+
+    TEMP_FOLDER,
+
+    DUMP,
+
+    DEFINER_REWRITE,
+
+    ZIP_EXTRACTION,
+
+    BOOTSTRAP_START,
+
+    UPGRADE,
+
+    CLONE,
+
+    INSTANCE_START,
+
+    SCHEMA_LOAD,
+
+    SCHEMA_MIGRATION,
+
+    REFERENCE_DATA_EXTRACTION,
+
+    REFERENCE_DATA_LOAD;
+
+    String label() {
+        StringBuilder stringBuilder = new StringBuilder();
+        boolean upper = false;
+        for (char c : name().toLowerCase().toCharArray()) {
+            if (c == '_') {
+                upper = true;
+                continue;
+            }
+            stringBuilder.append(upper ? Character.toUpperCase(c) : c);
+            upper = false;
+        }
+        return stringBuilder.toString();
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ *    Copyright 2019 MetaRing s.r.l.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.metaring.mock.jdbc.mysql;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+
+class MySQLMockPhaseEvent {
+
+    private static final String JFR_PACKAGE = "jdk.jfr.";
+
+    private static final MySQLMockPhaseEvent INSTANCE = create();
+
+    private final Object eventFactory;
+    private final Method newEvent;
+    private final Method begin;
+    private final Method end;
+    private final Method shouldCommit;
+    private final Method set;
+    private final Method commit;
+
+    private MySQLMockPhaseEvent(Object eventFactory) throws ReflectiveOperationException {
+        Class<?> eventClass = Class.forName(JFR_PACKAGE + "Event");
+        this.eventFactory = eventFactory;
+        this.newEvent = eventFactory.getClass().getMethod("newEvent");
+        this.begin = eventClass.getMethod("begin");
+        this.end = eventClass.getMethod("end");
+        this.shouldCommit = eventClass.getMethod("shouldCommit");
+        this.set = eventClass.getMethod("set", int.class, Object.class);
+        this.commit = eventClass.getMethod("commit");
+    }
+
+    static final boolean isAvailable() {
+        return INSTANCE != null;
+    }
+
+    static final Object start() {
+        Object event = INSTANCE.newEvent();
+        if (event != null) {
+            INSTANCE.invoke(INSTANCE.begin, event);
+        }
+        return event;
+    }
+
+    static final void commit(Object event, String database, String phase, long elapsed, long bytes, long statements) {
+        Object phaseEvent = event == null ? INSTANCE.newEvent() : event;
+        if (phaseEvent == null) {
+            return;
+        }
+        INSTANCE.invoke(INSTANCE.end, phaseEvent);
+        if (!Boolean.TRUE.equals(INSTANCE.invoke(INSTANCE.shouldCommit, phaseEvent))) {
+            return;
+        }
+        INSTANCE.invoke(INSTANCE.set, phaseEvent, 0, database);
+        INSTANCE.invoke(INSTANCE.set, phaseEvent, 1, phase);
+        INSTANCE.invoke(INSTANCE.set, phaseEvent, 2, elapsed);
+        INSTANCE.invoke(INSTANCE.set, phaseEvent, 3, bytes);
+        INSTANCE.invoke(INSTANCE.set, phaseEvent, 4, statements);
+        INSTANCE.invoke(INSTANCE.commit, phaseEvent);
+    }
+
+    private Object newEvent() {
+        return invoke(newEvent, eventFactory);
+    }
+
+    private Object invoke(Method method, Object target, Object... arguments) {
+        try {
+            return method.invoke(target, arguments);
+        }
+        catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static final MySQLMockPhaseEvent create() {
+        try {
+            Class<?> annotationElementClass = Class.forName(JFR_PACKAGE + "AnnotationElement");
+            Class<?> valueDescriptorClass = Class.forName(JFR_PACKAGE + "ValueDescriptor");
+            Constructor<?> annotationElement = annotationElementClass.getConstructor(Class.class, Object.class);
+            Constructor<?> valueDescriptor = valueDescriptorClass.getConstructor(Class.class, String.class, List.class);
+            List<Object> eventAnnotations = Arrays.asList(
+                    annotationElement.newInstance(Class.forName(JFR_PACKAGE + "Name"), "com.metaring.mock.jdbc.mysql.ProvisioningPhase"),
+                    annotationElement.newInstance(Class.forName(JFR_PACKAGE + "Label"), "MySQL Mock Provisioning Phase"),
+                    annotationElement.newInstance(Class.forName(JFR_PACKAGE + "Category"), new String[] { "MySQL Mock" }),
+                    annotationElement.newInstance(Class.forName(JFR_PACKAGE + "StackTrace"), false));
+            List<Object> fields = Arrays.asList(
+                    valueDescriptor.newInstance(String.class, "database", Arrays.asList(annotationElement.newInstance(Class.forName(JFR_PACKAGE + "Label"), "Database"))),
+                    valueDescriptor.newInstance(String.class, "phase", Arrays.asList(annotationElement.newInstance(Class.forName(JFR_PACKAGE + "Label"), "Phase"))),
+                    valueDescriptor.newInstance(long.class, "elapsed", Arrays.asList(annotationElement.newInstance(Class.forName(JFR_PACKAGE + "Label"), "Elapsed"), annotationElement.newInstance(Class.forName(JFR_PACKAGE + "Timespan"), "NANOSECONDS"))),
+                    valueDescriptor.newInstance(long.class, "bytes", Arrays.asList(annotationElement.newInstance(Class.forName(JFR_PACKAGE + "Label"), "Bytes"), annotationElement.newInstance(Class.forName(JFR_PACKAGE + "DataAmount"), "BYTES"))),
+                    valueDescriptor.newInstance(long.class, "statements", Arrays.asList(annotationElement.newInstance(Class.forName(JFR_PACKAGE + "Label"), "Statements"))));
+            Object eventFactory = Class.forName(JFR_PACKAGE + "EventFactory").getMethod("create", List.class, List.class).invoke(null, eventAnnotations, fields);
+            return new MySQLMockPhaseEvent(eventFactory);
+        }
+        catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ *    Copyright 2019 MetaRing s.r.l.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.metaring.mock.jdbc.mysql;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+class MySQLMockProcessOutput implements Runnable {
+
+    private static final String PASSWORD_WARNING = "Using a password";
+
+    private final InputStream inputStream;
+    private final StringBuilder output = new StringBuilder();
+    private final Thread thread;
+
+    private MySQLMockProcessOutput(InputStream inputStream, String name) {
+        this.inputStream = inputStream;
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+    }
+
+    static final MySQLMockProcessOutput drain(InputStream inputStream, String name) {
+        MySQLMockProcessOutput processOutput = new MySQLMockProcessOutput(inputStream, name);
+        processOutput.thread.start();
+        return processOutput;
+    }
+
+    @Override
+    public void run() {
+        try (BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                if (!line.contains(PASSWORD_WARNING)) {
+                    synchronized (output) {
+                        output.append(line).append("\n");
+                    }
+                }
+            }
+        }
+        catch (IOException e) {
+        }
+    }
+
+    String await() throws InterruptedException {
+        thread.join();
+        synchronized (output) {
+            return output.toString().trim();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ *    Copyright 2019 MetaRing s.r.l.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.metaring.mock.jdbc.mysql;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import com.metaring.java.process.fork.JavaChildProcess;
+
+enum MySQLMockProfile {
+
+    DEFAULT,
+
+    EPHEMERAL;
+
+    private static final Path MEMORY_FOLDER = Paths.get("/dev/shm");
+
+    private static final List<String> EPHEMERAL_ARGUMENTS = Collections.unmodifiableList(Arrays.asList(
+        "--innodb_flush_log_at_trx_commit=0",
+        "--sync_binlog=0",
+        "--skip-log-bin",
+        "--innodb_doublewrite=0",
+        "--innodb_log_file_size=8M",
+        "--innodb_log_files_in_group=2",
+        "--performance_schema=OFF"));
+
+    static final MySQLMockProfile of(Properties properties) {
+        String profile = MySQLMockPropertyEnum.PROFILE.getValue(properties);
+        if (profile == null) {
+            return DEFAULT;
+        }
+        for (MySQLMockProfile mockProfile : values()) {
+            if (mockProfile.name().equalsIgnoreCase(profile)) {
+                return mockProfile;
+            }
+        }
+        throw new RuntimeException(String.format("Unknown MySQL Mock profile '%s', expected one of %s.", profile, Arrays.toString(values()).toLowerCase()));
+    }
+
+    void addMysqldArguments(List<String> arguments) {
+        if (this != EPHEMERAL) {
+            return;
+        }
+        arguments.addAll(EPHEMERAL_ARGUMENTS);
+        if (!JavaChildProcess.IS_WINDOWS) {
+            arguments.add("--innodb_flush_method=nosync");
+        }
+    }
+
+    Path createDataFolder(Path rootPath) throws IOException {
+        Path dataPath = rootPath.resolve("data");
+        if (this == EPHEMERAL && Files.isDirectory(MEMORY_FOLDER) && Files.isWritable(MEMORY_FOLDER)) {
+            Path memoryDataPath = Files.createTempDirectory(MEMORY_FOLDER, "mysqlmock");
+            try {
+                Files.createSymbolicLink(dataPath, memoryDataPath);
+                return memoryDataPath;
+            }
+            catch (IOException | UnsupportedOperationException e) {
+                Files.deleteIfExists(memoryDataPath);
+            }
+        }
+        Files.createDirectories(dataPath);
+        return dataPath;
+    }
+
+    static final void deleteDataFolder(Path rootPath) throws IOException {
+        Path dataPath = rootPath.resolve("data");
+        if (Files.isSymbolicLink(dataPath)) {
+            MySQLMockFiles.delete(dataPath.toRealPath());
+            Files.delete(dataPath);
+        }
+    }
+}
@@ -16,6 +16,8 @@
 
 package com.metaring.mock.jdbc.mysql;
 
+import java.util.Properties;
+
 import com.metaring.framework.util.StringUtil;
 
 enum MySQLMockPropertyEnum {
@@ -36,9 +38,67 @@ enum MySQLMockPropertyEnum {
 
     NAME("name"),
 
+    DATABASES("databases"),
+
+    REFERENCE_DATA("referenceData"),
+
     TEMP_FOLDER("tempFolder"),
 
-    MOCK_KEY("mockKey");
+    CACHE_FOLDER("cacheFolder"),
+
+    REFRESH_DUMP_CACHE("refreshDumpCache"),
+
+    OFFLINE("offline"),
+
+    DUMPER("dumper"),
+
+    DUMP_THREADS("dumpThreads"),
+
+    POOLED("pooled"),
+
+    POOL_SIZE("poolSize"),
+
+    POOL_TIMEOUT("poolTimeout"),
+
+    DIRTY_TRACKING("dirtyTracking"),
+
+    TENANTS("tenants"),
+
+    SPARES("spares"),
+
+    MAX_INSTANCES("maxInstances"),
+
+    PROFILE("profile"),
+
+    BACKEND("backend"),
+
+    RECORDING("recording"),
+
+    RECORDING_FILE("recordingFile"),
+
+    TRANSPORT("transport"),
+
+    DAEMON("daemon"),
+
+    DAEMON_IDLE_TIMEOUT("daemonIdleTimeout"),
+
+    METRICS_FILE("metricsFile"),
+
+    STATEMENT_PROFILING("statementProfiling"),
+
+    SLOW_STATEMENT_MILLIS("slowStatementMillis"),
+
+    STATEMENT_REPORT_FOLDER("statementReportFolder"),
+
+    MOCK_KEY("mockKey"),
+
+    SERVER_KEY("serverKey"),
+
+    READINESS_TIMEOUT("readinessTimeout"),
+
+    READINESS_BACKOFF("readinessBackoff"),
+
+    READINESS_MAX_BACKOFF("readinessMaxBackoff");
 
     private String propertyName;
 
@@ -50,6 +110,36 @@ enum MySQLMockPropertyEnum {
         return this.propertyName;
     }
 
+    String getValue(Properties properties) {
+        if (properties == null) {
+            return null;
+        }
+        Object value = properties.get(this.propertyName);
+        return StringUtil.isNullOrEmpty(value) ? null : value.toString().trim();
+    }
+
+    long getLong(Properties properties, long defaultValue) {
+        try {
+            return Long.parseLong(getValue(properties));
+        }
+        catch (Exception e) {
+            return defaultValue;
+        }
+    }
+
+    int getInt(Properties properties, int defaultValue) {
+        try {
+            return Integer.parseInt(getValue(properties));
+        }
+        catch (Exception e) {
+            return defaultValue;
+        }
+    }
+
+    boolean getBoolean(Properties properties) {
+        return Boolean.parseBoolean(getValue(properties));
+    }
+
     public static MySQLMockPropertyEnum getByPropertyName(String propertyName) {
         if (StringUtil.isNullOrEmpty(propertyName)) {
             return null;
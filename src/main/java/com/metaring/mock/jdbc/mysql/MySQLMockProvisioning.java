@@ -0,0 +1,138 @@
+/**
+ *    Copyright 2019 MetaRing s.r.l.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.metaring.mock.jdbc.mysql;
+
+import java.sql.SQLException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class MySQLMockProvisioning {
+
+    interface Stage<T> {
+        T run() throws Exception;
+    }
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "mysql-mock-provisioning-" + THREAD_COUNTER.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    final MySQLMockMetrics metrics;
+
+    private final AtomicBoolean aborted = new AtomicBoolean();
+    private final Set<Process> processes = ConcurrentHashMap.newKeySet();
+
+    MySQLMockProvisioning() {
+        this(new MySQLMockMetrics(null));
+    }
+
+    MySQLMockProvisioning(MySQLMockMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    <T> CompletableFuture<T> stage(Stage<T> stage) {
+        CompletableFuture<T> future = CompletableFuture.supplyAsync(() -> {
+            try {
+                checkAborted();
+                return stage.run();
+            }
+            catch (RuntimeException e) {
+                throw e;
+            }
+            catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, EXECUTOR);
+        future.whenComplete((result, throwable) -> {
+            if (throwable != null) {
+                abort();
+            }
+        });
+        return future;
+    }
+
+    Process track(Process process) {
+        processes.add(process);
+        if (aborted.get()) {
+            process.destroy();
+        }
+        return process;
+    }
+
+    void untrack(Process process) {
+        processes.remove(process);
+    }
+
+    void abort() {
+        if (aborted.compareAndSet(false, true)) {
+            for (Process process : processes) {
+                process.destroy();
+            }
+        }
+    }
+
+    boolean isAborted() {
+        return aborted.get();
+    }
+
+    void checkAborted() throws SQLException {
+        if (aborted.get()) {
+            throw new SQLException("MySQL Mock provisioning aborted by a failure in another stage.");
+        }
+    }
+
+    static final <T> T await(CompletableFuture<T> future) throws SQLException {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while provisioning MySQL Mock", e);
+        }
+        catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    static final void settle(CompletableFuture<?>... futures) {
+        try {
+            CompletableFuture.allOf(futures).join();
+        }
+        catch (Exception e) {
+        }
+    }
+
+    static final SQLException unwrap(Throwable throwable) {
+        while ((throwable instanceof CompletionException || throwable instanceof ExecutionException) && throwable.getCause() != null) {
+            throwable = throwable.getCause();
+        }
+        if (throwable instanceof SQLException) {
+            return (SQLException) throwable;
+        }
+        return new SQLException(throwable.getMessage(), throwable);
+    }
+}
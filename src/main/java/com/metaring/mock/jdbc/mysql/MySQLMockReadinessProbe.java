@@ -0,0 +1,206 @@
+/**
+ *    Copyright 2019 MetaRing s.r.l.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.metaring.mock.jdbc.mysql;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import com.metaring.java.process.fork.JavaChildProcess;
+
+class MySQLMockReadinessProbe {
+
+    private static final long DEFAULT_TIMEOUT = 60000;
+    private static final long DEFAULT_BACKOFF = 25;
+    private static final long DEFAULT_MAX_BACKOFF = 500;
+
+    private static final int HANDSHAKE_TIMEOUT = 1000;
+    private static final int ERROR_LOG_TAIL_LINES = 30;
+    private static final int MAX_ERROR_LOG_SCAN = 65536;
+
+    private static final Pattern ABORTING_PATTERN = Pattern.compile("\\[ERROR\\].*\\bAborting\\b");
+
+    private static final int PROTOCOL_VERSION_10 = 10;
+    private static final int ERROR_PACKET = 0xFF;
+
+    private final File pidFile;
+    private final File socketFile;
+    private final File errorLogFile;
+    private final int port;
+    private final long timeout;
+    private final long backoff;
+    private final long maxBackoff;
+
+    MySQLMockReadinessProbe(File rootFolder, int port, Properties properties) {
+        this.pidFile = new File(rootFolder, "mysql.pid");
+        this.socketFile = MySQLMockManager.socketFile(rootFolder);
+        this.errorLogFile = new File(rootFolder, "mysql.err");
+        this.port = port;
+        this.timeout = MySQLMockPropertyEnum.READINESS_TIMEOUT.getLong(properties, DEFAULT_TIMEOUT);
+        this.backoff = Math.max(1, MySQLMockPropertyEnum.READINESS_BACKOFF.getLong(properties, DEFAULT_BACKOFF));
+        this.maxBackoff = Math.max(this.backoff, MySQLMockPropertyEnum.READINESS_MAX_BACKOFF.getLong(properties, DEFAULT_MAX_BACKOFF));
+    }
+
+    long await(Process process, MySQLMockProvisioning provisioning) throws SQLException {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeout);
+        long wait = backoff;
+        String lastFailure = "server files not created yet";
+        long errorLogOffset = errorLogFile.length();
+        String pid = null;
+        while (true) {
+            if (provisioning != null) {
+                provisioning.checkAborted();
+            }
+            if (process != null && !process.isAlive()) {
+                throw failure(String.format("mysqld exited with code %d before accepting connections", process.exitValue()));
+            }
+            if (pid != null && !pidFile.exists()) {
+                throw failure(String.format("mysqld (pid %s) removed its pid file before accepting connections", pid));
+            }
+            if (pidFile.exists() && (JavaChildProcess.IS_WINDOWS || socketFile.exists())) {
+                try {
+                    handshake();
+                    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                }
+                catch (IOException e) {
+                    lastFailure = e.getMessage();
+                }
+            }
+            if (process == null) {
+                if (pid == null) {
+                    pid = pid();
+                }
+                if (pid != null && !MySQLMockManager.isAlive(pid)) {
+                    throw failure(String.format("mysqld (pid %s) exited before accepting connections", pid));
+                }
+                if (hasAborted(errorLogOffset)) {
+                    throw failure("mysqld aborted before accepting connections");
+                }
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw failure(String.format("mysqld did not accept connections on %s within %d ms (%s)", port > 0 ? "port " + port : "socket " + socketFile.getAbsolutePath(), timeout, lastFailure));
+            }
+            try {
+                Thread.sleep(Math.min(wait, Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining))));
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for MySQL Mock startup", e);
+            }
+            wait = Math.min(wait * 2, maxBackoff);
+        }
+    }
+
+    private final String pid() {
+        try {
+            String pid = new String(Files.readAllBytes(pidFile.toPath()), StandardCharsets.UTF_8).trim();
+            return pid.isEmpty() ? null : pid;
+        }
+        catch (IOException e) {
+            return null;
+        }
+    }
+
+    private final boolean hasAborted(long errorLogOffset) {
+        long length = errorLogFile.length();
+        if (length <= errorLogOffset) {
+            return false;
+        }
+        try (RandomAccessFile errorLog = new RandomAccessFile(errorLogFile, "r")) {
+            byte[] appended = new byte[(int) Math.min(length - errorLogOffset, MAX_ERROR_LOG_SCAN)];
+            errorLog.seek(length - appended.length);
+            errorLog.readFully(appended);
+            return ABORTING_PATTERN.matcher(new String(appended, StandardCharsets.UTF_8)).find();
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+
+    private final void handshake() throws IOException {
+        try (Socket socket = connect()) {
+            socket.setSoTimeout(HANDSHAKE_TIMEOUT);
+            DataInputStream inputStream = new DataInputStream(socket.getInputStream());
+            byte[] header = new byte[4];
+            inputStream.readFully(header);
+            int length = (header[0] & 0xFF) | ((header[1] & 0xFF) << 8) | ((header[2] & 0xFF) << 16);
+            if (length <= 0) {
+                throw new IOException("empty handshake packet");
+            }
+            byte[] payload = new byte[length];
+            inputStream.readFully(payload);
+            int first = payload[0] & 0xFF;
+            if (first == PROTOCOL_VERSION_10) {
+                return;
+            }
+            if (first == ERROR_PACKET && length > 3) {
+                throw new IOException(new String(payload, 3, length - 3, StandardCharsets.UTF_8));
+            }
+            throw new IOException(String.format("unexpected handshake packet 0x%02X", first));
+        }
+    }
+
+    private final Socket connect() throws IOException {
+        if (port <= 0) {
+            return MySQLMockTransport.connect(socketFile, HANDSHAKE_TIMEOUT);
+        }
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), HANDSHAKE_TIMEOUT);
+        }
+        catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        return socket;
+    }
+
+    private final SQLException failure(String message) {
+        StringBuilder stringBuilder = new StringBuilder(message);
+        String errorLog = errorLogTail();
+        if (errorLog != null) {
+            stringBuilder.append("\n\nmysqld error log (").append(errorLogFile.getAbsolutePath()).append("):\n\n").append(errorLog);
+        }
+        return new SQLException(stringBuilder.toString());
+    }
+
+    private final String errorLogTail() {
+        if (!errorLogFile.exists()) {
+            return null;
+        }
+        try {
+            List<String> lines = Files.readAllLines(errorLogFile.toPath(), StandardCharsets.UTF_8);
+            return String.join("\n", lines.subList(Math.max(0, lines.size() - ERROR_LOG_TAIL_LINES), lines.size()));
+        }
+        catch (IOException e) {
+            return null;
+        }
+    }
+}
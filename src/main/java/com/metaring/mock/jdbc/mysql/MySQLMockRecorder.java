@@ -0,0 +1,195 @@
+/**
+ *    Copyright 2019 MetaRing s.r.l.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.metaring.mock.jdbc.mysql;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+class MySQLMockRecorder {
+
+    private static final Map<Path, MySQLMockRecorder> RECORDERS = new ConcurrentHashMap<>();
+
+    private final MySQLMockRecording.Writer writer;
+    private final int targetPort;
+    private final ServerSocket serverSocket;
+
+    private MySQLMockRecorder(MySQLMockRecording.Writer writer, int targetPort) throws IOException {
+        this.writer = writer;
+        this.targetPort = targetPort;
+        this.serverSocket = new ServerSocket(0, 0, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::accept, "mysql-mock-recorder-" + serverSocket.getLocalPort());
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    static final MySQLMockRecorder of(MySQLMockedDatabaseInfo mockedDatabaseInfo) throws SQLException {
+        Path path = MySQLMockRecording.path(mockedDatabaseInfo.mockProperties);
+        int targetPort = MySQLMockPropertyEnum.MOCK_PORT.getInt(mockedDatabaseInfo.mockProperties, -1);
+        MySQLMockRecorder recorder;
+        try {
+            recorder = RECORDERS.computeIfAbsent(path, key -> {
+                try {
+                    return new MySQLMockRecorder(MySQLMockRecording.writer(key), targetPort);
+                }
+                catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+        catch (RuntimeException e) {
+            throw new SQLException(String.format("Could not start recording MySQL Mock traffic into '%s'", path), e.getCause() == null ? e : e.getCause());
+        }
+        if (recorder.targetPort != targetPort) {
+            throw new SQLException(String.format("MySQL Mock recording '%s' already captures port %d, not %d.", path, recorder.targetPort, targetPort));
+        }
+        System.err.println(String.format("MySQL Mock recording '%s' traffic into '%s'.", mockedDatabaseInfo.dbName, path));
+        return recorder;
+    }
+
+    Connection connect(String dbName, Properties cleanProperties) throws SQLException {
+        return Driver.MYSQL_ORIGINAL_DRIVER.connect(String.format("jdbc:mysql://localhost:%d/%s", serverSocket.getLocalPort(), dbName), MySQLMockWireProtocol.plainProperties(cleanProperties));
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket client = serverSocket.accept();
+                MySQLMockProvisioning.EXECUTOR.execute(() -> relay(client));
+            }
+            catch (IOException e) {
+                System.err.println(String.format("MySQL Mock recorder stopped accepting connections: %s", e.getMessage()));
+                return;
+            }
+        }
+    }
+
+    private void relay(Socket accepted) {
+        try (Socket client = accepted; Socket server = new Socket(InetAddress.getLoopbackAddress(), targetPort)) {
+            client.setTcpNoDelay(true);
+            server.setTcpNoDelay(true);
+            InputStream fromClient = new BufferedInputStream(client.getInputStream());
+            OutputStream toClient = new BufferedOutputStream(client.getOutputStream());
+            InputStream fromServer = new BufferedInputStream(server.getInputStream());
+            OutputStream toServer = new BufferedOutputStream(server.getOutputStream());
+
+            byte[] handshake = MySQLMockWireProtocol.readPacket(fromServer);
+            if (handshake == null) {
+                return;
+            }
+            MySQLMockWireProtocol.clearUnsupportedCapabilities(handshake);
+            writer.handshake(handshake);
+            write(toClient, handshake);
+            byte[] handshakeResponse = MySQLMockWireProtocol.readPacket(fromClient);
+            if (handshakeResponse == null) {
+                return;
+            }
+            write(toServer, handshakeResponse);
+            ByteBuffer handshakeResponseBuffer = ByteBuffer.wrap(handshakeResponse);
+            boolean deprecateEof = MySQLMockWireProtocol.deprecateEof(MySQLMockWireProtocol.handshakeCapabilities(handshake), handshakeResponseBuffer, MySQLMockWireProtocol.HEADER_LENGTH);
+            byte[] databasePrefix = MySQLMockRecording.databasePrefix(MySQLMockWireProtocol.database(handshakeResponseBuffer, MySQLMockWireProtocol.HEADER_LENGTH, MySQLMockWireProtocol.payloadLength(handshakeResponse)));
+            if (!authenticate(fromClient, toClient, fromServer, toServer)) {
+                return;
+            }
+
+            Map<Integer, byte[]> statements = new HashMap<>();
+            byte[] request;
+            while ((request = MySQLMockWireProtocol.readPacket(fromClient)) != null) {
+                write(toServer, request);
+                byte command = request[MySQLMockWireProtocol.HEADER_LENGTH];
+                if (command == MySQLMockWireProtocol.COM_QUIT) {
+                    return;
+                }
+                if (command == MySQLMockWireProtocol.COM_STMT_CLOSE) {
+                    statements.remove(MySQLMockWireProtocol.int32(ByteBuffer.wrap(request), MySQLMockWireProtocol.HEADER_LENGTH + 1));
+                    continue;
+                }
+                if (command == MySQLMockWireProtocol.COM_STMT_SEND_LONG_DATA) {
+                    continue;
+                }
+                ByteArrayOutputStream response = new ByteArrayOutputStream();
+                MySQLMockWireProtocol.readResponse(fromServer, toClient, response, command, deprecateEof);
+                toClient.flush();
+                byte[] responseBytes = response.toByteArray();
+                boolean ok = responseBytes[MySQLMockWireProtocol.HEADER_LENGTH] == 0;
+                byte[] key;
+                if (command == MySQLMockWireProtocol.COM_STMT_EXECUTE) {
+                    byte[] statementPrefix = statements.get(MySQLMockWireProtocol.int32(ByteBuffer.wrap(request), MySQLMockWireProtocol.HEADER_LENGTH + 1));
+                    if (statementPrefix == null) {
+                        continue;
+                    }
+                    key = MySQLMockRecording.key(statementPrefix, request, 5);
+                }
+                else {
+                    key = MySQLMockRecording.key(databasePrefix, request, 0);
+                }
+                writer.exchange(key, responseBytes);
+                if (command == MySQLMockWireProtocol.COM_STMT_PREPARE && ok) {
+                    statements.put(MySQLMockWireProtocol.int32(ByteBuffer.wrap(responseBytes), MySQLMockWireProtocol.HEADER_LENGTH + 1), MySQLMockRecording.statementPrefix(databasePrefix, ByteBuffer.wrap(request), MySQLMockWireProtocol.HEADER_LENGTH, MySQLMockWireProtocol.payloadLength(request)));
+                }
+                else if (command == MySQLMockWireProtocol.COM_INIT_DB && ok) {
+                    databasePrefix = MySQLMockRecording.databasePrefix(MySQLMockRecording.key(new byte[0], request, 1));
+                }
+            }
+        }
+        catch (IOException e) {
+            System.err.println(String.format("MySQL Mock recorder dropped a connection: %s", e.getMessage()));
+        }
+    }
+
+    private static final boolean authenticate(InputStream fromClient, OutputStream toClient, InputStream fromServer, OutputStream toServer) throws IOException {
+        while (true) {
+            byte[] packet = MySQLMockWireProtocol.relayPacket(fromServer, toClient, null);
+            toClient.flush();
+            int first = packet[MySQLMockWireProtocol.HEADER_LENGTH] & 0xFF;
+            if (first == 0x00) {
+                return true;
+            }
+            if (first == 0xFF) {
+                return false;
+            }
+            if (first == 0x01 && MySQLMockWireProtocol.payloadLength(packet) == 2 && packet[MySQLMockWireProtocol.HEADER_LENGTH + 1] == 3) {
+                continue;
+            }
+            byte[] clientPacket = MySQLMockWireProtocol.readPacket(fromClient);
+            if (clientPacket == null) {
+                return false;
+            }
+            write(toServer, clientPacket);
+        }
+    }
+
+    private static final void write(OutputStream outputStream, byte[] packet) throws IOException {
+        outputStream.write(packet);
+        outputStream.flush();
+    }
+}
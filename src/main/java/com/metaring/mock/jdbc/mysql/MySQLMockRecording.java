@@ -0,0 +1,275 @@
+/**
+ *    Copyright 2019 MetaRing s.r.l.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.metaring.mock.jdbc.mysql;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class MySQLMockRecording {
+
+    static final class Writer {
+
+        final Path path;
+        private final DataOutputStream outputStream;
+        private boolean handshakeWritten;
+
+        private Writer(Path path) throws IOException {
+            this.path = path;
+            Files.createDirectories(path.toAbsolutePath().getParent());
+            this.outputStream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)));
+            outputStream.writeLong(MAGIC);
+            outputStream.flush();
+        }
+
+        synchronized void handshake(byte[] packet) throws IOException {
+            if (handshakeWritten) {
+                return;
+            }
+            handshakeWritten = true;
+            outputStream.writeByte(HANDSHAKE_RECORD);
+            outputStream.writeInt(packet.length);
+            outputStream.write(packet);
+            outputStream.flush();
+        }
+
+        synchronized void exchange(byte[] key, byte[] response) throws IOException {
+            outputStream.writeByte(EXCHANGE_RECORD);
+            outputStream.writeInt(key.length);
+            outputStream.write(key);
+            outputStream.writeInt(response.length);
+            outputStream.write(response);
+            outputStream.flush();
+        }
+    }
+
+    static final class Exchange {
+
+        private final int[] offsets;
+        private final int[] lengths;
+        private final AtomicInteger next = new AtomicInteger();
+
+        private Exchange(List<int[]> responses) {
+            offsets = new int[responses.size()];
+            lengths = new int[responses.size()];
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = responses.get(i)[0];
+                lengths[i] = responses.get(i)[1];
+            }
+        }
+
+        private int nextIndex() {
+            int last = offsets.length - 1;
+            while (true) {
+                int current = next.get();
+                if (current >= last || next.compareAndSet(current, current + 1)) {
+                    return Math.min(current, last);
+                }
+            }
+        }
+    }
+
+    private static final long MAGIC = 0x4D594D4F434B5231L;
+    private static final byte HANDSHAKE_RECORD = 'H';
+    private static final byte EXCHANGE_RECORD = 'X';
+    private static final String RECORDINGS_FOLDER = "recordings";
+    private static final String RECORDING_EXTENSION = ".rec";
+    private static final int DIFF_CONTEXT = 24;
+
+    final Path path;
+    private final MappedByteBuffer buffer;
+    private final Map<ByteBuffer, Exchange> exchanges;
+    private final int handshakeOffset;
+    private final int handshakeLength;
+
+    private MySQLMockRecording(Path path, MappedByteBuffer buffer, Map<ByteBuffer, Exchange> exchanges, int handshakeOffset, int handshakeLength) {
+        this.path = path;
+        this.buffer = buffer;
+        this.exchanges = exchanges;
+        this.handshakeOffset = handshakeOffset;
+        this.handshakeLength = handshakeLength;
+    }
+
+    static final Path path(Properties properties) {
+        String recordingFile = MySQLMockPropertyEnum.RECORDING_FILE.getValue(properties);
+        if (recordingFile != null) {
+            return Paths.get(recordingFile).toAbsolutePath();
+        }
+        String identity = MySQLMockDumpCache.originalUrl(properties) + ":" + MySQLMockPropertyEnum.MOCK_PORT.getValue(properties);
+        return MySQLMockDataTemplate.cacheFolder(properties).resolve(RECORDINGS_FOLDER).resolve(MySQLMockFiles.sha256(identity).substring(0, 16) + RECORDING_EXTENSION).toAbsolutePath();
+    }
+
+    static final Writer writer(Path path) throws IOException {
+        return new Writer(path);
+    }
+
+    static final MySQLMockRecording open(Path path) throws SQLException {
+        if (!Files.isRegularFile(path)) {
+            throw new SQLException(String.format("MySQL Mock recording '%s' does not exist, run once with recording=record first.", path));
+        }
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new SQLException(String.format("MySQL Mock recording '%s' is larger than 2 GB.", path));
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        catch (IOException e) {
+            throw new SQLException(String.format("Could not map MySQL Mock recording '%s'", path), e);
+        }
+        if (buffer.remaining() < 8 || buffer.getLong() != MAGIC) {
+            throw new SQLException(String.format("'%s' is not a MySQL Mock recording.", path));
+        }
+        Map<ByteBuffer, List<int[]>> responses = new HashMap<>();
+        int handshakeOffset = -1;
+        int handshakeLength = 0;
+        try {
+            while (buffer.hasRemaining()) {
+                byte type = buffer.get();
+                int length = buffer.getInt();
+                if (type == HANDSHAKE_RECORD) {
+                    handshakeOffset = buffer.position();
+                    handshakeLength = length;
+                    buffer.position(handshakeOffset + length);
+                    continue;
+                }
+                if (type != EXCHANGE_RECORD) {
+                    throw new SQLException(String.format("Corrupted MySQL Mock recording '%s' at offset %d.", path, buffer.position() - 5));
+                }
+                ByteBuffer key = slice(buffer, buffer.position(), length);
+                buffer.position(buffer.position() + length);
+                int responseLength = buffer.getInt();
+                responses.computeIfAbsent(key, k -> new ArrayList<>()).add(new int[] { buffer.position(), responseLength });
+                buffer.position(buffer.position() + responseLength);
+            }
+        }
+        catch (RuntimeException e) {
+            System.err.println(String.format("MySQL Mock recording '%s' is truncated at offset %d, ignoring the tail.", path, buffer.position()));
+        }
+        if (handshakeOffset < 0) {
+            throw new SQLException(String.format("MySQL Mock recording '%s' contains no handshake.", path));
+        }
+        Map<ByteBuffer, Exchange> exchanges = new HashMap<>(responses.size() * 2);
+        responses.forEach((key, value) -> exchanges.put(key, new Exchange(value)));
+        System.err.println(String.format("MySQL Mock replaying %d recorded statements from '%s'.", exchanges.size(), path));
+        return new MySQLMockRecording(path, buffer, exchanges, handshakeOffset, handshakeLength);
+    }
+
+    private static final ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(offset + length);
+        slice.position(offset);
+        return slice.slice();
+    }
+
+    static final byte[] key(byte[] prefix, byte[] packet, int from) {
+        byte[] key = new byte[prefix.length + packet.length - MySQLMockWireProtocol.HEADER_LENGTH - from];
+        System.arraycopy(prefix, 0, key, 0, prefix.length);
+        System.arraycopy(packet, MySQLMockWireProtocol.HEADER_LENGTH + from, key, prefix.length, key.length - prefix.length);
+        return key;
+    }
+
+    static final byte[] databasePrefix(byte[] database) {
+        byte[] prefix = new byte[database.length + 1];
+        System.arraycopy(database, 0, prefix, 0, database.length);
+        return prefix;
+    }
+
+    static final byte[] statementPrefix(byte[] databasePrefix, ByteBuffer prepare, int start, int length) {
+        byte[] prefix = new byte[databasePrefix.length + length + 1];
+        System.arraycopy(databasePrefix, 0, prefix, 0, databasePrefix.length);
+        prefix[databasePrefix.length] = MySQLMockWireProtocol.COM_STMT_EXECUTE;
+        for (int i = 1; i < length; i++) {
+            prefix[databasePrefix.length + i] = prepare.get(start + i);
+        }
+        return prefix;
+    }
+
+    ByteBuffer handshake() {
+        return slice(buffer, handshakeOffset, handshakeLength);
+    }
+
+    Exchange exchange(ByteBuffer key) {
+        return exchanges.get(key);
+    }
+
+    ByteBuffer response(Exchange exchange) {
+        int index = exchange.nextIndex();
+        ByteBuffer response = buffer.duplicate();
+        response.limit(exchange.offsets[index] + exchange.lengths[index]);
+        response.position(exchange.offsets[index]);
+        return response;
+    }
+
+    String diff(ByteBuffer key) {
+        ByteBuffer closest = null;
+        int closestPrefix = 0;
+        int closestSuffix = 0;
+        for (ByteBuffer candidate : exchanges.keySet()) {
+            int prefix = 0;
+            int maxShared = Math.min(candidate.remaining(), key.remaining());
+            while (prefix < maxShared && candidate.get(candidate.position() + prefix) == key.get(key.position() + prefix)) {
+                prefix++;
+            }
+            int suffix = 0;
+            while (suffix < maxShared - prefix && candidate.get(candidate.limit() - 1 - suffix) == key.get(key.limit() - 1 - suffix)) {
+                suffix++;
+            }
+            if (closest == null || prefix + suffix > closestPrefix + closestSuffix) {
+                closest = candidate;
+                closestPrefix = prefix;
+                closestSuffix = suffix;
+            }
+        }
+        StringBuilder diff = new StringBuilder("MySQL Mock replay has no recording of ").append(text(key, 0, key.remaining()));
+        if (closest == null) {
+            return diff.append(" (the recording is empty)").toString();
+        }
+        return diff.append(String.format("%nclosest recording differs at byte %d:%n  recorded: %s%n  replayed: %s", closestPrefix, excerpt(closest, closestPrefix, closestSuffix), excerpt(key, closestPrefix, closestSuffix))).toString();
+    }
+
+    private static final String excerpt(ByteBuffer key, int prefix, int suffix) {
+        int from = Math.max(0, prefix - DIFF_CONTEXT);
+        int to = key.remaining() - suffix;
+        return (from > 0 ? "..." : "") + text(key, from, prefix) + "[" + text(key, prefix, to) + "]" + text(key, to, Math.min(key.remaining(), to + DIFF_CONTEXT)) + (to + DIFF_CONTEXT < key.remaining() ? "..." : "");
+    }
+
+    private static final String text(ByteBuffer key, int from, int to) {
+        byte[] bytes = new byte[Math.max(0, to - from)];
+        for (int i = 0; i < bytes.length; i++) {
+            byte current = key.get(key.position() + from + i);
+            bytes[i] = current >= 0 && current < 0x20 ? (byte) ' ' : current;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ *    Copyright 2019 MetaRing s.r.l.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.metaring.mock.jdbc.mysql;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Properties;
+
+enum MySQLMockRecordingMode {
+
+    OFF,
+
+    RECORD,
+
+    REPLAY;
+
+    static final MySQLMockRecordingMode of(Properties properties) {
+        String recording = MySQLMockPropertyEnum.RECORDING.getValue(properties);
+        if (recording == null) {
+            return OFF;
+        }
+        for (MySQLMockRecordingMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(recording)) {
+                return mode;
+            }
+        }
+        throw new RuntimeException(String.format("Unknown MySQL Mock recording mode '%s', expected one of %s.", recording, Arrays.toString(values()).toLowerCase()));
+    }
+
+    void check(Properties properties) throws SQLException {
+        if (this == OFF) {
+            return;
+        }
+        if (MySQLMockPropertyEnum.MOCK_PORT.getValue(properties) == null) {
+            throw new SQLException(String.format("MySQL Mock %s mode requires the '%s' property.", name().toLowerCase(), MySQLMockPropertyEnum.MOCK_PORT.getPropertyName()));
+        }
+        if (MySQLMockBackend.of(properties) != MySQLMockBackend.MYSQLD) {
+            throw new SQLException(String.format("MySQL Mock %s mode speaks the MySQL wire protocol and requires the mysqld backend.", name().toLowerCase()));
+        }
+        if (MySQLMockTransport.of(properties) != MySQLMockTransport.TCP) {
+            throw new SQLException(String.format("MySQL Mock %s mode requires the tcp transport.", name().toLowerCase()));
+        }
+        if (MySQLMockPropertyEnum.TENANTS.getInt(properties, 0) > 0) {
+            throw new SQLException(String.format("MySQL Mock %s mode cannot be combined with tenant schemas.", name().toLowerCase()));
+        }
+    }
+}
@@ -0,0 +1,398 @@
+/**
+ *    Copyright 2019 MetaRing s.r.l.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.metaring.mock.jdbc.mysql;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+class MySQLMockReferenceData {
+
+    static final class Table {
+
+        final String schemaName;
+
+        final String tableName;
+
+        final String where;
+
+        final long limit;
+
+        private volatile Path dataPath;
+
+        private Table(String schemaName, String tableName, String where, long limit) {
+            this.schemaName = schemaName;
+            this.tableName = tableName;
+            this.where = where;
+            this.limit = limit;
+        }
+
+        private String key() {
+            return MySQLMockFiles.sha256(String.join("\n", schemaName, tableName, String.valueOf(where), String.valueOf(limit))).substring(0, 16);
+        }
+
+        @Override
+        public String toString() {
+            return schemaName + "." + tableName;
+        }
+    }
+
+    private static final String DATA_EXTENSION = ".data";
+    private static final String TABLE_EXTENSION = ".sql";
+    private static final int MAX_STATEMENT_LENGTH = 1024 * 1024;
+
+    private static final String COLUMNS_QUERY = "SELECT COLUMN_NAME, DATA_TYPE FROM information_schema.COLUMNS WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ? AND EXTRA NOT LIKE '%GENERATED%' ORDER BY ORDINAL_POSITION";
+    private static final String FOREIGN_KEYS_QUERY = "SELECT DISTINCT TABLE_NAME, REFERENCED_TABLE_SCHEMA, REFERENCED_TABLE_NAME FROM information_schema.KEY_COLUMN_USAGE WHERE TABLE_SCHEMA = ? AND REFERENCED_TABLE_NAME IS NOT NULL";
+
+    private static final Set<String> BINARY_TYPES = new HashSet<>(Arrays.asList("binary", "varbinary", "tinyblob", "blob", "mediumblob", "longblob", "geometry", "point", "linestring", "polygon", "multipoint", "multilinestring", "multipolygon", "geometrycollection", "geomcollection"));
+
+    private final List<Table> tables;
+    private final Map<String, String> schemaNames;
+    private volatile List<List<Table>> levels;
+
+    private MySQLMockReferenceData(List<Table> tables, Map<String, String> schemaNames, List<List<Table>> levels) {
+        this.tables = tables;
+        this.schemaNames = schemaNames;
+        this.levels = levels;
+    }
+
+    static final MySQLMockReferenceData of(Properties properties) {
+        String referenceData = MySQLMockPropertyEnum.REFERENCE_DATA.getValue(properties);
+        if (referenceData == null) {
+            return null;
+        }
+        String dbName = MySQLMockPropertyEnum.NAME.getValue(properties);
+        List<String> databases = MySQLMockManager.databases(properties);
+        List<Table> tables = new ArrayList<>();
+        Map<String, String> schemaNames = new HashMap<>();
+        for (String entry : referenceData.split(";")) {
+            if (entry.trim().isEmpty()) {
+                continue;
+            }
+            String[] parts = entry.split(":", 3);
+            String qualifiedName = parts[0].trim();
+            int dot = qualifiedName.indexOf('.');
+            String schemaName = dot == -1 ? dbName : qualifiedName.substring(0, dot);
+            String tableName = qualifiedName.substring(dot + 1);
+            if (!databases.contains(schemaName)) {
+                throw new RuntimeException(String.format("Reference data table '%s' belongs to schema '%s', which is not one of the mocked schemas %s.", qualifiedName, schemaName, databases));
+            }
+            String where = null;
+            long limit = -1;
+            if (parts.length > 1) {
+                String option = parts[1].trim().toLowerCase();
+                String value = parts.length > 2 ? parts[2].trim() : "";
+                if (option.equals("where") && !value.isEmpty()) {
+                    where = value;
+                }
+                else if (option.equals("limit") && value.matches("[0-9]+")) {
+                    limit = Long.parseLong(value);
+                }
+                else {
+                    throw new RuntimeException(String.format("Invalid reference data option '%s' for table '%s', expected 'where:<condition>' or 'limit:<rows>'.", entry.substring(parts[0].length() + 1), qualifiedName));
+                }
+            }
+            tables.add(new Table(schemaName, tableName, where, limit));
+            schemaNames.put(schemaName, schemaName);
+        }
+        return tables.isEmpty() ? null : new MySQLMockReferenceData(tables, schemaNames, null);
+    }
+
+    MySQLMockReferenceData only(Collection<String> schemaNames) {
+        Map<String, String> onlySchemaNames = new HashMap<>(this.schemaNames);
+        onlySchemaNames.keySet().retainAll(schemaNames);
+        return new MySQLMockReferenceData(tables, onlySchemaNames, levels);
+    }
+
+    MySQLMockReferenceData renamed(String schemaName, String targetSchemaName) {
+        Map<String, String> renamedSchemaNames = new HashMap<>();
+        if (schemaNames.containsKey(schemaName)) {
+            renamedSchemaNames.put(schemaName, targetSchemaName);
+        }
+        return new MySQLMockReferenceData(tables, renamedSchemaNames, levels);
+    }
+
+    MySQLMockReferenceData extract(Properties properties, MySQLMockDumpCache.Entry dumpCacheEntry, MySQLMockProvisioning provisioning) throws IOException, SQLException {
+        Path dataFolder = dumpCacheEntry.dumpsPath.resolve(dumpCacheEntry.fingerprint + DATA_EXTENSION);
+        Files.createDirectories(dataFolder);
+        boolean offline = MySQLMockPropertyEnum.OFFLINE.getBoolean(properties);
+        boolean refresh = MySQLMockPropertyEnum.REFRESH_DUMP_CACHE.getBoolean(properties);
+        List<Table> mappedTables = new ArrayList<>();
+        for (Table table : tables) {
+            if (schemaNames.containsKey(table.schemaName)) {
+                mappedTables.add(table);
+            }
+        }
+        if (offline) {
+            levels = Arrays.asList(mappedTables);
+        }
+        else {
+            try (Connection connection = MySQLMockDumpCache.originalConnection(properties, "information_schema")) {
+                levels = levels(connection, mappedTables);
+            }
+        }
+        MySQLMockMetrics.Timer extraction = provisioning.metrics.begin(MySQLMockPhase.REFERENCE_DATA_EXTRACTION);
+        long start = System.nanoTime();
+        List<CompletableFuture<Long>> extractions = new ArrayList<>();
+        for (Table table : mappedTables) {
+            extractions.add(provisioning.stage(() -> extract(properties, table, dataFolder.resolve(table.key() + TABLE_EXTENSION), offline, refresh)));
+        }
+        long bytes = 0;
+        for (CompletableFuture<Long> tableExtraction : extractions) {
+            bytes += MySQLMockProvisioning.await(tableExtraction);
+        }
+        extraction.bytes(bytes).close();
+        System.err.println(String.format("MySQL Mock reference data of %s ready in %d ms.", mappedTables, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        return this;
+    }
+
+    void load(MySQLMockedDatabaseInfo mockedDatabaseInfo, MySQLMockProvisioning provisioning) throws SQLException {
+        MySQLMockMetrics.Timer load = provisioning.metrics.begin(MySQLMockPhase.REFERENCE_DATA_LOAD);
+        long statements = 0;
+        boolean embedded = mockedDatabaseInfo.backend == MySQLMockBackend.H2;
+        for (List<Table> level : levels) {
+            List<CompletableFuture<Long>> loads = new ArrayList<>();
+            for (Table table : level) {
+                String targetSchemaName = schemaNames.get(table.schemaName);
+                if (targetSchemaName == null) {
+                    continue;
+                }
+                loads.add(provisioning.stage(() -> {
+                    Properties connectionProperties = Driver.cleanProperties(mockedDatabaseInfo.mockProperties);
+                    try (Connection connection = mockedDatabaseInfo.connect(connectionProperties)) {
+                        return load(connection, table, targetSchemaName);
+                    }
+                }));
+                if (embedded) {
+                    MySQLMockProvisioning.await(loads.get(loads.size() - 1));
+                }
+            }
+            for (CompletableFuture<Long> tableLoad : loads) {
+                statements += MySQLMockProvisioning.await(tableLoad);
+            }
+        }
+        load.statements(statements).close();
+    }
+
+    void restore(Connection connection, String schemaName, Collection<String> tableNames) throws SQLException {
+        for (List<Table> level : levels) {
+            for (Table table : level) {
+                if (schemaName.equals(schemaNames.get(table.schemaName)) && (tableNames == null || contains(tableNames, table.tableName))) {
+                    load(connection, table, schemaName);
+                }
+            }
+        }
+    }
+
+    private static final boolean contains(Collection<String> tableNames, String tableName) {
+        for (String name : tableNames) {
+            if (name.replace("`", "").equalsIgnoreCase(tableName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final long load(Connection connection, Table table, String targetSchemaName) throws SQLException {
+        String insert = "INSERT INTO " + MySQLMockSql.quote(targetSchemaName) + "." + MySQLMockSql.quote(table.tableName) + " ";
+        long statements = 0;
+        boolean embedded = MySQLMockSql.isEmbedded(connection);
+        try (Statement statement = connection.createStatement(); BufferedReader bufferedReader = Files.newBufferedReader(table.dataPath, StandardCharsets.UTF_8)) {
+            statement.execute(MySQLMockSql.foreignKeyChecks(embedded, false));
+            try {
+                String values = null;
+                while ((values = bufferedReader.readLine()) != null) {
+                    statement.executeUpdate(insert + (embedded ? MySQLMockEmbedded.standardLiterals(values) : values));
+                    statements++;
+                }
+            }
+            finally {
+                statement.execute(MySQLMockSql.foreignKeyChecks(embedded, true));
+            }
+        }
+        catch (IOException e) {
+            throw new SQLException(String.format("Error while reading reference data of %s from %s.", table, table.dataPath), e);
+        }
+        return statements;
+    }
+
+    private static final long extract(Properties properties, Table table, Path dataPath, boolean offline, boolean refresh) throws IOException, SQLException {
+        return MySQLMockFiles.locked(dataPath.resolveSibling(dataPath.getFileName() + ".lock"), () -> {
+            if (Files.exists(dataPath) && !refresh) {
+                table.dataPath = dataPath;
+                return Files.size(dataPath);
+            }
+            if (offline) {
+                throw new SQLException(String.format("Offline mode requested but no cached reference data of %s exists in %s.", table, dataPath.getParent()));
+            }
+            Path tempPath = dataPath.resolveSibling(dataPath.getFileName() + ".tmp");
+            try {
+                try (Connection connection = MySQLMockDumpCache.originalConnection(properties, table.schemaName); Writer writer = Files.newBufferedWriter(tempPath, StandardCharsets.UTF_8)) {
+                    extract(connection, table, writer);
+                }
+                Files.move(tempPath, dataPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            finally {
+                Files.deleteIfExists(tempPath);
+            }
+            table.dataPath = dataPath;
+            return Files.size(dataPath);
+        });
+    }
+
+    private static final void extract(Connection connection, Table table, Writer writer) throws IOException, SQLException {
+        List<String> columns = new ArrayList<>();
+        List<String> dataTypes = new ArrayList<>();
+        try (PreparedStatement preparedStatement = connection.prepareStatement(COLUMNS_QUERY)) {
+            preparedStatement.setString(1, table.schemaName);
+            preparedStatement.setString(2, table.tableName);
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    columns.add(resultSet.getString(1));
+                    dataTypes.add(resultSet.getString(2).toLowerCase());
+                }
+            }
+        }
+        if (columns.isEmpty()) {
+            throw new SQLException(String.format("Reference data table %s does not exist on the original server.", table));
+        }
+
+        StringBuilder select = new StringBuilder("SELECT ");
+        StringBuilder columnList = new StringBuilder("(");
+        for (int i = 0; i < columns.size(); i++) {
+            String column = MySQLMockSql.quote(columns.get(i));
+            String dataType = dataTypes.get(i);
+            select.append(i == 0 ? "" : ", ").append(BINARY_TYPES.contains(dataType) ? "HEX(" + column + ")" : dataType.equals("bit") ? "CAST(" + column + " AS UNSIGNED)" : column);
+            columnList.append(i == 0 ? "" : ",").append(column);
+        }
+        columnList.append(") VALUES ");
+        select.append(" FROM ").append(MySQLMockSql.quote(table.schemaName)).append('.').append(MySQLMockSql.quote(table.tableName));
+        if (table.where != null) {
+            select.append(" WHERE ").append(table.where);
+        }
+        if (table.limit >= 0) {
+            select.append(" LIMIT ").append(table.limit);
+        }
+
+        try (Statement statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            statement.setFetchSize(Integer.MIN_VALUE);
+            try (ResultSet resultSet = statement.executeQuery(select.toString())) {
+                StringBuilder values = new StringBuilder();
+                while (resultSet.next()) {
+                    values.append(values.length() == 0 ? "" : ",").append('(');
+                    for (int i = 0; i < columns.size(); i++) {
+                        String value = resultSet.getString(i + 1);
+                        values.append(i == 0 ? "" : ",");
+                        if (value == null) {
+                            values.append("NULL");
+                        }
+                        else if (BINARY_TYPES.contains(dataTypes.get(i))) {
+                            values.append("X'").append(value).append('\'');
+                        }
+                        else {
+                            appendLiteral(values, value);
+                        }
+                    }
+                    values.append(')');
+                    if (values.length() >= MAX_STATEMENT_LENGTH) {
+                        writer.append(columnList).append(values).append('\n');
+                        values.setLength(0);
+                    }
+                }
+                if (values.length() > 0) {
+                    writer.append(columnList).append(values).append('\n');
+                }
+            }
+        }
+    }
+
+    private static final void appendLiteral(StringBuilder stringBuilder, String value) {
+        stringBuilder.append('\'');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\'':
+                    stringBuilder.append("\\'");
+                    break;
+                case '\\':
+                    stringBuilder.append("\\\\");
+                    break;
+                case '\n':
+                    stringBuilder.append("\\n");
+                    break;
+                case '\r':
+                    stringBuilder.append("\\r");
+                    break;
+                case '\u0000':
+                    stringBuilder.append("\\0");
+                    break;
+                case '\u001a':
+                    stringBuilder.append("\\Z");
+                    break;
+                default:
+                    stringBuilder.append(c);
+            }
+        }
+        stringBuilder.append('\'');
+    }
+
+    private static final List<List<Table>> levels(Connection connection, List<Table> tables) throws SQLException {
+        Map<String, Table> tablesByName = new LinkedHashMap<>();
+        Set<String> schemaNames = new HashSet<>();
+        for (Table table : tables) {
+            tablesByName.put(table.toString(), table);
+            schemaNames.add(table.schemaName);
+        }
+        Map<Table, Set<Table>> parents = new HashMap<>();
+        for (String schemaName : schemaNames) {
+            try (PreparedStatement preparedStatement = connection.prepareStatement(FOREIGN_KEYS_QUERY)) {
+                preparedStatement.setString(1, schemaName);
+                try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                    while (resultSet.next()) {
+                        Table child = tablesByName.get(schemaName + "." + resultSet.getString(1));
+                        Table parent = tablesByName.get(resultSet.getString(2) + "." + resultSet.getString(3));
+                        if (child != null && parent != null && child != parent) {
+                            parents.computeIfAbsent(child, table -> new HashSet<>()).add(parent);
+                        }
+                    }
+                }
+            }
+        }
+        return MySQLMockSql.dependencyLevels(tablesByName.values(), parents);
+    }
+}
@@ -0,0 +1,339 @@
+/**
+ *    Copyright 2019 MetaRing s.r.l.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.metaring.mock.jdbc.mysql;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class MySQLMockReplayServer {
+
+    private static final ConcurrentMap<Integer, CompletableFuture<MySQLMockReplayServer>> SERVERS = new ConcurrentHashMap<>();
+
+    private static final int BACKLOG = 4096;
+    private static final int INITIAL_BUFFER_SIZE = 8192;
+
+    private final MySQLMockRecording recording;
+    private final int port;
+    private final ServerSocketChannel serverChannel;
+    private final EventLoop[] eventLoops;
+    private final AtomicInteger nextEventLoop = new AtomicInteger();
+
+    private MySQLMockReplayServer(MySQLMockRecording recording, int port) throws SQLException {
+        this.recording = recording;
+        this.port = port;
+        try {
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+            eventLoops = new EventLoop[Math.max(1, Runtime.getRuntime().availableProcessors())];
+            for (int i = 0; i < eventLoops.length; i++) {
+                eventLoops[i] = new EventLoop(i);
+            }
+        }
+        catch (IOException e) {
+            throw new SQLException(String.format("Could not listen for MySQL Mock replay on port %d", port), e);
+        }
+        Thread acceptor = new Thread(this::accept, "mysql-mock-replay-" + port);
+        acceptor.setDaemon(true);
+        acceptor.start();
+        System.err.println(String.format("MySQL Mock replay server listening on port %d with %d event loops.", port, eventLoops.length));
+    }
+
+    static final Connection connect(Properties resolvedProperties) throws SQLException {
+        MySQLMockRecordingMode.REPLAY.check(resolvedProperties);
+        MySQLMockReplayServer server = of(resolvedProperties);
+        String dbName = resolvedProperties.getProperty(MySQLMockPropertyEnum.NAME.getPropertyName());
+        return Driver.MYSQL_ORIGINAL_DRIVER.connect(String.format("jdbc:mysql://localhost:%d/%s", server.port, dbName), MySQLMockWireProtocol.plainProperties(Driver.cleanProperties(resolvedProperties)));
+    }
+
+    private static final MySQLMockReplayServer of(Properties properties) throws SQLException {
+        int port = MySQLMockPropertyEnum.MOCK_PORT.getInt(properties, -1);
+        Path path = MySQLMockRecording.path(properties);
+        CompletableFuture<MySQLMockReplayServer> starting = SERVERS.get(port);
+        if (starting == null) {
+            CompletableFuture<MySQLMockReplayServer> newStarting = new CompletableFuture<>();
+            starting = SERVERS.putIfAbsent(port, newStarting);
+            if (starting == null) {
+                starting = newStarting;
+                try {
+                    newStarting.complete(new MySQLMockReplayServer(MySQLMockRecording.open(path), port));
+                }
+                catch (Throwable e) {
+                    SERVERS.remove(port, newStarting);
+                    newStarting.completeExceptionally(e);
+                }
+            }
+        }
+        MySQLMockReplayServer server = MySQLMockProvisioning.await(starting);
+        if (!server.recording.path.equals(path)) {
+            throw new SQLException(String.format("Port %d already replays '%s', cannot also replay '%s'.", port, server.recording.path, path));
+        }
+        return server;
+    }
+
+    private void accept() {
+        while (serverChannel.isOpen()) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                eventLoops[Math.floorMod(nextEventLoop.getAndIncrement(), eventLoops.length)].register(channel);
+            }
+            catch (IOException e) {
+                System.err.println(String.format("MySQL Mock replay server on port %d stopped accepting connections: %s", port, e.getMessage()));
+                return;
+            }
+        }
+    }
+
+    private final class EventLoop implements Runnable {
+
+        private final Selector selector;
+        private final Queue<SocketChannel> pending = new ConcurrentLinkedQueue<>();
+
+        private EventLoop(int index) throws IOException {
+            this.selector = Selector.open();
+            Thread thread = new Thread(this, "mysql-mock-replay-" + port + "-" + index);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void register(SocketChannel channel) {
+            pending.add(channel);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (selector.isOpen()) {
+                try {
+                    selector.select();
+                    SocketChannel channel;
+                    while ((channel = pending.poll()) != null) {
+                        ReplayConnection connection = new ReplayConnection(channel);
+                        try {
+                            channel.configureBlocking(false);
+                            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                            connection.start();
+                        }
+                        catch (IOException e) {
+                            connection.close();
+                        }
+                    }
+                    Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+                    while (selectedKeys.hasNext()) {
+                        SelectionKey key = selectedKeys.next();
+                        selectedKeys.remove();
+                        ReplayConnection connection = (ReplayConnection) key.attachment();
+                        try {
+                            if (key.isValid() && key.isWritable()) {
+                                connection.flush();
+                            }
+                            if (key.isValid() && key.isReadable()) {
+                                connection.read();
+                            }
+                        }
+                        catch (IOException | RuntimeException e) {
+                            connection.close();
+                        }
+                    }
+                }
+                catch (IOException e) {
+                    System.err.println(String.format("MySQL Mock replay event loop on port %d stopped: %s", port, e.getMessage()));
+                    return;
+                }
+            }
+        }
+    }
+
+    private final class ReplayConnection {
+
+        private final SocketChannel channel;
+        private final ArrayDeque<ByteBuffer> output = new ArrayDeque<>();
+        private final Map<Integer, byte[]> statements = new HashMap<>();
+        private SelectionKey key;
+        private ByteBuffer input = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        private ByteBuffer lookup = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        private byte[] databasePrefix;
+        private int nextStatementId = 1;
+        private boolean closed;
+
+        private ReplayConnection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        private void start() throws IOException {
+            output.add(recording.handshake());
+            flush();
+        }
+
+        private void read() throws IOException {
+            if (channel.read(input) == -1) {
+                close();
+                return;
+            }
+            input.flip();
+            int needed = 0;
+            while (!closed && input.remaining() >= MySQLMockWireProtocol.HEADER_LENGTH) {
+                int position = input.position();
+                int length = (input.get(position) & 0xFF) | (input.get(position + 1) & 0xFF) << 8 | (input.get(position + 2) & 0xFF) << 16;
+                if (length == MySQLMockWireProtocol.MAX_PAYLOAD_LENGTH) {
+                    throw new IOException("Statements larger than 16 MB cannot be replayed");
+                }
+                if (input.remaining() < MySQLMockWireProtocol.HEADER_LENGTH + length) {
+                    needed = MySQLMockWireProtocol.HEADER_LENGTH + length;
+                    break;
+                }
+                handle(input.get(position + 3) & 0xFF, position + MySQLMockWireProtocol.HEADER_LENGTH, length);
+                input.position(position + MySQLMockWireProtocol.HEADER_LENGTH + length);
+            }
+            if (closed) {
+                return;
+            }
+            input.compact();
+            if (needed > input.capacity()) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(needed, input.capacity() * 2));
+                input.flip();
+                grown.put(input);
+                input = grown;
+            }
+            flush();
+        }
+
+        private void handle(int sequenceId, int start, int length) {
+            if (databasePrefix == null) {
+                databasePrefix = MySQLMockRecording.databasePrefix(MySQLMockWireProtocol.database(input, start, length));
+                output.add(ByteBuffer.wrap(MySQLMockWireProtocol.okPacket(sequenceId + 1)));
+                return;
+            }
+            byte command = input.get(start);
+            switch (command) {
+                case MySQLMockWireProtocol.COM_QUIT:
+                    close();
+                    return;
+                case MySQLMockWireProtocol.COM_PING:
+                case MySQLMockWireProtocol.COM_STMT_RESET:
+                    output.add(ByteBuffer.wrap(MySQLMockWireProtocol.okPacket(1)));
+                    return;
+                case MySQLMockWireProtocol.COM_RESET_CONNECTION:
+                    statements.clear();
+                    output.add(ByteBuffer.wrap(MySQLMockWireProtocol.okPacket(1)));
+                    return;
+                case MySQLMockWireProtocol.COM_STMT_CLOSE:
+                    statements.remove(MySQLMockWireProtocol.int32(input, start + 1));
+                    return;
+                case MySQLMockWireProtocol.COM_STMT_SEND_LONG_DATA:
+                    return;
+                case MySQLMockWireProtocol.COM_STMT_EXECUTE:
+                    byte[] statementPrefix = statements.get(MySQLMockWireProtocol.int32(input, start + 1));
+                    if (statementPrefix == null) {
+                        output.add(ByteBuffer.wrap(MySQLMockWireProtocol.errorPacket(1, "Unknown prepared statement handler given to MySQL Mock replay")));
+                        return;
+                    }
+                    replay(command, statementPrefix, start + 5, start + length);
+                    return;
+                default:
+                    replay(command, databasePrefix, start, start + length);
+            }
+        }
+
+        private void replay(byte command, byte[] prefix, int from, int to) {
+            int keyLength = prefix.length + to - from;
+            if (lookup.capacity() < keyLength) {
+                lookup = ByteBuffer.allocate(Math.max(keyLength, lookup.capacity() * 2));
+            }
+            lookup.clear();
+            lookup.put(prefix);
+            lookup.put(input.array(), input.arrayOffset() + from, to - from);
+            lookup.flip();
+            MySQLMockRecording.Exchange exchange = recording.exchange(lookup);
+            if (exchange == null) {
+                String diff = recording.diff(lookup);
+                System.err.println(diff);
+                output.add(ByteBuffer.wrap(MySQLMockWireProtocol.errorPacket(1, diff)));
+                return;
+            }
+            ByteBuffer response = recording.response(exchange);
+            boolean ok = response.get(response.position() + MySQLMockWireProtocol.HEADER_LENGTH) == 0;
+            if (command == MySQLMockWireProtocol.COM_STMT_PREPARE && ok) {
+                int statementId = nextStatementId++;
+                byte[] head = new byte[MySQLMockWireProtocol.HEADER_LENGTH + 5];
+                response.get(head);
+                for (int i = 0; i < 4; i++) {
+                    head[MySQLMockWireProtocol.HEADER_LENGTH + 1 + i] = (byte) (statementId >>> (8 * i));
+                }
+                output.add(ByteBuffer.wrap(head));
+                statements.put(statementId, MySQLMockRecording.statementPrefix(databasePrefix, input, from, to - from));
+            }
+            else if (command == MySQLMockWireProtocol.COM_INIT_DB && ok) {
+                byte[] database = new byte[to - from - 1];
+                System.arraycopy(input.array(), input.arrayOffset() + from + 1, database, 0, database.length);
+                databasePrefix = MySQLMockRecording.databasePrefix(database);
+            }
+            output.add(response);
+        }
+
+        private void flush() throws IOException {
+            if (closed) {
+                return;
+            }
+            while (!output.isEmpty()) {
+                ByteBuffer head = output.peekFirst();
+                channel.write(head);
+                if (head.hasRemaining()) {
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+                output.pollFirst();
+            }
+            key.interestOps(SelectionKey.OP_READ);
+        }
+
+        private void close() {
+            closed = true;
+            output.clear();
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            }
+            catch (IOException e) {
+            }
+        }
+    }
+}
@@ -0,0 +1,277 @@
+/**
+ *    Copyright 2019 MetaRing s.r.l.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.metaring.mock.jdbc.mysql;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+class MySQLMockSchemaExtractor {
+
+    private enum Kind {
+
+        TABLE("Create Table"),
+
+        FUNCTION("Create Function"),
+
+        PROCEDURE("Create Procedure"),
+
+        VIEW("Create View"),
+
+        TRIGGER("SQL Original Statement"),
+
+        EVENT("Create Event");
+
+        private final String definitionColumn;
+
+        private Kind(String definitionColumn) {
+            this.definitionColumn = definitionColumn;
+        }
+
+        private boolean isCompound() {
+            return this != TABLE && this != VIEW;
+        }
+    }
+
+    private static final class SchemaObject {
+
+        private final String database;
+        private final String name;
+        private final Kind kind;
+        private String definition;
+        private String sqlMode;
+
+        private SchemaObject(String database, String name, Kind kind) {
+            this.database = database;
+            this.name = name;
+            this.kind = kind;
+        }
+    }
+
+    private static final int DEFAULT_DUMP_THREADS = 4;
+
+    private static final String TABLES_QUERY = "SELECT TABLE_SCHEMA, TABLE_NAME, TABLE_TYPE FROM information_schema.TABLES WHERE TABLE_SCHEMA IN (%s) AND TABLE_TYPE IN ('BASE TABLE', 'VIEW') ORDER BY TABLE_SCHEMA, TABLE_NAME";
+    private static final String ROUTINES_QUERY = "SELECT ROUTINE_SCHEMA, ROUTINE_NAME, ROUTINE_TYPE FROM information_schema.ROUTINES WHERE ROUTINE_SCHEMA IN (%s) ORDER BY ROUTINE_SCHEMA, ROUTINE_TYPE, ROUTINE_NAME";
+    private static final String TRIGGERS_QUERY = "SELECT TRIGGER_SCHEMA, TRIGGER_NAME FROM information_schema.TRIGGERS WHERE TRIGGER_SCHEMA IN (%s) ORDER BY TRIGGER_SCHEMA, EVENT_OBJECT_TABLE, ACTION_ORDER, TRIGGER_NAME";
+    private static final String EVENTS_QUERY = "SELECT EVENT_SCHEMA, EVENT_NAME FROM information_schema.EVENTS WHERE EVENT_SCHEMA IN (%s) ORDER BY EVENT_SCHEMA, EVENT_NAME";
+
+    private final Properties properties;
+    private final List<String> databases;
+    private final MySQLMockProvisioning provisioning;
+    private final LongAdder rewriteNanos = new LongAdder();
+    private final LongAdder rewritten = new LongAdder();
+
+    private MySQLMockSchemaExtractor(Properties properties, MySQLMockProvisioning provisioning) {
+        this.properties = properties;
+        this.databases = MySQLMockManager.databases(properties);
+        this.provisioning = provisioning;
+    }
+
+    static final void extract(Properties properties, MySQLMockProvisioning provisioning, Writer writer) throws IOException, SQLException {
+        new MySQLMockSchemaExtractor(properties, provisioning).extract(writer);
+    }
+
+    private void extract(Writer writer) throws IOException, SQLException {
+        List<SchemaObject> objects = new ArrayList<>();
+        List<String> createDatabases = new ArrayList<>();
+        try (Connection connection = MySQLMockDumpCache.originalConnection(properties, "information_schema")) {
+            list(connection, TABLES_QUERY, objects, resultSet -> "VIEW".equals(resultSet.getString(3)) ? Kind.VIEW : Kind.TABLE);
+            list(connection, ROUTINES_QUERY, objects, resultSet -> Kind.valueOf(resultSet.getString(3).toUpperCase()));
+            list(connection, TRIGGERS_QUERY, objects, resultSet -> Kind.TRIGGER);
+            list(connection, EVENTS_QUERY, objects, resultSet -> Kind.EVENT);
+            if (databases.size() > 1) {
+                try (Statement statement = connection.createStatement()) {
+                    for (String database : databases) {
+                        try (ResultSet resultSet = statement.executeQuery("SHOW CREATE DATABASE " + MySQLMockSql.quote(database))) {
+                            createDatabases.add(resultSet.next() ? resultSet.getString(2) : "CREATE DATABASE " + MySQLMockSql.quote(database));
+                        }
+                    }
+                }
+            }
+        }
+
+        fetch(objects);
+        provisioning.metrics.record(MySQLMockPhase.DEFINER_REWRITE, rewriteNanos.sum(), 0, rewritten.sum());
+        provisioning.metrics.record(MySQLMockPhase.DUMP, 0, 0, objects.size());
+
+        String currentDatabase = null;
+        if (databases.size() == 1) {
+            currentDatabase = databases.get(0);
+            writer.write("DROP DATABASE IF EXISTS " + currentDatabase + ";\n\n");
+            writer.write("CREATE DATABASE " + currentDatabase + ";\n\n");
+            writer.write("USE " + currentDatabase + ";\n\n");
+        }
+        writer.write("-- MySQL Mock schema extraction of " + String.join(", ", databases) + "\n\n");
+        writer.write("/*!40101 SET NAMES utf8mb4 */;\n");
+        writer.write("/*!40014 SET @OLD_FOREIGN_KEY_CHECKS=@@FOREIGN_KEY_CHECKS, FOREIGN_KEY_CHECKS=0 */;\n");
+        writer.write("/*!40101 SET @OLD_SQL_MODE=@@SQL_MODE, SQL_MODE='NO_AUTO_VALUE_ON_ZERO' */;\n\n");
+        for (int i = 0; i < createDatabases.size(); i++) {
+            writer.write("DROP DATABASE IF EXISTS " + MySQLMockSql.quote(databases.get(i)) + ";\n\n");
+            writer.write(createDatabases.get(i) + ";\n\n");
+        }
+        for (Kind kind : Kind.values()) {
+            List<SchemaObject> kindObjects = new ArrayList<>();
+            for (SchemaObject object : objects) {
+                if (object.kind == kind) {
+                    kindObjects.add(object);
+                }
+            }
+            if (kind == Kind.VIEW) {
+                kindObjects = dependencyOrder(kindObjects);
+            }
+            for (SchemaObject object : kindObjects) {
+                if (!object.database.equals(currentDatabase)) {
+                    currentDatabase = object.database;
+                    writer.write("USE " + MySQLMockSql.quote(currentDatabase) + ";\n\n");
+                }
+                write(writer, object);
+            }
+        }
+        writer.write("/*!40101 SET SQL_MODE=@OLD_SQL_MODE */;\n");
+        writer.write("/*!40014 SET FOREIGN_KEY_CHECKS=@OLD_FOREIGN_KEY_CHECKS */;\n");
+    }
+
+    private interface KindResolver {
+        Kind kind(ResultSet resultSet) throws SQLException;
+    }
+
+    private void list(Connection connection, String query, List<SchemaObject> objects, KindResolver kindResolver) throws SQLException {
+        try (PreparedStatement preparedStatement = connection.prepareStatement(String.format(query, String.join(", ", Collections.nCopies(databases.size(), "?"))))) {
+            for (int i = 0; i < databases.size(); i++) {
+                preparedStatement.setString(i + 1, databases.get(i));
+            }
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    objects.add(new SchemaObject(resultSet.getString(1), resultSet.getString(2), kindResolver.kind(resultSet)));
+                }
+            }
+        }
+    }
+
+    private void fetch(List<SchemaObject> objects) throws SQLException {
+        int threads = Math.max(1, Math.min(MySQLMockPropertyEnum.DUMP_THREADS.getInt(properties, DEFAULT_DUMP_THREADS), objects.size()));
+        AtomicInteger next = new AtomicInteger();
+        List<CompletableFuture<Void>> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            workers.add(provisioning.stage(() -> {
+                fetch(objects, next);
+                return null;
+            }));
+        }
+        MySQLMockProvisioning.settle(workers.toArray(new CompletableFuture<?>[workers.size()]));
+        for (CompletableFuture<Void> worker : workers) {
+            MySQLMockProvisioning.await(worker);
+        }
+    }
+
+    private void fetch(List<SchemaObject> objects, AtomicInteger next) throws SQLException {
+        try (Connection connection = MySQLMockDumpCache.originalConnection(properties, databases.get(0)); Statement statement = connection.createStatement()) {
+            String currentDatabase = databases.get(0);
+            int index;
+            while ((index = next.getAndIncrement()) < objects.size()) {
+                provisioning.checkAborted();
+                SchemaObject object = objects.get(index);
+                if (!object.database.equals(currentDatabase)) {
+                    connection.setCatalog(object.database);
+                    currentDatabase = object.database;
+                }
+                try (ResultSet resultSet = statement.executeQuery("SHOW CREATE " + object.kind.name() + " " + MySQLMockSql.quote(object.name))) {
+                    if (!resultSet.next() || resultSet.getString(object.kind.definitionColumn) == null) {
+                        throw new SQLException(String.format("Cannot read the definition of %s %s.%s, check the privileges of the dump user.", object.kind.name().toLowerCase(), object.database, object.name));
+                    }
+                    if (object.kind.isCompound()) {
+                        object.sqlMode = resultSet.getString("sql_mode");
+                    }
+                    long rewriteStart = System.nanoTime();
+                    String definition = resultSet.getString(object.kind.definitionColumn);
+                    object.definition = MySQLMockManager.rewriteDefiner(definition);
+                    rewriteNanos.add(System.nanoTime() - rewriteStart);
+                    if (object.definition != definition) {
+                        rewritten.increment();
+                    }
+                }
+            }
+        }
+    }
+
+    private static final List<SchemaObject> dependencyOrder(List<SchemaObject> views) {
+        List<SchemaObject> ordered = new ArrayList<>(views.size());
+        Set<SchemaObject> emitted = new HashSet<>();
+        List<SchemaObject> pending = new ArrayList<>(views);
+        while (!pending.isEmpty()) {
+            boolean progress = false;
+            for (SchemaObject view : new ArrayList<>(pending)) {
+                boolean ready = true;
+                for (SchemaObject dependency : pending) {
+                    if (dependency != view && !emitted.contains(dependency) && references(view, dependency)) {
+                        ready = false;
+                        break;
+                    }
+                }
+                if (ready) {
+                    ordered.add(view);
+                    emitted.add(view);
+                    pending.remove(view);
+                    progress = true;
+                }
+            }
+            if (!progress) {
+                ordered.addAll(pending);
+                break;
+            }
+        }
+        return ordered;
+    }
+
+    private static final boolean references(SchemaObject view, SchemaObject dependency) {
+        String name = MySQLMockSql.quote(dependency.name);
+        int nameStart = view.definition.indexOf(" AS ");
+        String body = nameStart < 0 ? view.definition : view.definition.substring(nameStart);
+        if (view.database.equals(dependency.database)) {
+            return body.contains(name);
+        }
+        return body.contains(MySQLMockSql.quote(dependency.database) + "." + name);
+    }
+
+    private static final void write(Writer writer, SchemaObject object) throws IOException {
+        if (!object.kind.isCompound()) {
+            writer.write(object.definition);
+            writer.write(";\n\n");
+            return;
+        }
+        writer.write("/*!50003 SET @saved_sql_mode = @@sql_mode */ ;\n");
+        writer.write("/*!50003 SET sql_mode = '" + (object.sqlMode == null ? "" : object.sqlMode) + "' */ ;\n");
+        writer.write("DELIMITER ;;\n");
+        writer.write(object.definition);
+        writer.write(" ;;\nDELIMITER ;\n");
+        writer.write("/*!50003 SET sql_mode = @saved_sql_mode */ ;\n\n");
+    }
+}
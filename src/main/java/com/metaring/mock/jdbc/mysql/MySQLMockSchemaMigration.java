@@ -0,0 +1,279 @@
+/**
+ *    Copyright 2019 MetaRing s.r.l.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.metaring.mock.jdbc.mysql;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+class MySQLMockSchemaMigration {
+
+    static final class Definition {
+
+        final String database;
+        final String kind;
+        final String name;
+        final String table;
+        final String sql;
+        final String sqlMode;
+        final String signature;
+
+        private Definition(String database, String kind, String name, String table, String sql, String sqlMode, String signature) {
+            this.database = database;
+            this.kind = kind;
+            this.name = name;
+            this.table = table;
+            this.sql = sql;
+            this.sqlMode = sqlMode;
+            this.signature = signature;
+        }
+
+        private String key() {
+            return MySQLMockSchemaMigration.key(database, kind.equals("VIEW") ? "TABLE" : kind, name);
+        }
+
+        private String qualifiedName() {
+            return MySQLMockSql.quote(database) + "." + MySQLMockSql.quote(name);
+        }
+    }
+
+    private static final List<String> KINDS = Arrays.asList("TABLE", "FUNCTION", "PROCEDURE", "VIEW", "TRIGGER", "EVENT");
+    private static final Set<String> OBJECT_KINDS = new HashSet<>(Arrays.asList("DATABASE", "SCHEMA", "TABLE", "VIEW", "INDEX", "PROCEDURE", "FUNCTION", "TRIGGER", "EVENT"));
+    private static final Set<String> COMPOUND_KINDS = new HashSet<>(Arrays.asList("PROCEDURE", "FUNCTION", "TRIGGER", "EVENT"));
+
+    private static final Pattern AUTO_INCREMENT_PATTERN = Pattern.compile("\\s+AUTO_INCREMENT=\\d+");
+    private static final Pattern SQL_MODE_PATTERN = Pattern.compile("(?<![@\\w])SQL_MODE\\s*=\\s*('(?:[^'\\\\]|''|\\\\.)*'|@\\w+)", Pattern.CASE_INSENSITIVE);
+
+    static final void migrate(MySQLMockedDatabaseInfo mockedDatabaseInfo, Path loadedPath, Path dumpPath, MySQLMockMetrics metrics) throws IOException, SQLException {
+        long start = System.nanoTime();
+        MySQLMockMetrics.Timer schemaMigration = metrics.begin(MySQLMockPhase.SCHEMA_MIGRATION);
+        Map<String, Definition> loaded = definitions(loadedPath);
+        Map<String, Definition> current = definitions(dumpPath);
+
+        Set<String> droppedTables = new HashSet<>();
+        List<Definition> dropped = new ArrayList<>();
+        for (Definition definition : loaded.values()) {
+            Definition currentDefinition = current.get(definition.key());
+            if (currentDefinition == null || !currentDefinition.kind.equals(definition.kind) || !currentDefinition.signature.equals(definition.signature)) {
+                dropped.add(definition);
+                if (definition.kind.equals("TABLE")) {
+                    droppedTables.add(key(definition.database, definition.kind, definition.name));
+                }
+            }
+        }
+        List<Definition> drops = new ArrayList<>(dropped);
+        List<Definition> created = new ArrayList<>();
+        for (Definition definition : current.values()) {
+            Definition loadedDefinition = loaded.get(definition.key());
+            if (loadedDefinition == null) {
+                drops.add(definition);
+            }
+            if (loadedDefinition == null || dropped.contains(loadedDefinition) || (definition.table != null && droppedTables.contains(key(definition.database, "TABLE", definition.table)))) {
+                created.add(definition);
+            }
+        }
+
+        if (!created.isEmpty() || !drops.isEmpty()) {
+            synchronized (mockedDatabaseInfo) {
+                apply(mockedDatabaseInfo.maintenanceConnection(), drops, dependencyOrder(created));
+            }
+        }
+        schemaMigration.bytes(Files.size(dumpPath)).statements(dropped.size() + created.size()).close();
+        System.err.println(String.format("MySQL Mock migrated schema of '%s' (%d of %d objects dropped, %d re-created) in %d ms.", mockedDatabaseInfo.dbName, dropped.size(), loaded.size(), created.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+    }
+
+    private static final void apply(Connection connection, List<Definition> dropped, List<Definition> created) throws SQLException {
+        String catalog = connection.getCatalog();
+        MySQLMockSql.execute(connection, "SET @mysql_mock_sql_mode = @@SESSION.sql_mode");
+        MySQLMockSql.execute(connection, MySQLMockSql.foreignKeyChecks(false, false));
+        try {
+            for (int i = dropped.size() - 1; i >= 0; i--) {
+                drop(connection, dropped.get(i));
+            }
+            String sqlMode = null;
+            for (Definition definition : created) {
+                if (!definition.database.equals(connection.getCatalog())) {
+                    connection.setCatalog(definition.database);
+                }
+                if (definition.sqlMode != null && !definition.sqlMode.equals(sqlMode)) {
+                    sqlMode = definition.sqlMode;
+                    MySQLMockSql.execute(connection, "SET SESSION sql_mode = " + sqlMode);
+                }
+                try {
+                    MySQLMockSql.execute(connection, definition.sql);
+                }
+                catch (SQLException e) {
+                    throw new SQLException(String.format("Error while re-creating %s %s: %s", definition.kind.toLowerCase(), definition.qualifiedName(), e.getMessage()), e);
+                }
+            }
+        }
+        finally {
+            MySQLMockSql.execute(connection, "SET SESSION sql_mode = @mysql_mock_sql_mode");
+            MySQLMockSql.execute(connection, MySQLMockSql.foreignKeyChecks(false, true));
+            if (catalog != null) {
+                connection.setCatalog(catalog);
+            }
+        }
+    }
+
+    private static final void drop(Connection connection, Definition definition) throws SQLException {
+        MySQLMockSql.execute(connection, "DROP " + definition.kind + " IF EXISTS " + definition.qualifiedName());
+    }
+
+    private static final List<Definition> dependencyOrder(List<Definition> created) {
+        List<Definition> ordered = new ArrayList<>(created);
+        ordered.sort(Comparator.comparingInt(definition -> KINDS.indexOf(definition.kind)));
+        List<Definition> views = new ArrayList<>();
+        for (Definition definition : ordered) {
+            if (definition.kind.equals("VIEW")) {
+                views.add(definition);
+            }
+        }
+        if (views.size() < 2) {
+            return ordered;
+        }
+        Map<Definition, Set<Definition>> parents = new HashMap<>();
+        for (Definition view : views) {
+            Set<Definition> dependencies = new HashSet<>();
+            for (Definition dependency : views) {
+                if (dependency != view && references(view, dependency)) {
+                    dependencies.add(dependency);
+                }
+            }
+            parents.put(view, dependencies);
+        }
+        int first = ordered.indexOf(views.get(0));
+        ordered.removeAll(views);
+        List<Definition> orderedViews = new ArrayList<>(views.size());
+        for (List<Definition> level : MySQLMockSql.dependencyLevels(views, parents)) {
+            orderedViews.addAll(level);
+        }
+        ordered.addAll(first, orderedViews);
+        return ordered;
+    }
+
+    private static final boolean references(Definition view, Definition dependency) {
+        String name = MySQLMockSql.quote(dependency.name);
+        int nameStart = view.sql.indexOf(" AS ");
+        String body = nameStart < 0 ? view.sql : view.sql.substring(nameStart);
+        if (view.database.equals(dependency.database)) {
+            return body.contains(name);
+        }
+        return body.contains(MySQLMockSql.quote(dependency.database) + "." + name);
+    }
+
+    static final Map<String, Definition> definitions(Path dumpPath) throws IOException {
+        List<String> statements;
+        try (BufferedReader bufferedReader = Files.newBufferedReader(dumpPath, StandardCharsets.UTF_8)) {
+            statements = MySQLMockEmbedded.statements(bufferedReader);
+        }
+        Map<String, Definition> definitions = new LinkedHashMap<>();
+        String database = null;
+        String sqlMode = null;
+        String previousSqlMode = null;
+        for (String sql : statements) {
+            String unwrapped = MySQLMockEmbedded.VERSION_COMMENT_PATTERN.matcher(sql).replaceAll("$1").trim();
+            List<String> tokens = MySQLMockSql.tokens(unwrapped, 32);
+            String command = tokens.isEmpty() ? "" : tokens.get(0).toUpperCase();
+            if (command.equals("USE") && tokens.size() > 1) {
+                database = tokens.get(1);
+                continue;
+            }
+            if (command.equals("SET")) {
+                Matcher sqlModeMatcher = SQL_MODE_PATTERN.matcher(unwrapped);
+                if (sqlModeMatcher.find()) {
+                    if (sqlModeMatcher.group(1).startsWith("'")) {
+                        previousSqlMode = sqlMode;
+                        sqlMode = sqlModeMatcher.group(1);
+                    }
+                    else {
+                        sqlMode = previousSqlMode;
+                    }
+                }
+                continue;
+            }
+            if (!command.equals("CREATE") || database == null) {
+                continue;
+            }
+            int kindIndex = kindIndex(tokens);
+            if (kindIndex == -1 || !KINDS.contains(tokens.get(kindIndex).toUpperCase())) {
+                continue;
+            }
+            String kind = tokens.get(kindIndex).toUpperCase();
+            int nameIndex = kindIndex + 1;
+            while (nameIndex < tokens.size() && (tokens.get(nameIndex).equalsIgnoreCase("IF") || tokens.get(nameIndex).equalsIgnoreCase("NOT") || tokens.get(nameIndex).equalsIgnoreCase("EXISTS"))) {
+                nameIndex++;
+            }
+            if (nameIndex >= tokens.size()) {
+                continue;
+            }
+            String objectDatabase = database;
+            String name = tokens.get(nameIndex);
+            int dot = name.lastIndexOf('.');
+            if (dot != -1) {
+                objectDatabase = name.substring(0, dot);
+                name = name.substring(dot + 1);
+            }
+            String table = null;
+            if (kind.equals("TRIGGER")) {
+                for (int i = nameIndex + 1; i < tokens.size() - 1; i++) {
+                    if (tokens.get(i).equalsIgnoreCase("ON")) {
+                        table = MySQLMockSql.tableName(tokens.get(i + 1));
+                        break;
+                    }
+                }
+            }
+            String signature = AUTO_INCREMENT_PATTERN.matcher(unwrapped).replaceAll("");
+            if (COMPOUND_KINDS.contains(kind)) {
+                signature += "\n" + sqlMode;
+            }
+            Definition definition = new Definition(objectDatabase, kind, name, table, sql, sqlMode, signature);
+            definitions.remove(definition.key());
+            definitions.put(definition.key(), definition);
+        }
+        return definitions;
+    }
+
+    private static final int kindIndex(List<String> tokens) {
+        for (int i = 1; i < tokens.size(); i++) {
+            if (OBJECT_KINDS.contains(tokens.get(i).toUpperCase())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static final String key(String database, String kind, String name) {
+        return database + "\u0000" + kind + "\u0000" + name;
+    }
+}
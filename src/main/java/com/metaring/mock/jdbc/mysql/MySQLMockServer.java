@@ -0,0 +1,120 @@
+/**
+ *    Copyright 2019 MetaRing s.r.l.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.metaring.mock.jdbc.mysql;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+class MySQLMockServer {
+
+    private static final ConcurrentMap<String, CompletableFuture<MySQLMockServer>> SERVERS = new ConcurrentHashMap<>();
+
+    final MySQLMockedDatabaseInfo serverDatabaseInfo;
+
+    private final Map<String, CompletableFuture<MySQLMockedDatabaseInfo>> databases = new HashMap<>();
+
+    private MySQLMockServer(MySQLMockedDatabaseInfo serverDatabaseInfo) {
+        this.serverDatabaseInfo = serverDatabaseInfo;
+        CompletableFuture<MySQLMockedDatabaseInfo> loaded = CompletableFuture.completedFuture(serverDatabaseInfo);
+        for (String database : MySQLMockManager.databases(serverDatabaseInfo.mockProperties)) {
+            databases.put(database, loaded);
+        }
+    }
+
+    static final MySQLMockServer of(MySQLMockedDatabaseInfo mockedDatabaseInfo, MySQLMockProvisioning.Stage<Void> start) throws SQLException {
+        String serverKey = MySQLMockPropertyEnum.SERVER_KEY.getValue(mockedDatabaseInfo.mockProperties);
+        CompletableFuture<MySQLMockServer> starting = serverKey == null ? null : SERVERS.get(serverKey);
+        if (starting == null) {
+            CompletableFuture<MySQLMockServer> newStarting = new CompletableFuture<>();
+            starting = serverKey == null ? null : SERVERS.putIfAbsent(serverKey, newStarting);
+            if (starting == null) {
+                starting = newStarting;
+                try {
+                    start.run();
+                    newStarting.complete(new MySQLMockServer(mockedDatabaseInfo));
+                }
+                catch (Throwable e) {
+                    if (serverKey != null) {
+                        SERVERS.remove(serverKey, newStarting);
+                    }
+                    newStarting.completeExceptionally(e);
+                }
+            }
+        }
+        return MySQLMockProvisioning.await(starting);
+    }
+
+    void attach(MySQLMockedDatabaseInfo mockedDatabaseInfo) throws SQLException {
+        Object mockPort = serverDatabaseInfo.mockProperties.get(MySQLMockPropertyEnum.MOCK_PORT.getPropertyName());
+        if (mockPort != null) {
+            mockedDatabaseInfo.mockProperties.put(MySQLMockPropertyEnum.MOCK_PORT.getPropertyName(), mockPort);
+        }
+        mockedDatabaseInfo.rootFolder = serverDatabaseInfo.rootFolder;
+        mockedDatabaseInfo.binLocation = serverDatabaseInfo.binLocation;
+        mockedDatabaseInfo.tempInstance = serverDatabaseInfo.tempInstance;
+        mockedDatabaseInfo.daemonLease = serverDatabaseInfo.daemonLease;
+        mockedDatabaseInfo.mockedUrl = mockedDatabaseInfo.mockUrl();
+
+        CompletableFuture<MySQLMockedDatabaseInfo> loading = new CompletableFuture<>();
+        CompletableFuture<MySQLMockedDatabaseInfo> loaded;
+        List<String> pendingDatabases = new ArrayList<>();
+        synchronized (databases) {
+            loaded = databases.get(mockedDatabaseInfo.dbName);
+            if (loaded == null) {
+                for (String database : MySQLMockManager.databases(mockedDatabaseInfo.mockProperties)) {
+                    if (!databases.containsKey(database)) {
+                        databases.put(database, loading);
+                        pendingDatabases.add(database);
+                    }
+                }
+            }
+        }
+
+        if (loaded != null) {
+            MySQLMockedDatabaseInfo loadedDatabaseInfo = MySQLMockProvisioning.await(loaded);
+            mockedDatabaseInfo.dumpDBCommands = loadedDatabaseInfo.dumpDBCommands;
+            mockedDatabaseInfo.dumpFingerprint = loadedDatabaseInfo.dumpFingerprint;
+            mockedDatabaseInfo.dumpPath = loadedDatabaseInfo.dumpPath;
+            mockedDatabaseInfo.referenceData = loadedDatabaseInfo.referenceData;
+            System.err.println(String.format("MySQL Mock of '%s' shares the instance at %s.", mockedDatabaseInfo.dbName, serverDatabaseInfo.mockedUrl));
+            return;
+        }
+
+        try {
+            if (serverDatabaseInfo.daemonLease != null) {
+                throw new SQLException(String.format("MySQL Mock daemon of '%s' cannot load '%s' on demand, list every schema in '%s'.", serverDatabaseInfo.dbName, mockedDatabaseInfo.dbName, MySQLMockPropertyEnum.DATABASES.getPropertyName()));
+            }
+            MySQLMockManager.loadDatabases(serverDatabaseInfo, mockedDatabaseInfo, pendingDatabases);
+            loading.complete(mockedDatabaseInfo);
+        }
+        catch (SQLException | RuntimeException e) {
+            synchronized (databases) {
+                for (String database : pendingDatabases) {
+                    databases.remove(database, loading);
+                }
+            }
+            loading.completeExceptionally(e);
+            throw e;
+        }
+    }
+}
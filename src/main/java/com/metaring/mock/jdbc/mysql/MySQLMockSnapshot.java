@@ -0,0 +1,212 @@
+/**
+ *    Copyright 2019 MetaRing s.r.l.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.metaring.mock.jdbc.mysql;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+class MySQLMockSnapshot {
+
+    private static final String SNAPSHOTS_FOLDER = "snapshots";
+
+    private static final String STAGING_FOLDER = "mysqlmock-restore";
+
+    private static final String TABLES_QUERY = "SELECT TABLE_NAME, ENGINE, CREATE_OPTIONS FROM information_schema.TABLES WHERE TABLE_SCHEMA = ? AND TABLE_TYPE = 'BASE TABLE' ORDER BY TABLE_NAME";
+
+    private final Path snapshotPath;
+    private final Set<String> tables;
+    private final MySQLMockDirtyTables.Baseline baseline;
+
+    private MySQLMockSnapshot(Path snapshotPath, Set<String> tables, MySQLMockDirtyTables.Baseline baseline) {
+        this.snapshotPath = snapshotPath;
+        this.tables = tables;
+        this.baseline = baseline;
+    }
+
+    static final void snapshot(MySQLMockedDatabaseInfo mockedDatabaseInfo, String name) throws SQLException {
+        if (mockedDatabaseInfo.rootFolder == null) {
+            throw new SQLException(String.format("MySQL Mock of '%s' has no local data directory to snapshot.", mockedDatabaseInfo.dbName));
+        }
+        long start = System.nanoTime();
+        Path snapshotPath = mockedDatabaseInfo.rootFolder.toPath().resolve(SNAPSHOTS_FOLDER).resolve(MySQLMockFiles.sha256(name).substring(0, 16));
+        synchronized (mockedDatabaseInfo) {
+            Connection connection = mockedDatabaseInfo.maintenanceConnection();
+            Set<String> tables = tables(connection, mockedDatabaseInfo.dbName);
+            MySQLMockDirtyTables.Baseline baseline = mockedDatabaseInfo.dirtyTables == null ? null : mockedDatabaseInfo.dirtyTables.baseline();
+            mockedDatabaseInfo.snapshots.remove(name);
+            try {
+                MySQLMockFiles.delete(snapshotPath);
+                Files.createDirectories(snapshotPath);
+                if (!tables.isEmpty()) {
+                    try (Statement statement = connection.createStatement()) {
+                        List<String> qualifiedTables = new ArrayList<>();
+                        for (String table : tables) {
+                            qualifiedTables.add(MySQLMockSql.quote(mockedDatabaseInfo.dbName) + "." + MySQLMockSql.quote(table));
+                        }
+                        statement.execute("FLUSH TABLES " + String.join(", ", qualifiedTables) + " FOR EXPORT");
+                        try {
+                            MySQLMockFiles.copy(tableFiles(dataPath(mockedDatabaseInfo), tables), snapshotPath);
+                        }
+                        finally {
+                            statement.execute("UNLOCK TABLES");
+                        }
+                    }
+                }
+            }
+            catch (IOException e) {
+                throw new SQLException(String.format("Error while writing snapshot '%s' of '%s' to %s.", name, mockedDatabaseInfo.dbName, snapshotPath), e);
+            }
+            mockedDatabaseInfo.snapshots.put(name, new MySQLMockSnapshot(snapshotPath, tables, baseline));
+        }
+        System.err.println(String.format("MySQL Mock snapshot '%s' of '%s' taken in %d ms.", name, mockedDatabaseInfo.dbName, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+    }
+
+    static final void restore(MySQLMockedDatabaseInfo mockedDatabaseInfo, String name) throws SQLException {
+        MySQLMockSnapshot snapshot = mockedDatabaseInfo.snapshots.get(name);
+        if (snapshot == null) {
+            throw new SQLException(String.format("No MySQL Mock snapshot named '%s' exists for '%s'.", name, mockedDatabaseInfo.dbName));
+        }
+        long start = System.nanoTime();
+        MySQLMockDirtyTables dirtyTables = mockedDatabaseInfo.dirtyTables;
+        Set<String> restoredTables;
+        synchronized (mockedDatabaseInfo) {
+            Set<String> modifiedTables = dirtyTables == null ? null : dirtyTables.modifiedSince(snapshot.baseline);
+            if (modifiedTables == null) {
+                restoredTables = snapshot.tables;
+            }
+            else {
+                restoredTables = new TreeSet<>(modifiedTables);
+                restoredTables.retainAll(snapshot.tables);
+            }
+            if (!restoredTables.isEmpty()) {
+                long version = dirtyTables == null ? 0 : dirtyTables.modifying(restoredTables);
+                Connection connection = mockedDatabaseInfo.maintenanceConnection();
+                Path dataPath = dataPath(mockedDatabaseInfo);
+                Path stagingPath = dataPath.resolve(STAGING_FOLDER);
+                try {
+                    MySQLMockFiles.delete(stagingPath);
+                    MySQLMockFiles.copy(tableFiles(snapshot.snapshotPath, restoredTables), stagingPath);
+                    try {
+                        MySQLMockSql.execute(connection, alterTables(mockedDatabaseInfo.dbName, restoredTables, "DISCARD TABLESPACE"));
+                        for (Path stagedFile : tableFiles(stagingPath, restoredTables)) {
+                            Files.move(stagedFile, dataPath.resolve(stagedFile.getFileName().toString()), StandardCopyOption.ATOMIC_MOVE);
+                        }
+                        MySQLMockSql.execute(connection, alterTables(mockedDatabaseInfo.dbName, restoredTables, "IMPORT TABLESPACE"));
+                    }
+                    finally {
+                        MySQLMockSql.execute(connection, "SET FOREIGN_KEY_CHECKS=1");
+                    }
+                }
+                catch (IOException e) {
+                    throw new SQLException(String.format("Error while restoring snapshot '%s' of '%s'.", name, mockedDatabaseInfo.dbName), e);
+                }
+                finally {
+                    try {
+                        MySQLMockFiles.delete(stagingPath);
+                    }
+                    catch (IOException e) {
+                    }
+                }
+                if (dirtyTables != null) {
+                    if (modifiedTables == null) {
+                        dirtyTables.settle(snapshot.baseline, version);
+                    }
+                    else {
+                        dirtyTables.settle(snapshot.baseline, restoredTables, version);
+                    }
+                }
+            }
+        }
+        System.err.println(String.format("MySQL Mock snapshot '%s' of '%s' restored (%d of %d tables) in %d ms.", name, mockedDatabaseInfo.dbName, restoredTables.size(), snapshot.tables.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+    }
+
+    private static final Set<String> tables(Connection connection, String schemaName) throws SQLException {
+        Set<String> tables = new TreeSet<>();
+        try (PreparedStatement preparedStatement = connection.prepareStatement(TABLES_QUERY)) {
+            preparedStatement.setString(1, schemaName);
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    String table = resultSet.getString(1);
+                    String createOptions = resultSet.getString(3);
+                    if (!"InnoDB".equalsIgnoreCase(resultSet.getString(2)) || (createOptions != null && createOptions.toLowerCase().contains("partitioned"))) {
+                        throw new SQLException(String.format("Table '%s' of '%s' cannot be snapshotted: only non-partitioned InnoDB tables are supported.", table, schemaName));
+                    }
+                    tables.add(table);
+                }
+            }
+        }
+        try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery("SELECT @@innodb_file_per_table")) {
+            if (!tables.isEmpty() && resultSet.next() && !resultSet.getBoolean(1)) {
+                throw new SQLException("MySQL Mock snapshots require innodb_file_per_table to be enabled.");
+            }
+        }
+        return Collections.unmodifiableSet(tables);
+    }
+
+    private static final String alterTables(String schemaName, Collection<String> tables, String action) {
+        StringBuilder stringBuilder = new StringBuilder("SET FOREIGN_KEY_CHECKS=0");
+        for (String table : tables) {
+            stringBuilder.append(";ALTER TABLE ").append(MySQLMockSql.quote(schemaName)).append('.').append(MySQLMockSql.quote(table)).append(' ').append(action);
+        }
+        return stringBuilder.toString();
+    }
+
+    private static final Path dataPath(MySQLMockedDatabaseInfo mockedDatabaseInfo) {
+        return mockedDatabaseInfo.rootFolder.toPath().resolve("data").resolve(fileName(mockedDatabaseInfo.dbName));
+    }
+
+    private static final List<Path> tableFiles(Path folder, Collection<String> tables) throws SQLException {
+        List<Path> files = new ArrayList<>();
+        for (String table : tables) {
+            for (String extension : new String[] { ".ibd", ".cfg" }) {
+                Path file = folder.resolve(fileName(table) + extension);
+                if (!Files.exists(file)) {
+                    throw new SQLException(String.format("Tablespace file %s of table '%s' not found.", file, table));
+                }
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    private static final String fileName(String identifier) {
+        StringBuilder stringBuilder = new StringBuilder();
+        for (char c : identifier.toCharArray()) {
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_') {
+                stringBuilder.append(c);
+            }
+            else {
+                stringBuilder.append(String.format("@%04x", (int) c));
+            }
+        }
+        return stringBuilder.toString();
+    }
+}
@@ -0,0 +1,226 @@
+/**
+ *    Copyright 2019 MetaRing s.r.l.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.metaring.mock.jdbc.mysql;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+class MySQLMockSql {
+
+    static final List<String> tokens(String sql, int maxTokens) {
+        List<String> tokens = new ArrayList<>();
+        int length = sql.length();
+        int i = 0;
+        boolean qualify = false;
+        while (i < length && tokens.size() < maxTokens) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            if (c == '#' || (c == '-' && i + 2 < length && sql.charAt(i + 1) == '-' && Character.isWhitespace(sql.charAt(i + 2)))) {
+                while (i < length && sql.charAt(i) != '\n') {
+                    i++;
+                }
+                continue;
+            }
+            if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                i = end == -1 ? length : end + 2;
+                continue;
+            }
+            String token;
+            if (c == '`') {
+                int end = i + 1;
+                StringBuilder identifier = new StringBuilder();
+                while (end < length) {
+                    char e = sql.charAt(end);
+                    if (e == '`') {
+                        if (end + 1 < length && sql.charAt(end + 1) == '`') {
+                            identifier.append('`');
+                            end += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    identifier.append(e);
+                    end++;
+                }
+                token = identifier.toString();
+                i = end + 1;
+            }
+            else if (c == '\'' || c == '"') {
+                i = skipQuoted(sql, i);
+                token = "?";
+            }
+            else if (isWordCharacter(c)) {
+                int end = i;
+                while (end < length && isWordCharacter(sql.charAt(end))) {
+                    end++;
+                }
+                token = sql.substring(i, end);
+                i = end;
+            }
+            else {
+                if (c == '.' && !tokens.isEmpty()) {
+                    qualify = true;
+                    i++;
+                    continue;
+                }
+                token = String.valueOf(c);
+                i++;
+            }
+            if (qualify) {
+                tokens.set(tokens.size() - 1, tokens.get(tokens.size() - 1) + "." + token);
+                qualify = false;
+            }
+            else {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    static final boolean isMultiStatement(String sql) {
+        int length = sql.length();
+        for (int i = 0; i < length; i++) {
+            char c = sql.charAt(i);
+            if (c == '\'' || c == '"' || c == '`') {
+                i = skipQuoted(sql, i) - 1;
+            }
+            else if (c == ';') {
+                return !sql.substring(i + 1).trim().isEmpty();
+            }
+        }
+        return false;
+    }
+
+    static final List<String> split(String sql) {
+        List<String> statements = new ArrayList<>();
+        int length = sql.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            char c = sql.charAt(i);
+            if (c == '\'' || c == '"' || c == '`') {
+                i = skipQuoted(sql, i) - 1;
+            }
+            else if (c == ';') {
+                add(statements, sql.substring(start, i));
+                start = i + 1;
+            }
+        }
+        add(statements, sql.substring(start));
+        return statements;
+    }
+
+    private static final void add(List<String> statements, String statement) {
+        if (!statement.trim().isEmpty()) {
+            statements.add(statement);
+        }
+    }
+
+    static final <T> List<List<T>> dependencyLevels(Collection<T> items, Map<T, Set<T>> parents) {
+        List<List<T>> levels = new ArrayList<>();
+        Set<T> done = new HashSet<>();
+        List<T> pending = new ArrayList<>(items);
+        while (!pending.isEmpty()) {
+            List<T> level = new ArrayList<>();
+            for (T item : pending) {
+                if (done.containsAll(parents.getOrDefault(item, Collections.emptySet()))) {
+                    level.add(item);
+                }
+            }
+            if (level.isEmpty()) {
+                level.addAll(pending);
+            }
+            pending.removeAll(level);
+            done.addAll(level);
+            levels.add(level);
+        }
+        return levels;
+    }
+
+    static final void execute(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+            while (statement.getMoreResults() || statement.getUpdateCount() != -1) {
+            }
+        }
+    }
+
+    static final boolean isEmbedded(Connection connection) throws SQLException {
+        return MySQLMockEmbedded.PRODUCT_NAME.equals(connection.getMetaData().getDatabaseProductName());
+    }
+
+    static final String database(Connection connection) throws SQLException {
+        return isEmbedded(connection) ? connection.getSchema() : connection.getCatalog();
+    }
+
+    static final String foreignKeyChecks(boolean embedded, boolean enabled) {
+        if (embedded) {
+            return "SET REFERENTIAL_INTEGRITY " + (enabled ? "TRUE" : "FALSE");
+        }
+        return "SET FOREIGN_KEY_CHECKS=" + (enabled ? "1" : "0");
+    }
+
+    static final String truncateTable(boolean embedded, String schemaName, String tableName) {
+        return "TRUNCATE TABLE " + quote(schemaName) + "." + quote(tableName) + (embedded ? " RESTART IDENTITY" : "");
+    }
+
+    static final String tableName(String qualifiedName) {
+        int dot = qualifiedName.lastIndexOf('.');
+        return dot == -1 ? qualifiedName : qualifiedName.substring(dot + 1);
+    }
+
+    static final String quote(String identifier) {
+        return "`" + identifier.replace("`", "``") + "`";
+    }
+
+    static final int skipQuoted(String sql, int start) {
+        char quote = sql.charAt(start);
+        int length = sql.length();
+        int i = start + 1;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (c == '\\' && quote != '`') {
+                i += 2;
+                continue;
+            }
+            if (c == quote) {
+                if (i + 1 < length && sql.charAt(i + 1) == quote) {
+                    i += 2;
+                    continue;
+                }
+                return i + 1;
+            }
+            i++;
+        }
+        return length;
+    }
+
+    private static final boolean isWordCharacter(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '@';
+    }
+}
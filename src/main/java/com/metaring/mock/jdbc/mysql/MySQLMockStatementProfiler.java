@@ -0,0 +1,415 @@
+/**
+ *    Copyright 2019 MetaRing s.r.l.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.metaring.mock.jdbc.mysql;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Pattern;
+
+class MySQLMockStatementProfiler implements MySQLMockStatementListener {
+
+    static final class Histogram {
+
+        private static final int SUB_BUCKET_BITS = 5;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void record(long nanos) {
+            counts.incrementAndGet(index(nanos));
+            totalNanos.addAndGet(nanos);
+            long max;
+            while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {
+            }
+        }
+
+        private Snapshot drain() {
+            long[] drained = new long[BUCKETS];
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                drained[i] = counts.getAndSet(i, 0);
+                count += drained[i];
+            }
+            return new Snapshot(drained, count, totalNanos.getAndSet(0), maxNanos.getAndSet(0));
+        }
+
+        static final int index(long nanos) {
+            long value = Math.max(0, nanos);
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+            return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift & (SUB_BUCKETS - 1));
+        }
+
+        static final long upperBound(int index) {
+            if (index < SUB_BUCKETS) {
+                return index;
+            }
+            int shift = index / SUB_BUCKETS - 1;
+            return ((long) (SUB_BUCKETS + index % SUB_BUCKETS + 1) << shift) - 1;
+        }
+    }
+
+    private static final class Snapshot {
+
+        private final long[] counts;
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+        private long slowestNanos = -1;
+        private String slowestSql;
+        private Object[] slowestParameters;
+        private String plan;
+        private boolean fullScan;
+
+        private Snapshot(long[] counts, long count, long totalNanos, long maxNanos) {
+            this.counts = counts;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        private long percentile(double percentile) {
+            long target = Math.max(1, (long) Math.ceil(percentile * count));
+            long cumulative = 0;
+            for (int i = 0; i < counts.length; i++) {
+                cumulative += counts[i];
+                if (cumulative >= target) {
+                    return Math.min(Histogram.upperBound(i), maxNanos);
+                }
+            }
+            return maxNanos;
+        }
+    }
+
+    private static final class Shape {
+
+        private final String shape;
+        private final boolean explainable;
+        private final Histogram histogram = new Histogram();
+        private volatile long slowestNanos = -1;
+        private volatile String slowestSql;
+        private volatile Object[] slowestParameters;
+
+        private Shape(String shape) {
+            this.shape = shape;
+            this.explainable = EXPLAINABLE.matcher(shape).lookingAt();
+        }
+
+        private void record(String sql, Object[] parameters, long nanos) {
+            histogram.record(nanos);
+            if (nanos > slowestNanos) {
+                synchronized (this) {
+                    if (nanos > slowestNanos) {
+                        slowestNanos = nanos;
+                        slowestSql = sql;
+                        slowestParameters = parameters == null ? null : parameters.clone();
+                    }
+                }
+            }
+        }
+
+        private synchronized Snapshot drain() {
+            Snapshot snapshot = histogram.drain();
+            snapshot.slowestNanos = slowestNanos;
+            snapshot.slowestSql = slowestSql;
+            snapshot.slowestParameters = slowestParameters;
+            slowestNanos = -1;
+            slowestSql = null;
+            slowestParameters = null;
+            return snapshot;
+        }
+    }
+
+    private static final long DEFAULT_SLOW_STATEMENT_MILLIS = 50;
+    private static final int MAX_CACHED_SHAPES = 10000;
+    private static final Pattern EXPLAINABLE = Pattern.compile("(?i)\\(*(SELECT|UPDATE|DELETE|INSERT|REPLACE|WITH)\\b");
+    private static final Pattern VALUE_LIST = Pattern.compile("\\(\\?(?:, \\?)*\\)");
+    private static final Pattern REPEATED_VALUE_LISTS = Pattern.compile("\\(\\?\\+\\)(?:, \\(\\?\\+\\))+");
+
+    private final MySQLMockedDatabaseInfo mockedDatabaseInfo;
+    private final long slowStatementNanos;
+    private final Map<String, String> shapesBySql = new ConcurrentHashMap<>();
+    private final Map<String, Shape> shapes = new ConcurrentHashMap<>();
+
+    MySQLMockStatementProfiler(MySQLMockedDatabaseInfo mockedDatabaseInfo) {
+        this.mockedDatabaseInfo = mockedDatabaseInfo;
+        this.slowStatementNanos = TimeUnit.MILLISECONDS.toNanos(MySQLMockPropertyEnum.SLOW_STATEMENT_MILLIS.getLong(mockedDatabaseInfo.mockProperties, DEFAULT_SLOW_STATEMENT_MILLIS));
+    }
+
+    @Override
+    public void executing(String sql) {
+    }
+
+    @Override
+    public void executed(String sql, Object[] parameters, long nanos) {
+        String shape = shapesBySql.get(sql);
+        if (shape == null) {
+            shape = shape(sql);
+            if (shapesBySql.size() < MAX_CACHED_SHAPES) {
+                shapesBySql.put(sql, shape);
+            }
+        }
+        Shape statementShape = shapes.get(shape);
+        if (statementShape == null) {
+            statementShape = shapes.computeIfAbsent(shape, Shape::new);
+        }
+        statementShape.record(sql, parameters, nanos);
+    }
+
+    static final String report(MySQLMockedDatabaseInfo mockedDatabaseInfo, String testName) throws SQLException {
+        MySQLMockStatementProfiler statementProfiler = mockedDatabaseInfo.statementProfiler;
+        if (statementProfiler == null) {
+            throw new SQLException(String.format("Statement profiling is not enabled for '%s', set '%s' to true.", mockedDatabaseInfo.dbName, MySQLMockPropertyEnum.STATEMENT_PROFILING.getPropertyName()));
+        }
+        String report = statementProfiler.report(testName);
+        String reportFolder = MySQLMockPropertyEnum.STATEMENT_REPORT_FOLDER.getValue(mockedDatabaseInfo.mockProperties);
+        if (reportFolder == null) {
+            System.err.print(report);
+            return report;
+        }
+        Path reportPath = Paths.get(reportFolder).resolve(testName.replaceAll("[^A-Za-z0-9._-]", "_") + ".txt");
+        try {
+            Files.createDirectories(reportPath.toAbsolutePath().getParent());
+            try (Writer writer = Files.newBufferedWriter(reportPath, StandardCharsets.UTF_8)) {
+                writer.write(report);
+            }
+        }
+        catch (IOException e) {
+            System.err.println(String.format("MySQL Mock could not write the statement report to %s: %s", reportPath, e.getMessage()));
+        }
+        return report;
+    }
+
+    private String report(String testName) {
+        List<Shape> reported = new ArrayList<>();
+        Map<Shape, Snapshot> snapshots = new IdentityHashMap<>();
+        long count = 0;
+        long totalNanos = 0;
+        for (Shape shape : shapes.values()) {
+            Snapshot snapshot = shape.drain();
+            if (snapshot.count == 0) {
+                continue;
+            }
+            reported.add(shape);
+            snapshots.put(shape, snapshot);
+            count += snapshot.count;
+            totalNanos += snapshot.totalNanos;
+        }
+        reported.sort((first, second) -> Long.compare(snapshots.get(second).totalNanos, snapshots.get(first).totalNanos));
+
+        List<Shape> diagnosed = new ArrayList<>();
+        for (Shape shape : reported) {
+            Snapshot snapshot = snapshots.get(shape);
+            if (shape.explainable && snapshot.slowestSql != null) {
+                explain(snapshot);
+            }
+            if (snapshot.fullScan || snapshot.percentile(0.99) >= slowStatementNanos) {
+                diagnosed.add(shape);
+            }
+        }
+
+        StringBuilder report = new StringBuilder(String.format("MySQL Mock statement report of %s on '%s': %d statements, %d shapes, %s ms%n", testName, mockedDatabaseInfo.dbName, count, reported.size(), millis(totalNanos)));
+        report.append(String.format("%10s %10s %10s %10s %10s %12s  %s%n", "count", "p50 ms", "p95 ms", "p99 ms", "max ms", "total ms", "shape"));
+        for (Shape shape : reported) {
+            Snapshot snapshot = snapshots.get(shape);
+            report.append(String.format("%10d %10s %10s %10s %10s %12s  %s%n", snapshot.count, millis(snapshot.percentile(0.5)), millis(snapshot.percentile(0.95)), millis(snapshot.percentile(0.99)), millis(snapshot.maxNanos), millis(snapshot.totalNanos), shape.shape));
+        }
+        if (!diagnosed.isEmpty()) {
+            report.append(String.format("%nStatements slower than %s ms at p99 or scanning whole tables:%n", millis(slowStatementNanos)));
+            for (Shape shape : diagnosed) {
+                Snapshot snapshot = snapshots.get(shape);
+                report.append(String.format("%n  %s%n    slowest (%s ms): %s%n", shape.shape, millis(snapshot.slowestNanos), inline(snapshot.slowestSql, snapshot.slowestParameters)));
+                if (snapshot.plan != null) {
+                    report.append(snapshot.plan);
+                }
+            }
+        }
+        return report.toString();
+    }
+
+    private void explain(Snapshot snapshot) {
+        String sql = inline(snapshot.slowestSql, snapshot.slowestParameters);
+        StringBuilder plan = new StringBuilder();
+        boolean fullScan = false;
+        synchronized (mockedDatabaseInfo) {
+            try (Statement statement = mockedDatabaseInfo.maintenanceConnection().createStatement(); ResultSet resultSet = statement.executeQuery("EXPLAIN " + sql)) {
+                ResultSetMetaData metaData = resultSet.getMetaData();
+                while (resultSet.next()) {
+                    plan.append("    ");
+                    for (int column = 1; column <= metaData.getColumnCount(); column++) {
+                        String value = resultSet.getString(column);
+                        if (value == null) {
+                            continue;
+                        }
+                        String label = metaData.getColumnLabel(column);
+                        if (label.equalsIgnoreCase("type") && value.equalsIgnoreCase("ALL") || value.contains(".tableScan")) {
+                            fullScan = true;
+                        }
+                        plan.append(metaData.getColumnCount() == 1 ? value.replace("\n", "\n    ") : label + "=" + value + " ");
+                    }
+                    plan.append(String.format("%n"));
+                }
+            }
+            catch (SQLException | RuntimeException e) {
+                plan.append(String.format("    EXPLAIN failed: %s%n", e.getMessage()));
+            }
+        }
+        snapshot.fullScan = fullScan;
+        snapshot.plan = plan.toString();
+    }
+
+    static final String shape(String sql) {
+        StringBuilder shape = new StringBuilder(sql.length());
+        int length = sql.length();
+        int i = 0;
+        boolean space = false;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (c == '\'' || c == '"') {
+                i = MySQLMockSql.skipQuoted(sql, i);
+                append(shape, "?", space);
+                space = false;
+            }
+            else if (c == '`') {
+                int end = MySQLMockSql.skipQuoted(sql, i);
+                append(shape, sql.substring(i, end), space);
+                space = false;
+                i = end;
+            }
+            else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? length : end + 2;
+                space = true;
+            }
+            else if (c == '#' || c == '-' && sql.startsWith("-- ", i)) {
+                int end = sql.indexOf('\n', i);
+                i = end < 0 ? length : end + 1;
+                space = true;
+            }
+            else if (Character.isWhitespace(c)) {
+                i++;
+                space = true;
+            }
+            else if (Character.isDigit(c) && (shape.length() == 0 || space || !isIdentifierPart(shape.charAt(shape.length() - 1)))) {
+                while (i < length && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+                    i++;
+                }
+                append(shape, "?", space);
+                space = false;
+            }
+            else {
+                if (c == ',' || c == ')') {
+                    space = false;
+                }
+                append(shape, String.valueOf(c), space && shape.length() > 0 && shape.charAt(shape.length() - 1) != '(');
+                space = c == ',';
+                i++;
+            }
+        }
+        String normalized = VALUE_LIST.matcher(shape).replaceAll("(?+)");
+        return REPEATED_VALUE_LISTS.matcher(normalized).replaceAll("(?+), ...");
+    }
+
+    private static final boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '@';
+    }
+
+    private static final void append(StringBuilder shape, String token, boolean space) {
+        if (space && shape.length() > 0) {
+            shape.append(' ');
+        }
+        shape.append(token);
+    }
+
+    static final String inline(String sql, Object[] parameters) {
+        if (sql == null || parameters == null) {
+            return sql;
+        }
+        StringBuilder inlined = new StringBuilder(sql.length() + 16 * parameters.length);
+        int parameter = 0;
+        int i = 0;
+        while (i < sql.length()) {
+            char c = sql.charAt(i);
+            if (c == '\'' || c == '"' || c == '`') {
+                int end = MySQLMockSql.skipQuoted(sql, i);
+                inlined.append(sql, i, end);
+                i = end;
+                continue;
+            }
+            if (c == '?') {
+                inlined.append(literal(parameter < parameters.length ? parameters[parameter] : null));
+                parameter++;
+            }
+            else {
+                inlined.append(c);
+            }
+            i++;
+        }
+        return inlined.toString();
+    }
+
+    private static final String literal(Object value) {
+        if (value == null) {
+            return "NULL";
+        }
+        if (value instanceof Boolean) {
+            return ((Boolean) value) ? "1" : "0";
+        }
+        if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).toPlainString();
+        }
+        if (value instanceof Number) {
+            return value.toString();
+        }
+        if (value instanceof byte[]) {
+            StringBuilder hex = new StringBuilder("X'");
+            for (byte b : (byte[]) value) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.append('\'').toString();
+        }
+        return "'" + value.toString().replace("\\", "\\\\").replace("'", "''") + "'";
+    }
+
+    private static final String millis(long nanos) {
+        return BigDecimal.valueOf(nanos).movePointLeft(6).setScale(nanos < 10000000 ? 3 : 1, RoundingMode.HALF_UP).toPlainString();
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ *    Copyright 2019 MetaRing s.r.l.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.metaring.mock.jdbc.mysql;
+
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class MySQLMockTenants {
+
+    private static final long DEFAULT_TENANT_TIMEOUT = 30000;
+
+    private final MySQLMockedDatabaseInfo templateDatabaseInfo;
+    private final int maxSize;
+    private final long timeout;
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<MySQLMockedDatabaseInfo> idleTenants = new LinkedBlockingDeque<>();
+    private final Map<String, MySQLMockedDatabaseInfo> tenantsByUrl = new ConcurrentHashMap<>();
+    private final AtomicInteger tenantCounter = new AtomicInteger();
+    private final Map<Thread, MySQLMockedDatabaseInfo> leasedTenants = new ConcurrentHashMap<>();
+
+    MySQLMockTenants(MySQLMockedDatabaseInfo templateDatabaseInfo, int maxSize) {
+        this.templateDatabaseInfo = templateDatabaseInfo;
+        this.maxSize = maxSize;
+        this.timeout = MySQLMockPropertyEnum.POOL_TIMEOUT.getLong(templateDatabaseInfo.mockProperties, DEFAULT_TENANT_TIMEOUT);
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    MySQLMockedDatabaseInfo lease() throws SQLException {
+        Thread thread = Thread.currentThread();
+        MySQLMockedDatabaseInfo tenantDatabaseInfo = leasedTenants.get(thread);
+        if (tenantDatabaseInfo != null) {
+            return tenantDatabaseInfo;
+        }
+        reclaim();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(timeout, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a MySQL Mock tenant schema", e);
+        }
+        if (!acquired) {
+            throw new SQLException(String.format("No tenant schema of '%s' available within %d ms (%d tenants).", templateDatabaseInfo.dbName, timeout, maxSize));
+        }
+        try {
+            tenantDatabaseInfo = idleTenants.pollFirst();
+            if (tenantDatabaseInfo == null) {
+                tenantDatabaseInfo = create();
+            }
+        }
+        catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+        leasedTenants.put(thread, tenantDatabaseInfo);
+        return tenantDatabaseInfo;
+    }
+
+    boolean isLeased() {
+        return leasedTenants.containsKey(Thread.currentThread());
+    }
+
+    void release() {
+        MySQLMockedDatabaseInfo tenantDatabaseInfo = leasedTenants.remove(Thread.currentThread());
+        if (tenantDatabaseInfo != null) {
+            release(tenantDatabaseInfo);
+        }
+    }
+
+    private void reclaim() {
+        for (Map.Entry<Thread, MySQLMockedDatabaseInfo> leasedTenant : leasedTenants.entrySet()) {
+            if (!leasedTenant.getKey().isAlive() && leasedTenants.remove(leasedTenant.getKey(), leasedTenant.getValue())) {
+                System.err.println(String.format("MySQL Mock reclaiming tenant schema '%s' leased by terminated thread '%s'.", leasedTenant.getValue().dbName, leasedTenant.getKey().getName()));
+                release(leasedTenant.getValue());
+            }
+        }
+    }
+
+    private void release(MySQLMockedDatabaseInfo tenantDatabaseInfo) {
+        MySQLMockProvisioning.EXECUTOR.execute(() -> {
+            try {
+                reset(tenantDatabaseInfo);
+                idleTenants.offerFirst(tenantDatabaseInfo);
+            }
+            catch (SQLException | RuntimeException e) {
+                System.err.println(String.format("MySQL Mock discarding tenant schema '%s' after a failed reset: %s", tenantDatabaseInfo.dbName, e.getMessage()));
+                tenantsByUrl.remove(tenantDatabaseInfo.mockedUrl);
+            }
+            finally {
+                permits.release();
+            }
+        });
+    }
+
+    MySQLMockedDatabaseInfo find(String url) {
+        return tenantsByUrl.get(url);
+    }
+
+    private MySQLMockedDatabaseInfo create() throws SQLException {
+        MySQLMockedDatabaseInfo tenantDatabaseInfo = templateDatabaseInfo.tenant(templateDatabaseInfo.dbName + (templateDatabaseInfo.daemonLease == null ? "" : "_" + templateDatabaseInfo.daemonLease) + "_w" + tenantCounter.incrementAndGet());
+        MySQLMockManager.loadTenant(templateDatabaseInfo, tenantDatabaseInfo);
+        tenantsByUrl.put(tenantDatabaseInfo.mockedUrl, tenantDatabaseInfo);
+        return tenantDatabaseInfo;
+    }
+
+    private static final void reset(MySQLMockedDatabaseInfo tenantDatabaseInfo) throws SQLException {
+        MySQLMockDirtyTables dirtyTables = tenantDatabaseInfo.dirtyTables;
+        synchronized (tenantDatabaseInfo) {
+            if (dirtyTables != null && dirtyTables.truncate(tenantDatabaseInfo, tenantDatabaseInfo.maintenanceConnection(), tenantDatabaseInfo.dbName)) {
+                return;
+            }
+            MySQLMockUtilities.resetDatabase(tenantDatabaseInfo.maintenanceConnection(), tenantDatabaseInfo);
+        }
+    }
+}
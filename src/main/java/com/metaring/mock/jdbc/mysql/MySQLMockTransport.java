@@ -0,0 +1,108 @@
+/**
+ *    Copyright 2019 MetaRing s.r.l.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.metaring.mock.jdbc.mysql;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Properties;
+
+import com.metaring.java.process.fork.JavaChildProcess;
+
+enum MySQLMockTransport {
+
+    TCP,
+
+    SOCKET;
+
+    private static final String UNIX_SOCKET_CLASS_NAME = "org.newsclub.net.unix.AFUNIXSocket";
+    private static final String UNIX_SOCKET_ADDRESS_CLASS_NAME = "org.newsclub.net.unix.AFUNIXSocketAddress";
+    private static final String SOCKET_FACTORY_CLASS_NAME = "org.newsclub.net.mysql.AFUNIXDatabaseSocketFactory";
+    private static final String SOCKET_FACTORY_CJ_CLASS_NAME = "org.newsclub.net.mysql.AFUNIXDatabaseSocketFactoryCJ";
+    private static final String SOCKET_FILE_PROPERTY = "junixsocket.file";
+
+    static final MySQLMockTransport of(Properties properties) {
+        String transport = MySQLMockPropertyEnum.TRANSPORT.getValue(properties);
+        if (transport == null) {
+            return TCP;
+        }
+        for (MySQLMockTransport mockTransport : values()) {
+            if (mockTransport.name().equalsIgnoreCase(transport)) {
+                return mockTransport;
+            }
+        }
+        throw new RuntimeException(String.format("Unknown MySQL Mock transport '%s', expected one of %s.", transport, Arrays.toString(values()).toLowerCase()));
+    }
+
+    void check() throws SQLException {
+        if (this != SOCKET) {
+            return;
+        }
+        if (JavaChildProcess.IS_WINDOWS) {
+            throw new SQLException("MySQL Mock socket transport is not available on Windows.");
+        }
+        try {
+            Class.forName(socketFactoryClassName());
+        }
+        catch (ClassNotFoundException e) {
+            throw new SQLException(String.format("MySQL Mock socket transport requires junixsocket-mysql on the classpath (%s not found).", socketFactoryClassName()), e);
+        }
+    }
+
+    String urlParameters(File rootFolder) {
+        if (this != SOCKET || rootFolder == null) {
+            return "";
+        }
+        return String.format("?socketFactory=%s&%s=%s", socketFactoryClassName(), SOCKET_FILE_PROPERTY, MySQLMockManager.socketFile(rootFolder).getAbsolutePath().replace("\\", "/"));
+    }
+
+    static final Socket connect(File socketFile, int timeout) throws IOException {
+        try {
+            Class<?> socketAddressClass = Class.forName(UNIX_SOCKET_ADDRESS_CLASS_NAME);
+            SocketAddress socketAddress;
+            try {
+                socketAddress = (SocketAddress) socketAddressClass.getMethod("of", File.class).invoke(null, socketFile);
+            }
+            catch (NoSuchMethodException e) {
+                socketAddress = (SocketAddress) socketAddressClass.getConstructor(File.class).newInstance(socketFile);
+            }
+            Socket socket = (Socket) Class.forName(UNIX_SOCKET_CLASS_NAME).getMethod("newInstance").invoke(null);
+            try {
+                socket.connect(socketAddress, timeout);
+            }
+            catch (IOException | RuntimeException e) {
+                socket.close();
+                throw e;
+            }
+            return socket;
+        }
+        catch (InvocationTargetException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+        catch (ReflectiveOperationException e) {
+            throw new IOException("junixsocket is not available", e);
+        }
+    }
+
+    private static final String socketFactoryClassName() {
+        return Driver.MYSQL_ORIGINAL_DRIVER.getMajorVersion() >= 8 ? SOCKET_FACTORY_CJ_CLASS_NAME : SOCKET_FACTORY_CLASS_NAME;
+    }
+}
@@ -21,7 +21,11 @@ import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
 
 public class MySQLMockUtilities {
 
@@ -29,29 +33,122 @@ public class MySQLMockUtilities {
         return Driver.getConfigurationConnection();
     }
 
+    public static final Map<String, MySQLMockConnectionPoolMetrics> getConnectionPoolMetrics() {
+        return MySQLMockConnectionPool.allMetrics();
+    }
+
+    public static final MySQLMockIsolationScope beginIsolationScope() throws SQLException {
+        return Driver.getConfigurationIsolationScope();
+    }
+
+    public static final MySQLMockIsolationScope beginIsolationScope(String url, Properties info) throws SQLException {
+        return new Driver().isolationScope(url, info);
+    }
+
+    public static final void releaseTenant() {
+        for (CompletableFuture<MySQLMockedDatabaseInfo> mocking : Driver.alreadyMockedDatabases.values()) {
+            if (mocking.isDone() && !mocking.isCompletedExceptionally() && mocking.join().tenants != null) {
+                mocking.join().tenants.release();
+            }
+        }
+    }
+
+    public static final String statementReport(Connection connection, String testName) throws SQLException {
+        return MySQLMockStatementProfiler.report(mockedDatabaseInfo(connection), testName);
+    }
+
+    public static final String statementReport(Connection connection, Class<?> testClass) throws SQLException {
+        return statementReport(connection, testClass.getName());
+    }
+
+    public static final void snapshot(Connection connection, String name) throws SQLException {
+        MySQLMockSnapshot.snapshot(mockedDatabaseInfo(connection), name);
+    }
+
+    public static final void restore(Connection connection, String name) throws SQLException {
+        MySQLMockSnapshot.restore(mockedDatabaseInfo(connection), name);
+    }
+
     public static final void truncateDatabase(Connection connection) throws SQLException {
         truncateDatabase(connection, null);
     }
 
     public static final void truncateDatabase(Connection connection, List<String> afterTruncateQueries) throws SQLException {
         String schemaName = connection.getMetaData().getURL();
-        schemaName = schemaName.substring(schemaName.lastIndexOf("/") + 1);
-        Statement statement = connection.createStatement();
-        statement.executeUpdate("USE " + schemaName);
-        statement.executeUpdate("SET FOREIGN_KEY_CHECKS=0");
-        DatabaseMetaData databaseMetaData = connection.getMetaData();
-        ResultSet resultSet = databaseMetaData.getTables(connection.getCatalog(), null, "%", new String[] {"TABLE"});
-        while (resultSet.next()) {
-            statement.executeUpdate(String.format("TRUNCATE TABLE %s.%s", schemaName, resultSet.getString(3)));
+        if (MySQLMockSql.isEmbedded(connection)) {
+            schemaName = connection.getSchema();
+        }
+        else {
+            if (schemaName.contains("?")) {
+                schemaName = schemaName.substring(0, schemaName.indexOf("?"));
+            }
+            schemaName = schemaName.substring(schemaName.lastIndexOf("/") + 1);
+        }
+        MySQLMockedDatabaseInfo mockedDatabaseInfo = MySQLMockConnectionInterceptor.mockedDatabaseInfo(connection);
+        MySQLMockDirtyTables dirtyTables = mockedDatabaseInfo == null || mockedDatabaseInfo.recorder != null ? null : mockedDatabaseInfo.dirtyTables;
+        Connection physicalConnection = dirtyTables == null ? null : MySQLMockConnectionInterceptor.physicalConnection(connection);
+        if (physicalConnection == null || !dirtyTables.truncate(mockedDatabaseInfo, physicalConnection, schemaName)) {
+            long version = dirtyTables == null ? 0 : dirtyTables.modifyingAll();
+            truncateAllTables(connection, schemaName);
+            if (mockedDatabaseInfo != null && mockedDatabaseInfo.referenceData != null) {
+                synchronized (mockedDatabaseInfo) {
+                    mockedDatabaseInfo.referenceData.restore(mockedDatabaseInfo.maintenanceConnection(), schemaName, null);
+                }
+            }
+            if (dirtyTables != null) {
+                dirtyTables.truncatedAll(version);
+            }
         }
-        statement.executeUpdate("SET FOREIGN_KEY_CHECKS=1");
-        resultSet.close();
 
         if (afterTruncateQueries != null && afterTruncateQueries.size() > 0) {
+            Statement statement = connection.createStatement();
             for (String afterTruncateQuery : afterTruncateQueries) {
                 statement.executeUpdate(afterTruncateQuery.trim());
             }
+            statement.close();
+        }
+    }
+
+    public static final void loadFixtures(Connection connection, String... fixtures) throws SQLException {
+        loadFixtures(connection, Arrays.asList(fixtures));
+    }
+
+    public static final void loadFixtures(Connection connection, List<String> fixtures) throws SQLException {
+        MySQLMockFixtures.load(connection, fixtures);
+    }
+
+    private static final MySQLMockedDatabaseInfo mockedDatabaseInfo(Connection connection) throws SQLException {
+        MySQLMockedDatabaseInfo mockedDatabaseInfo = MySQLMockConnectionInterceptor.mockedDatabaseInfo(connection);
+        if (mockedDatabaseInfo == null) {
+            throw new SQLException(String.format("Connection to '%s' does not belong to a MySQL Mock.", connection.getMetaData().getURL()));
         }
+        return mockedDatabaseInfo;
+    }
+
+    static final void resetDatabase(Connection connection, MySQLMockedDatabaseInfo mockedDatabaseInfo) throws SQLException {
+        MySQLMockDirtyTables dirtyTables = mockedDatabaseInfo.dirtyTables;
+        long version = dirtyTables == null ? 0 : dirtyTables.modifyingAll();
+        truncateAllTables(connection, mockedDatabaseInfo.dbName);
+        if (mockedDatabaseInfo.referenceData != null) {
+            mockedDatabaseInfo.referenceData.restore(connection, mockedDatabaseInfo.dbName, null);
+        }
+        if (dirtyTables != null) {
+            dirtyTables.truncatedAll(version);
+        }
+    }
+
+    static final void truncateAllTables(Connection connection, String schemaName) throws SQLException {
+        boolean embedded = MySQLMockSql.isEmbedded(connection);
+        Statement statement = connection.createStatement();
+        statement.executeUpdate(embedded ? "SET SCHEMA " + MySQLMockSql.quote(schemaName) : "USE " + schemaName);
+        statement.executeUpdate(MySQLMockSql.foreignKeyChecks(embedded, false));
+        DatabaseMetaData databaseMetaData = connection.getMetaData();
+        ResultSet resultSet = embedded ? databaseMetaData.getTables(null, schemaName, "%", new String[] {"TABLE", "BASE TABLE"}) : databaseMetaData.getTables(connection.getCatalog(), null, "%", new String[] {"TABLE"});
+        while (resultSet.next()) {
+            statement.executeUpdate(embedded ? MySQLMockSql.truncateTable(true, schemaName, resultSet.getString(3)) : String.format("TRUNCATE TABLE %s.%s", schemaName, resultSet.getString(3)));
+        }
+        statement.executeUpdate(MySQLMockSql.foreignKeyChecks(embedded, true));
+        resultSet.close();
         statement.close();
     }
 }
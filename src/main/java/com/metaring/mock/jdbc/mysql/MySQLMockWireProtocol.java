@@ -0,0 +1,285 @@
+/**
+ *    Copyright 2019 MetaRing s.r.l.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package com.metaring.mock.jdbc.mysql;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Properties;
+
+class MySQLMockWireProtocol {
+
+    static final int HEADER_LENGTH = 4;
+    static final int MAX_PAYLOAD_LENGTH = 0xFFFFFF;
+
+    static final byte COM_QUIT = 0x01;
+    static final byte COM_INIT_DB = 0x02;
+    static final byte COM_QUERY = 0x03;
+    static final byte COM_PING = 0x0E;
+    static final byte COM_STMT_PREPARE = 0x16;
+    static final byte COM_STMT_EXECUTE = 0x17;
+    static final byte COM_STMT_SEND_LONG_DATA = 0x18;
+    static final byte COM_STMT_CLOSE = 0x19;
+    static final byte COM_STMT_RESET = 0x1A;
+    static final byte COM_RESET_CONNECTION = 0x1F;
+
+    private static final int CLIENT_CONNECT_WITH_DB = 1 << 3;
+    private static final int CLIENT_COMPRESS = 1 << 5;
+    private static final int CLIENT_SSL = 1 << 11;
+    private static final int CLIENT_SECURE_CONNECTION = 1 << 15;
+    private static final int CLIENT_PLUGIN_AUTH_LENENC_CLIENT_DATA = 1 << 21;
+    private static final int CLIENT_DEPRECATE_EOF = 1 << 24;
+    private static final int CLIENT_ZSTD_COMPRESSION = 1 << 26;
+    private static final int CLIENT_QUERY_ATTRIBUTES = 1 << 27;
+    private static final int UNSUPPORTED_CAPABILITIES = CLIENT_COMPRESS | CLIENT_SSL | CLIENT_ZSTD_COMPRESSION | CLIENT_QUERY_ATTRIBUTES;
+
+    private static final int SERVER_STATUS_AUTOCOMMIT = 0x0002;
+    private static final int SERVER_MORE_RESULTS_EXISTS = 0x0008;
+
+    private static final int ER_UNKNOWN_ERROR = 1105;
+
+    static final Properties plainProperties(Properties cleanProperties) {
+        Properties properties = new Properties();
+        properties.putAll(cleanProperties);
+        properties.put("useSSL", "false");
+        properties.put("sslMode", "DISABLED");
+        properties.put("useCompression", "false");
+        return properties;
+    }
+
+    static final byte[] readPacket(InputStream inputStream) throws IOException {
+        byte[] header = new byte[HEADER_LENGTH];
+        int read = inputStream.read(header, 0, 1);
+        if (read == -1) {
+            return null;
+        }
+        readFully(inputStream, header, 1, HEADER_LENGTH - 1);
+        byte[] packet = Arrays.copyOf(header, HEADER_LENGTH + ((header[0] & 0xFF) | (header[1] & 0xFF) << 8 | (header[2] & 0xFF) << 16));
+        readFully(inputStream, packet, HEADER_LENGTH, packet.length - HEADER_LENGTH);
+        return packet;
+    }
+
+    private static final void readFully(InputStream inputStream, byte[] buffer, int offset, int length) throws IOException {
+        while (length > 0) {
+            int read = inputStream.read(buffer, offset, length);
+            if (read == -1) {
+                throw new EOFException("MySQL connection closed in the middle of a packet");
+            }
+            offset += read;
+            length -= read;
+        }
+    }
+
+    static final int payloadLength(byte[] packet) {
+        return packet.length - HEADER_LENGTH;
+    }
+
+    static final int handshakeCapabilities(byte[] packet) {
+        int position = capabilitiesPosition(packet);
+        return (packet[position] & 0xFF) | (packet[position + 1] & 0xFF) << 8 | (packet[position + 5] & 0xFF) << 16 | (packet[position + 6] & 0xFF) << 24;
+    }
+
+    static final void clearUnsupportedCapabilities(byte[] packet) {
+        int capabilities = handshakeCapabilities(packet) & ~UNSUPPORTED_CAPABILITIES;
+        int position = capabilitiesPosition(packet);
+        packet[position] = (byte) capabilities;
+        packet[position + 1] = (byte) (capabilities >>> 8);
+        packet[position + 5] = (byte) (capabilities >>> 16);
+        packet[position + 6] = (byte) (capabilities >>> 24);
+    }
+
+    private static final int capabilitiesPosition(byte[] packet) {
+        int position = HEADER_LENGTH + 1;
+        while (packet[position] != 0) {
+            position++;
+        }
+        return position + 1 + 4 + 8 + 1;
+    }
+
+    static final boolean deprecateEof(int serverCapabilities, ByteBuffer handshakeResponse, int start) {
+        return (serverCapabilities & int32(handshakeResponse, start) & CLIENT_DEPRECATE_EOF) != 0;
+    }
+
+    static final int int32(ByteBuffer buffer, int position) {
+        return (buffer.get(position) & 0xFF) | (buffer.get(position + 1) & 0xFF) << 8 | (buffer.get(position + 2) & 0xFF) << 16 | (buffer.get(position + 3) & 0xFF) << 24;
+    }
+
+    static final byte[] database(ByteBuffer handshakeResponse, int start, int length) {
+        int end = start + length;
+        int capabilities = int32(handshakeResponse, start);
+        int position = start + 4 + 4 + 1 + 23;
+        position = skipNullTerminated(handshakeResponse, position, end);
+        if ((capabilities & CLIENT_PLUGIN_AUTH_LENENC_CLIENT_DATA) != 0) {
+            long authLength = lengthEncodedInteger(handshakeResponse, position);
+            position += lengthEncodedIntegerSize(handshakeResponse.get(position)) + (int) authLength;
+        }
+        else if ((capabilities & CLIENT_SECURE_CONNECTION) != 0) {
+            position += 1 + (handshakeResponse.get(position) & 0xFF);
+        }
+        else {
+            position = skipNullTerminated(handshakeResponse, position, end);
+        }
+        if ((capabilities & CLIENT_CONNECT_WITH_DB) == 0 || position >= end) {
+            return new byte[0];
+        }
+        int databaseEnd = skipNullTerminated(handshakeResponse, position, end) - 1;
+        byte[] database = new byte[Math.max(0, databaseEnd - position)];
+        for (int i = 0; i < database.length; i++) {
+            database[i] = handshakeResponse.get(position + i);
+        }
+        return database;
+    }
+
+    private static final int skipNullTerminated(ByteBuffer buffer, int position, int end) {
+        while (position < end && buffer.get(position) != 0) {
+            position++;
+        }
+        return position + 1;
+    }
+
+    static final long lengthEncodedInteger(ByteBuffer buffer, int position) {
+        int first = buffer.get(position) & 0xFF;
+        int size = lengthEncodedIntegerSize(buffer.get(position));
+        if (size == 1) {
+            return first;
+        }
+        long value = 0;
+        for (int i = size - 1; i >= 1; i--) {
+            value = value << 8 | (buffer.get(position + i) & 0xFF);
+        }
+        return value;
+    }
+
+    static final int lengthEncodedIntegerSize(byte first) {
+        switch (first & 0xFF) {
+            case 0xFC:
+                return 3;
+            case 0xFD:
+                return 4;
+            case 0xFE:
+                return 9;
+            default:
+                return 1;
+        }
+    }
+
+    static final void readResponse(InputStream server, OutputStream client, ByteArrayOutputStream response, byte command, boolean deprecateEof) throws IOException {
+        byte[] packet = relayPacket(server, client, response);
+        if (command == COM_STMT_PREPARE) {
+            if (packet[HEADER_LENGTH] == 0) {
+                int columns = (packet[HEADER_LENGTH + 5] & 0xFF) | (packet[HEADER_LENGTH + 6] & 0xFF) << 8;
+                int parameters = (packet[HEADER_LENGTH + 7] & 0xFF) | (packet[HEADER_LENGTH + 8] & 0xFF) << 8;
+                relayDefinitions(server, client, response, parameters, deprecateEof);
+                relayDefinitions(server, client, response, columns, deprecateEof);
+            }
+            return;
+        }
+        if (command != COM_QUERY && command != COM_STMT_EXECUTE) {
+            return;
+        }
+        while (true) {
+            int first = packet[HEADER_LENGTH] & 0xFF;
+            if (first == 0xFF) {
+                return;
+            }
+            if (first == 0xFB) {
+                throw new IOException("LOCAL INFILE requests cannot be recorded");
+            }
+            if (first != 0x00) {
+                relayDefinitions(server, client, response, lengthEncodedInteger(ByteBuffer.wrap(packet), HEADER_LENGTH), deprecateEof);
+                boolean continuation = false;
+                while (true) {
+                    packet = relayPacket(server, client, response);
+                    int length = payloadLength(packet);
+                    if (!continuation && length < MAX_PAYLOAD_LENGTH && (packet[HEADER_LENGTH] & 0xFF) == 0xFE) {
+                        break;
+                    }
+                    if (!continuation && (packet[HEADER_LENGTH] & 0xFF) == 0xFF) {
+                        return;
+                    }
+                    continuation = length == MAX_PAYLOAD_LENGTH;
+                }
+            }
+            if ((statusFlags(packet) & SERVER_MORE_RESULTS_EXISTS) == 0) {
+                return;
+            }
+            packet = relayPacket(server, client, response);
+        }
+    }
+
+    private static final void relayDefinitions(InputStream server, OutputStream client, ByteArrayOutputStream response, long count, boolean deprecateEof) throws IOException {
+        if (count == 0) {
+            return;
+        }
+        for (long i = 0; i < count; i++) {
+            relayPacket(server, client, response);
+        }
+        if (!deprecateEof) {
+            relayPacket(server, client, response);
+        }
+    }
+
+    static final byte[] relayPacket(InputStream from, OutputStream to, ByteArrayOutputStream copy) throws IOException {
+        byte[] packet = readPacket(from);
+        if (packet == null) {
+            throw new EOFException("MySQL connection closed in the middle of a response");
+        }
+        to.write(packet);
+        if (copy != null) {
+            copy.write(packet);
+        }
+        return packet;
+    }
+
+    private static final int statusFlags(byte[] packet) {
+        ByteBuffer payload = ByteBuffer.wrap(packet);
+        if ((packet[HEADER_LENGTH] & 0xFF) == 0xFE && payloadLength(packet) < 9) {
+            return (packet[HEADER_LENGTH + 3] & 0xFF) | (packet[HEADER_LENGTH + 4] & 0xFF) << 8;
+        }
+        int position = HEADER_LENGTH + 1;
+        position += lengthEncodedIntegerSize(payload.get(position));
+        position += lengthEncodedIntegerSize(payload.get(position));
+        return (packet[position] & 0xFF) | (packet[position + 1] & 0xFF) << 8;
+    }
+
+    static final byte[] okPacket(int sequenceId) {
+        return new byte[] { 7, 0, 0, (byte) sequenceId, 0x00, 0, 0, (byte) SERVER_STATUS_AUTOCOMMIT, 0, 0, 0 };
+    }
+
+    static final byte[] errorPacket(int sequenceId, String message) {
+        byte[] text = message.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(MAX_PAYLOAD_LENGTH, 9 + text.length);
+        byte[] packet = new byte[HEADER_LENGTH + length];
+        packet[0] = (byte) length;
+        packet[1] = (byte) (length >>> 8);
+        packet[2] = (byte) (length >>> 16);
+        packet[3] = (byte) sequenceId;
+        packet[4] = (byte) 0xFF;
+        packet[5] = (byte) ER_UNKNOWN_ERROR;
+        packet[6] = (byte) (ER_UNKNOWN_ERROR >>> 8);
+        packet[7] = '#';
+        System.arraycopy("HY000".getBytes(StandardCharsets.US_ASCII), 0, packet, 8, 5);
+        System.arraycopy(text, 0, packet, 13, length - 9);
+        return packet;
+    }
+}
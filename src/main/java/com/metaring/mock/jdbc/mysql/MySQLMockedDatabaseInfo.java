@@ -16,7 +16,15 @@
 
 package com.metaring.mock.jdbc.mysql;
 
+import java.io.File;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import com.metaring.java.process.fork.JavaProcessFork;
 
@@ -24,29 +32,110 @@ class MySQLMockedDatabaseInfo {
 
     Properties mockProperties;
 
+    final MySQLMockBackend backend;
+
     String mockedUrl;
 
     String dbName;
 
     String[] dumpDBCommands;
 
-    String dumpDB;
+    String dumpFingerprint;
+
+    Path dumpPath;
+
+    File rootFolder;
+
+    String binLocation;
 
     JavaProcessFork tempInstance;
 
+    final List<MySQLMockStatementListener> statementListeners = new CopyOnWriteArrayList<>();
+
+    MySQLMockDirtyTables dirtyTables;
+
+    final Map<String, MySQLMockSnapshot> snapshots = new ConcurrentHashMap<>();
+
+    MySQLMockTenants tenants;
+
+    MySQLMockReferenceData referenceData;
+
+    String daemonLease;
+
+    MySQLMockMetrics metrics;
+
+    MySQLMockRecorder recorder;
+
+    MySQLMockStatementProfiler statementProfiler;
+
+    private Connection maintenanceConnection;
+
     MySQLMockedDatabaseInfo(Properties mockProperties) {
         this.mockProperties = mockProperties;
         this.dbName = mockProperties.getProperty(MySQLMockPropertyEnum.NAME.getPropertyName());
+        this.backend = MySQLMockBackend.of(mockProperties);
         this.mockedUrl = mockUrl();
+        this.metrics = new MySQLMockMetrics(dbName);
+        if (MySQLMockPropertyEnum.DIRTY_TRACKING.getBoolean(mockProperties)) {
+            this.dirtyTables = new MySQLMockDirtyTables(dbName);
+            this.statementListeners.add(this.dirtyTables);
+        }
+        if (MySQLMockPropertyEnum.STATEMENT_PROFILING.getBoolean(mockProperties)) {
+            this.statementProfiler = new MySQLMockStatementProfiler(this);
+            this.statementListeners.add(this.statementProfiler);
+        }
+    }
+
+    MySQLMockedDatabaseInfo tenant(String tenantDbName) {
+        Properties tenantProperties = new Properties();
+        tenantProperties.putAll(mockProperties);
+        tenantProperties.put(MySQLMockPropertyEnum.NAME.getPropertyName(), tenantDbName);
+        MySQLMockedDatabaseInfo tenantDatabaseInfo = new MySQLMockedDatabaseInfo(tenantProperties);
+        tenantDatabaseInfo.dumpDBCommands = dumpDBCommands;
+        tenantDatabaseInfo.dumpFingerprint = dumpFingerprint;
+        tenantDatabaseInfo.dumpPath = dumpPath;
+        tenantDatabaseInfo.rootFolder = rootFolder;
+        tenantDatabaseInfo.binLocation = binLocation;
+        tenantDatabaseInfo.tempInstance = tempInstance;
+        tenantDatabaseInfo.mockedUrl = tenantDatabaseInfo.mockUrl();
+        tenantDatabaseInfo.metrics = metrics;
+        return tenantDatabaseInfo;
+    }
+
+    synchronized Connection maintenanceConnection() throws SQLException {
+        if (maintenanceConnection == null || !maintenanceConnection.isValid(1)) {
+            Properties properties = Driver.cleanProperties(mockProperties);
+            properties.put("allowMultiQueries", "true");
+            maintenanceConnection = connect(properties);
+        }
+        return maintenanceConnection;
     }
 
-    private final String mockUrl() {
+    Connection connect(Properties cleanProperties) throws SQLException {
+        if (backend == MySQLMockBackend.H2) {
+            return MySQLMockEmbedded.connect(mockedUrl, dbName, cleanProperties);
+        }
+        return Driver.MYSQL_ORIGINAL_DRIVER.connect(mockedUrl, cleanProperties);
+    }
+
+    Connection clientConnection(Properties cleanProperties) throws SQLException {
+        if (recorder != null) {
+            return recorder.connect(dbName, cleanProperties);
+        }
+        return connect(cleanProperties);
+    }
+
+    final String mockUrl() {
+        if (backend == MySQLMockBackend.H2) {
+            return MySQLMockEmbedded.url(mockProperties);
+        }
         int port = -1;
         try {
             port = Integer.parseInt(mockProperties.get(MySQLMockPropertyEnum.MOCK_PORT.getPropertyName()).toString());
         }
         catch(Exception e) {}
-        String portString = port == -1 ? "" : ":" + port;
-        return String.format("jdbc:mysql://localhost%s/%s", portString, dbName);
+        MySQLMockTransport transport = MySQLMockTransport.of(mockProperties);
+        String portString = port == -1 || transport == MySQLMockTransport.SOCKET ? "" : ":" + port;
+        return String.format("jdbc:mysql://localhost%s/%s%s", portString, dbName, transport.urlParameters(rootFolder));
     }
 }
@@ -0,0 +1,120 @@
+/**
+ *    Copyright 2019 MetaRing s.r.l.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.metaring.mock.jdbc.mysql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class MySQLMockEmbeddedTest {
+
+    private final List<String> executed = new ArrayList<>();
+
+    private final MySQLMockEmbedded embedded = new MySQLMockEmbedded((Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[] { Statement.class }, (proxy, method, args) -> {
+        if (method.getName().equals("execute")) {
+            executed.add((String) args[0]);
+            return false;
+        }
+        throw new UnsupportedOperationException(method.getName());
+    }), "db");
+
+    @Test
+    public void createTableRewritesColumnTypesAndAttributes() throws SQLException {
+        embedded.translate(String.join("\n",
+                "CREATE TABLE `t` (",
+                "  `id` int unsigned NOT NULL AUTO_INCREMENT,",
+                "  `flag` bit(1) DEFAULT b'1',",
+                "  `name` varchar(64) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin NOT NULL DEFAULT 'COLLATE x',",
+                "  `born` date NOT NULL DEFAULT '0000-00-00',",
+                "  `tags` set('a','b') DEFAULT NULL,",
+                "  `doc` json DEFAULT NULL,",
+                "  PRIMARY KEY (`id`) USING BTREE,",
+                "  UNIQUE KEY `name` (`name`(10)),",
+                "  KEY `born` (`born`)",
+                ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4"));
+        assertEquals(Arrays.asList(String.join("\n",
+                "CREATE TABLE `t` (",
+                "  `id` bigint NOT NULL AUTO_INCREMENT,",
+                "  `flag` boolean DEFAULT 1,",
+                "  `name` varchar(64) NOT NULL DEFAULT 'COLLATE x',",
+                "  `born` date NOT NULL DEFAULT '0001-01-01',",
+                "  `tags` varchar(1024) DEFAULT NULL,",
+                "  `doc` clob DEFAULT NULL,",
+                "  PRIMARY KEY (`id`)",
+                ")"),
+                "CREATE UNIQUE INDEX `t_name` ON `t` (`name`)",
+                "CREATE INDEX `t_born` ON `t` (`born`)"), executed);
+        assertEquals(3, embedded.approximated.size());
+    }
+
+    @Test
+    public void foreignKeysAreDeferredAndQualified() throws SQLException {
+        embedded.translate(String.join("\n",
+                "CREATE TABLE `child` (",
+                "  `parent_id` int NOT NULL,",
+                "  CONSTRAINT `fk_parent` FOREIGN KEY (`parent_id`) REFERENCES `parent` (`id`) ON DELETE CASCADE",
+                ")"));
+        assertEquals(1, executed.size());
+        embedded.addForeignKeys();
+        assertEquals("ALTER TABLE `db`.`child` ADD CONSTRAINT `fk_parent` FOREIGN KEY (`parent_id`) REFERENCES `db`.`parent` (`id`) ON DELETE CASCADE", executed.get(1));
+    }
+
+    @Test
+    public void unsupportedIndexesAndStoredProgramsAreSkipped() throws SQLException {
+        embedded.translate(String.join("\n",
+                "CREATE TABLE `doc` (",
+                "  `body` text,",
+                "  FULLTEXT KEY `body` (`body`),",
+                "  KEY `expr` ((lower(`body`)))",
+                ")"));
+        embedded.translate("/*!50003 CREATE*/ /*!50020 DEFINER=`root`@`%`*/ /*!50003 PROCEDURE `p`() BEGIN SELECT 1; END */");
+        assertEquals(Arrays.asList("CREATE TABLE `doc` (\n  `body` text\n)"), executed);
+        assertEquals(3, embedded.skipped.size());
+    }
+
+    @Test
+    public void viewsDropAlgorithmDefinerAndCheckOption() throws SQLException {
+        embedded.translate("/*!50001 CREATE ALGORITHM=UNDEFINED */ /*!50013 DEFINER=`root`@`localhost` SQL SECURITY DEFINER */ /*!50001 VIEW `v` AS select `t`.`id` AS `id` from `t` WITH CASCADED CHECK OPTION */");
+        assertEquals(Arrays.asList("CREATE OR REPLACE VIEW `v` AS select `t`.`id` AS `id` from `t`"), executed);
+        assertEquals(1, embedded.approximated.size());
+    }
+
+    @Test
+    public void databasesBecomeSchemasAndSessionStatementsAreIgnored() throws SQLException {
+        embedded.translate("CREATE DATABASE /*!32312 IF NOT EXISTS*/ `other` /*!40100 DEFAULT CHARACTER SET utf8mb4 */");
+        embedded.translate("USE `other`");
+        embedded.translate("/*!40101 SET NAMES utf8mb4 */");
+        embedded.translate("LOCK TABLES `t` WRITE");
+        embedded.translate("INSERT INTO `t` VALUES (1,'it\\'s','a\\\\b')");
+        assertEquals(Arrays.asList("CREATE SCHEMA IF NOT EXISTS `other`", "SET SCHEMA `other`", "INSERT INTO `t` VALUES (1,'it''s','a\\b')"), executed);
+    }
+
+    @Test
+    public void standardLiteralsKeepLikeEscapesAndQuotedIdentifiers() {
+        assertEquals("SELECT '\\%', `a\\b`, 'x\ny'", MySQLMockEmbedded.standardLiterals("SELECT '\\%', `a\\b`, 'x\\ny'"));
+        String sql = "SELECT 1";
+        assertSame(sql, MySQLMockEmbedded.standardLiterals(sql));
+    }
+}
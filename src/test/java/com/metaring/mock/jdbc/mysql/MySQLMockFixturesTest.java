@@ -0,0 +1,143 @@
+/**
+ *    Copyright 2019 MetaRing s.r.l.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.metaring.mock.jdbc.mysql;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class MySQLMockFixturesTest {
+
+    @Test
+    public void csvQuotedFieldsFollowRfc4180() throws IOException {
+        MySQLMockFixtures.Rows rows = csv("id,name,note\r\n1,\"Smith, John\",\"say \"\"hi\"\"\"\r\n2,\"multi\nline\",plain\r\n");
+        assertEquals(Arrays.asList("id", "name", "note"), rows.columns);
+        assertEquals(2, rows.values.size());
+        assertArrayEquals(new Object[] { "1", "Smith, John", "say \"hi\"" }, rows.values.get(0));
+        assertArrayEquals(new Object[] { "2", "multi\nline", "plain" }, rows.values.get(1));
+    }
+
+    @Test
+    public void csvEmptyFieldIsNullAndQuotedEmptyFieldIsEmptyString() throws IOException {
+        MySQLMockFixtures.Rows rows = csv("a,b,c\n,\"\",x\n");
+        assertArrayEquals(new Object[] { null, "", "x" }, rows.values.get(0));
+    }
+
+    @Test
+    public void csvSkipsBlankLinesAndByteOrderMark() throws IOException {
+        MySQLMockFixtures.Rows rows = csv("\uFEFFa,b\n\n1,2\n\n3,4");
+        assertEquals(Arrays.asList("a", "b"), rows.columns);
+        assertEquals(2, rows.values.size());
+        assertArrayEquals(new Object[] { "3", "4" }, rows.values.get(1));
+    }
+
+    @Test
+    public void csvRejectsRowsWithWrongFieldCount() {
+        try {
+            csv("a,b\n1,2,3\n");
+            fail("Expected a field count error");
+        }
+        catch (IOException e) {
+            assertEquals("Row 1 has 3 fields, expected 2", e.getMessage());
+        }
+    }
+
+    @Test
+    public void csvRejectsUnterminatedQuotes() {
+        try {
+            csv("a\n\"open\n");
+            fail("Expected an unterminated field error");
+        }
+        catch (IOException e) {
+            assertEquals("Unterminated quoted field", e.getMessage());
+        }
+    }
+
+    @Test
+    public void jsonStringEscapes() throws IOException {
+        assertEquals("q\"b\\s/\b\f\n\r\té", json("\"q\\\"b\\\\s\\/\\b\\f\\n\\r\\t\\u00e9\""));
+    }
+
+    @Test
+    public void jsonNumbers() throws IOException {
+        assertEquals(42L, json("42"));
+        assertEquals(-7L, json("-7"));
+        assertEquals(Long.MAX_VALUE, json("9223372036854775807"));
+        assertEquals(new BigDecimal("9223372036854775808"), json("9223372036854775808"));
+        assertEquals(new BigDecimal("1.50"), json("1.50"));
+        assertEquals(new BigDecimal("1e3"), json("1e3"));
+    }
+
+    @Test
+    public void jsonLiteralsAndNesting() throws IOException {
+        Map<?, ?> object = (Map<?, ?>) json(" { \"a\" : [ true, false, null ], \"b\" : { } } ");
+        assertEquals(Arrays.asList(Boolean.TRUE, Boolean.FALSE, null), object.get("a"));
+        assertEquals(Collections.emptyMap(), object.get("b"));
+    }
+
+    @Test
+    public void jsonRejectsTrailingContent() {
+        try {
+            json("[1] 2");
+            fail("Expected a trailing content error");
+        }
+        catch (IOException e) {
+            assertEquals("Unexpected trailing content at offset 4", e.getMessage());
+        }
+    }
+
+    @Test
+    public void jsonRowsKeepNullsAndSerializeNestedValues() throws IOException {
+        MySQLMockFixtures.Fixture fixture = new MySQLMockFixtures.Fixture();
+        MySQLMockFixtures.parseJson(new StringReader("{\"users\": [{\"id\": 1, \"name\": null, \"tags\": [\"a\", \"b\\\"\"]}, {\"id\": 2, \"name\": \"x\", \"tags\": {}}]}"), "ignored", fixture);
+        List<MySQLMockFixtures.Rows> rows = fixture.rows;
+        assertEquals(1, rows.size());
+        assertEquals("users", rows.get(0).tableName);
+        assertArrayEquals(new Object[] { 1L, null, "[\"a\",\"b\\\"\"]" }, rows.get(0).values.get(0));
+        assertArrayEquals(new Object[] { 2L, "x", "{}" }, rows.get(0).values.get(1));
+    }
+
+    @Test
+    public void jsonRowsWithDifferentColumnsStartNewBatches() throws IOException {
+        MySQLMockFixtures.Fixture fixture = new MySQLMockFixtures.Fixture();
+        MySQLMockFixtures.parseJson(new StringReader("[{\"a\": 1}, {\"a\": 2, \"b\": 3}]"), "t", fixture);
+        assertEquals(2, fixture.rows.size());
+        assertEquals(Arrays.asList("a", "b"), fixture.rows.get(1).columns);
+        assertArrayEquals(new Object[] { 2L, 3L }, fixture.rows.get(1).values.get(0));
+    }
+
+    private static final MySQLMockFixtures.Rows csv(String csv) throws IOException {
+        MySQLMockFixtures.Fixture fixture = new MySQLMockFixtures.Fixture();
+        MySQLMockFixtures.parseCsv(new StringReader(csv), "t", fixture);
+        assertEquals(1, fixture.rows.size());
+        return fixture.rows.get(0);
+    }
+
+    private static final Object json(String json) throws IOException {
+        return new MySQLMockFixtures.JsonParser(json).parse();
+    }
+}
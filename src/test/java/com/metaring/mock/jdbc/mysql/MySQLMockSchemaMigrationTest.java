@@ -0,0 +1,113 @@
+/**
+ *    Copyright 2019 MetaRing s.r.l.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.metaring.mock.jdbc.mysql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class MySQLMockSchemaMigrationTest {
+
+    private static final String TABLE = String.join("\n",
+            "CREATE TABLE `t` (",
+            "  `id` int NOT NULL AUTO_INCREMENT,",
+            "  `a` int DEFAULT NULL,",
+            "  PRIMARY KEY (`id`)",
+            ") ENGINE=InnoDB AUTO_INCREMENT=%d DEFAULT CHARSET=utf8mb4;");
+
+    private static final String TRIGGER = String.join("\n",
+            "/*!50003 SET @saved_sql_mode       = @@sql_mode */ ;",
+            "/*!50003 SET sql_mode              = '%s' */ ;",
+            "DELIMITER ;;",
+            "/*!50003 CREATE*/ /*!50017 DEFINER=`root`@`localhost`*/ /*!50003 TRIGGER `t_bi` BEFORE INSERT ON `t` FOR EACH ROW SET NEW.a = 1 */;;",
+            "DELIMITER ;",
+            "/*!50003 SET sql_mode              = @saved_sql_mode */ ;");
+
+    @Test
+    public void autoIncrementCounterIsNotPartOfTheSignature() throws IOException {
+        Map<String, MySQLMockSchemaMigration.Definition> first = definitions("USE `db`;", String.format(TABLE, 5));
+        Map<String, MySQLMockSchemaMigration.Definition> second = definitions("USE `db`;", String.format(TABLE, 981));
+        MySQLMockSchemaMigration.Definition table = only(first);
+        assertEquals("db", table.database);
+        assertEquals("TABLE", table.kind);
+        assertEquals("t", table.name);
+        assertFalse(table.signature.contains("AUTO_INCREMENT="));
+        assertEquals(table.signature, only(second).signature);
+    }
+
+    @Test
+    public void compoundStatementsCarryTheirSqlMode() throws IOException {
+        Map<String, MySQLMockSchemaMigration.Definition> strict = definitions("USE `db`;", String.format(TRIGGER, "STRICT_TRANS_TABLES"), String.format(TABLE, 1).replace("`t`", "`u`"));
+        Map<String, MySQLMockSchemaMigration.Definition> lenient = definitions("USE `db`;", String.format(TRIGGER, "NO_ENGINE_SUBSTITUTION"), String.format(TABLE, 1).replace("`t`", "`u`"));
+        List<MySQLMockSchemaMigration.Definition> strictDefinitions = new ArrayList<>(strict.values());
+        List<MySQLMockSchemaMigration.Definition> lenientDefinitions = new ArrayList<>(lenient.values());
+        assertEquals(2, strictDefinitions.size());
+
+        MySQLMockSchemaMigration.Definition trigger = strictDefinitions.get(0);
+        assertEquals("TRIGGER", trigger.kind);
+        assertEquals("t_bi", trigger.name);
+        assertEquals("t", trigger.table);
+        assertEquals("'STRICT_TRANS_TABLES'", trigger.sqlMode);
+        assertFalse(trigger.signature.equals(lenientDefinitions.get(0).signature));
+
+        MySQLMockSchemaMigration.Definition table = strictDefinitions.get(1);
+        assertNull(table.sqlMode);
+        assertEquals(table.signature, lenientDefinitions.get(1).signature);
+    }
+
+    @Test
+    public void laterDefinitionsReplaceEarlierOnes() throws IOException {
+        Map<String, MySQLMockSchemaMigration.Definition> definitions = definitions("USE `db`;", String.format(TABLE, 1), "USE `other`;", String.format(TABLE, 1), "USE `db`;", String.format(TABLE, 1).replace("`a` int", "`a` bigint"));
+        assertEquals(2, definitions.size());
+        List<MySQLMockSchemaMigration.Definition> values = new ArrayList<>(definitions.values());
+        assertEquals("other", values.get(0).database);
+        assertEquals("db", values.get(1).database);
+        assertTrue(values.get(1).sql.contains("bigint"));
+    }
+
+    @Test
+    public void statementsBeforeUseAreIgnored() throws IOException {
+        assertEquals(0, definitions(String.format(TABLE, 1)).size());
+    }
+
+    private static final MySQLMockSchemaMigration.Definition only(Map<String, MySQLMockSchemaMigration.Definition> definitions) {
+        assertEquals(1, definitions.size());
+        return definitions.values().iterator().next();
+    }
+
+    private static final Map<String, MySQLMockSchemaMigration.Definition> definitions(String... statements) throws IOException {
+        Path dumpPath = Files.createTempFile("mysqlmock", ".sql");
+        try {
+            Files.write(dumpPath, String.join("\n", statements).getBytes(StandardCharsets.UTF_8));
+            return MySQLMockSchemaMigration.definitions(dumpPath);
+        }
+        finally {
+            Files.delete(dumpPath);
+        }
+    }
+}
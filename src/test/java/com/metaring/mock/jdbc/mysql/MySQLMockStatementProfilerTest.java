@@ -0,0 +1,79 @@
+/**
+ *    Copyright 2019 MetaRing s.r.l.
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.metaring.mock.jdbc.mysql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class MySQLMockStatementProfilerTest {
+
+    @Test
+    public void histogramIsExactBelowSubBucketCount() {
+        for (long nanos = 0; nanos < 32; nanos++) {
+            assertEquals(nanos, MySQLMockStatementProfiler.Histogram.index(nanos));
+            assertEquals(nanos, MySQLMockStatementProfiler.Histogram.upperBound((int) nanos));
+        }
+        assertEquals(0, MySQLMockStatementProfiler.Histogram.index(-1));
+    }
+
+    @Test
+    public void histogramBucketsBoundPowersOfTwo() {
+        for (int k = 0; k < 63; k++) {
+            long power = 1L << k;
+            for (long nanos : new long[] { power - 1, power, power + 1 }) {
+                int index = MySQLMockStatementProfiler.Histogram.index(nanos);
+                assertTrue(String.format("upperBound(index(%d)) below the value", nanos), MySQLMockStatementProfiler.Histogram.upperBound(index) >= nanos);
+                assertTrue(String.format("upperBound(index(%d) - 1) not below the value", nanos), index == 0 || MySQLMockStatementProfiler.Histogram.upperBound(index - 1) < nanos);
+            }
+            int index = MySQLMockStatementProfiler.Histogram.index(power);
+            assertEquals(power - 1, MySQLMockStatementProfiler.Histogram.upperBound(index - 1));
+            assertEquals(index - 1, MySQLMockStatementProfiler.Histogram.index(power - 1));
+        }
+    }
+
+    @Test
+    public void histogramLastBucketHoldsMaxValue() {
+        int index = MySQLMockStatementProfiler.Histogram.index(Long.MAX_VALUE);
+        assertEquals((64 - 5) * 32 - 1, index);
+        assertEquals(Long.MAX_VALUE, MySQLMockStatementProfiler.Histogram.upperBound(index));
+    }
+
+    @Test
+    public void shapeCollapsesInListsOfAnyLength() {
+        String shape = MySQLMockStatementProfiler.shape("SELECT * FROM t WHERE id IN (1, 2, 3)");
+        assertEquals("SELECT * FROM t WHERE id IN (?+)", shape);
+        assertEquals(shape, MySQLMockStatementProfiler.shape("SELECT * FROM t WHERE id IN (7)"));
+        assertEquals(shape, MySQLMockStatementProfiler.shape("SELECT * FROM t WHERE id IN ( ?,?,?,? )"));
+        assertEquals(shape, MySQLMockStatementProfiler.shape("SELECT  *  FROM t\nWHERE id IN ('a', \"b\")"));
+    }
+
+    @Test
+    public void shapeCollapsesMultiRowValues() {
+        String shape = MySQLMockStatementProfiler.shape("INSERT INTO t (a, b) VALUES (1, 'x'), (2, 'y'), (3, 'z')");
+        assertEquals("INSERT INTO t (a, b) VALUES (?+), ...", shape);
+        assertEquals(shape, MySQLMockStatementProfiler.shape("INSERT INTO t (a, b) VALUES (?, ?), (?, ?)"));
+        assertEquals("INSERT INTO t (a, b) VALUES (?+)", MySQLMockStatementProfiler.shape("INSERT INTO t (a, b) VALUES (1, 'x')"));
+    }
+
+    @Test
+    public void shapeReplacesLiteralsAndStripsComments() {
+        assertEquals("SELECT ? FROM t1 WHERE a=? AND b = ?", MySQLMockStatementProfiler.shape("SELECT 1 /* hint */ FROM t1 # trailing\n WHERE a=2 AND b = 'it''s'"));
+        assertEquals("SELECT `col 1` FROM t WHERE c=?", MySQLMockStatementProfiler.shape("SELECT `col 1` FROM t -- x\nWHERE c='z'"));
+    }
+}